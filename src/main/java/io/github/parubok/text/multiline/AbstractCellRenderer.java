@@ -0,0 +1,195 @@
+package io.github.parubok.text.multiline;
+
+import javax.swing.UIManager;
+import javax.swing.border.Border;
+import javax.swing.border.EmptyBorder;
+import java.awt.Rectangle;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.function.LongPredicate;
+
+/**
+ * Base class of the multiline cell renderers. Keeps the text layouts of recently rendered cells, so the lines of
+ * a cell are calculated once per width (see {@link MultilineLabel#setLayoutCacheCapacity(int)}) and not on each
+ * repaint.
+ * <p>
+ * As {@link javax.swing.table.DefaultTableCellRenderer}, overrides some methods of the component to do nothing for
+ * performance reasons.
+ */
+abstract class AbstractCellRenderer extends MultilineLabel {
+
+    /**
+     * Default value for {@code cellCacheCapacity} property.
+     *
+     * @see #setCellCacheCapacity(int)
+     */
+    public static final int DEFAULT_CELL_CACHE_CAPACITY = 1_000;
+
+    private static final Border DEFAULT_NO_FOCUS_BORDER = new EmptyBorder(1, 1, 1, 1);
+
+    static String toText(Object value) {
+        return value == null ? "" : value.toString();
+    }
+
+    /**
+     * @return Border of a cell without focus of the current L&amp;F.
+     */
+    static Border getNoFocusBorder(String key) {
+        final Border border = UIManager.getBorder(key);
+        return border != null ? border : DEFAULT_NO_FOCUS_BORDER;
+    }
+
+    /**
+     * Layouts of the recently rendered cells by cell key, in access order.
+     */
+    private final LinkedHashMap<Long, CellLayout> cells = new LinkedHashMap<>(16, 0.75f, true);
+    private int cellCacheCapacity = DEFAULT_CELL_CACHE_CAPACITY;
+
+    AbstractCellRenderer() {
+        super();
+        // the renderer is painted with the bounds of different cells - its preferred size must not depend on them
+        setUseCurrentWidthForPreferredSize(false);
+    }
+
+    /**
+     * Sets text of the specified cell. If the cell has the same text as when it was rendered last time, its text
+     * layout is reused.
+     *
+     * @param cellKey Key of the cell, e.g. its row and column. Negative if the cell layout must not be cached.
+     */
+    void setCellText(long cellKey, String text) {
+        if (cellKey < 0) {
+            setText(text);
+            return;
+        }
+        final CellLayout cell = cells.get(cellKey);
+        if (cell != null && cell.text.equals(text)) {
+            setTextAndTextLayout(cell.text, cell.textLayout);
+            return;
+        }
+        setText(text);
+        cells.put(cellKey, new CellLayout(text, getTextLayout()));
+        trimCells();
+    }
+
+    /**
+     * Discards the cached layouts of the cells with the matching keys.
+     */
+    void removeCells(LongPredicate cellKeys) {
+        cells.keySet().removeIf(cellKeys::test);
+    }
+
+    /**
+     * Discards the cached layouts of all cells.
+     */
+    void clearCells() {
+        cells.clear();
+    }
+
+    /**
+     * @return Number of the cells with cached layout. For tests.
+     */
+    int getCellCacheSize() {
+        return cells.size();
+    }
+
+    private void trimCells() {
+        final Iterator<CellLayout> iterator = cells.values().iterator();
+        while (cells.size() > cellCacheCapacity) {
+            iterator.next();
+            iterator.remove(); // the least recently rendered
+        }
+    }
+
+    /**
+     * @return Max. number of the cells which text layouts are kept by this renderer.
+     * @see #setCellCacheCapacity(int)
+     */
+    public int getCellCacheCapacity() {
+        return cellCacheCapacity;
+    }
+
+    /**
+     * @param cellCacheCapacity Max. number of the cells which text layouts are kept by this renderer. Should be not
+     * less than the number of the visible cells. Default: {@link #DEFAULT_CELL_CACHE_CAPACITY}.
+     */
+    public void setCellCacheCapacity(int cellCacheCapacity) {
+        if (cellCacheCapacity < 1) {
+            throw new IllegalArgumentException("Value must be positive.");
+        }
+        this.cellCacheCapacity = cellCacheCapacity;
+        trimCells();
+    }
+
+    /**
+     * Overridden for performance reasons.
+     */
+    @Override
+    public void invalidate() {
+    }
+
+    /**
+     * Overridden for performance reasons.
+     */
+    @Override
+    public void validate() {
+    }
+
+    /**
+     * Overridden for performance reasons.
+     */
+    @Override
+    public void revalidate() {
+    }
+
+    /**
+     * Overridden for performance reasons.
+     */
+    @Override
+    public void repaint(long tm, int x, int y, int width, int height) {
+    }
+
+    /**
+     * Overridden for performance reasons.
+     */
+    @Override
+    public void repaint(Rectangle r) {
+    }
+
+    /**
+     * Overridden for performance reasons.
+     */
+    @Override
+    public void repaint() {
+    }
+
+    /**
+     * Overridden for performance reasons.
+     */
+    @Override
+    protected void firePropertyChange(String propertyName, Object oldValue, Object newValue) {
+    }
+
+    /**
+     * Overridden for performance reasons.
+     */
+    @Override
+    public void firePropertyChange(String propertyName, boolean oldValue, boolean newValue) {
+    }
+
+    @Override
+    protected String paramString() {
+        return super.paramString()
+                + ",cellCacheCapacity=" + getCellCacheCapacity();
+    }
+
+    private static final class CellLayout {
+        final String text;
+        final TextLayout textLayout;
+
+        CellLayout(String text, TextLayout textLayout) {
+            this.text = text;
+            this.textLayout = textLayout;
+        }
+    }
+}
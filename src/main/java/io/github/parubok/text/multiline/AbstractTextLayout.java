@@ -16,6 +16,14 @@ public abstract class AbstractTextLayout implements TextLayout {
         this.label = Objects.requireNonNull(label);
     }
 
+    /**
+     * @return Lines displayed by the label for its current size. Used for hit-testing, so the lines should be
+     * calculated only if the layout has no lines for the current size. Empty if the text is not displayed.
+     */
+    LineTable getLineTable() {
+        return TextLines.EMPTY;
+    }
+
     protected static int getTextPreferredHeight(int lineCount, FontMetrics fm, float lineSpacing) {
         final int yIncrement = MultilineUtils.getHeightIncrement(fm, lineSpacing);
         return fm.getAscent() + yIncrement  * (lineCount - 1) + fm.getDescent();
@@ -0,0 +1,203 @@
+package io.github.parubok.text.multiline;
+
+import javax.swing.JComponent;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.font.FontRenderContext;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.DoubleAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Process-wide cache of character advances used by labels in {@link MeasurementMode#ADVANCE_CACHE} mode.
+ * <p>
+ * The advances are kept per font and {@link FontRenderContext} (i.e. anti-aliasing, fractional metrics and
+ * transform, which includes HiDPI scale) in float tables for BMP characters. The tables are filled lazily,
+ * 256 characters at a time. Width of a text is the sum of advances of its characters.
+ * <p>
+ * To show how far the cached widths drift from the exact measurement, one of {@value #DRIFT_SAMPLE_INTERVAL}
+ * measurements (on average) is compared with the exact one. See {@link #getMaxDrift()}.
+ * <p>
+ * This class is thread-safe.
+ */
+public final class AdvanceWidthCache {
+
+    /**
+     * One of this number of measurements (on average) is compared with the exact measurement. The measurements are
+     * sampled at random rather than counted, since a measurer may be used by several threads (see
+     * {@link MultilineLabel#setParallelLayoutPool}).
+     */
+    public static final int DRIFT_SAMPLE_INTERVAL = 64;
+
+    private static final int PAGE_BITS = 8;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    private static final int PAGE_COUNT = (Character.MAX_VALUE + 1) >> PAGE_BITS;
+
+    /**
+     * The cache is cleared when it reaches this number of fonts.
+     */
+    private static final int MAX_TABLES = 64;
+
+    private static final Map<FontKey, AdvanceTable> TABLES = new ConcurrentHashMap<>();
+    private static final DoubleAccumulator MAX_DRIFT = new DoubleAccumulator(Math::max, 0.0);
+    private static final LongAdder DRIFT_SAMPLES = new LongAdder();
+
+    private AdvanceWidthCache() {
+    }
+
+    /**
+     * @return Maximal difference (in pixels) between the cached and the exact width of a text, among all compared
+     * measurements since the last {@link #clear()}.
+     * @see #getDriftSampleCount()
+     * @see #measureDrift(JComponent, FontMetrics, String)
+     */
+    public static float getMaxDrift() {
+        return (float) MAX_DRIFT.get();
+    }
+
+    /**
+     * @return Number of measurements compared with the exact measurement since the last {@link #clear()}.
+     */
+    public static long getDriftSampleCount() {
+        return DRIFT_SAMPLES.sum();
+    }
+
+    /**
+     * Measures the specified text both with the cache and exactly. The difference is taken into account by
+     * {@link #getMaxDrift()}.
+     *
+     * @param c Component to measure the text for. May be null.
+     * @param fm Metrics of the font to measure the text with. Not null.
+     * @param text Sample text. Not null.
+     * @return Difference (in pixels) between the cached and the exact width of the text.
+     */
+    public static float measureDrift(JComponent c, FontMetrics fm, String text) {
+        Objects.requireNonNull(fm, "fm");
+        Objects.requireNonNull(text, "text");
+        var measurer = new CachedTextMeasurer(getTable(fm), new ExactTextMeasurer(c, fm));
+        float cachedWidth = measurer.getCachedWidth(text, 0, text.length());
+        if (cachedWidth < 0.0f) {
+            return 0.0f; // the text is always measured exactly
+        }
+        return measurer.recordDrift(cachedWidth, text, 0, text.length());
+    }
+
+    /**
+     * Removes all cached advances and resets the drift statistics.
+     */
+    public static void clear() {
+        TABLES.clear();
+        MAX_DRIFT.reset();
+        DRIFT_SAMPLES.reset();
+    }
+
+    static TextMeasurer getMeasurer(JComponent c, FontMetrics fm) {
+        return new CachedTextMeasurer(getTable(fm), new ExactTextMeasurer(c, fm));
+    }
+
+    static AdvanceTable getTable(FontMetrics fm) {
+        final var key = new FontKey(fm);
+        var table = TABLES.get(key);
+        if (table == null) {
+            if (TABLES.size() >= MAX_TABLES) {
+                TABLES.clear();
+            }
+            table = TABLES.computeIfAbsent(key, k -> new AdvanceTable(k.font, k.frc));
+        }
+        return table;
+    }
+
+    /**
+     * Advances of BMP characters for a font and render context.
+     * <p>
+     * For a simple text (see {@link MultilineUtils#isSimpleChar(char)}) and a font without layout attributes, the
+     * sum of the advances (in {@code float}, from the first character to the last one) is the exact width of the
+     * text, since the font measures such text in the same way.
+     */
+    static final class AdvanceTable {
+        private final Font font;
+        private final FontRenderContext frc;
+        private final AtomicReferenceArray<float[]> pages = new AtomicReferenceArray<>(PAGE_COUNT);
+
+        AdvanceTable(Font font, FontRenderContext frc) {
+            this.font = font;
+            this.frc = frc;
+        }
+
+        float getAdvance(char ch) {
+            final int pageIndex = ch >> PAGE_BITS;
+            float[] page = pages.get(pageIndex);
+            if (page == null) {
+                page = createPage(pageIndex);
+                pages.set(pageIndex, page); // concurrent threads may create identical pages
+            }
+            return page[ch & (PAGE_SIZE - 1)];
+        }
+
+        private float[] createPage(int pageIndex) {
+            final var page = new float[PAGE_SIZE];
+            final var chars = new char[1];
+            for (int i = 0; i < PAGE_SIZE; i++) {
+                chars[0] = (char) ((pageIndex << PAGE_BITS) + i);
+                page[i] = (float) font.getStringBounds(chars, 0, 1, frc).getWidth();
+            }
+            return page;
+        }
+    }
+
+    private static final class CachedTextMeasurer implements TextMeasurer {
+        private final AdvanceTable table;
+        private final ExactTextMeasurer exactMeasurer;
+
+        CachedTextMeasurer(AdvanceTable table, ExactTextMeasurer exactMeasurer) {
+            this.table = table;
+            this.exactMeasurer = exactMeasurer;
+        }
+
+        @Override
+        public float getWidth(CharSequence text, int start, int end) {
+            final float width = getCachedWidth(text, start, end);
+            if (width < 0.0f) {
+                return exactMeasurer.getWidth(text, start, end);
+            }
+            if (ThreadLocalRandom.current().nextInt(DRIFT_SAMPLE_INTERVAL) == 0) {
+                recordDrift(width, text, start, end);
+            }
+            return width;
+        }
+
+        /**
+         * @return Sum of the character advances, or -1 if the text must be measured exactly.
+         */
+        float getCachedWidth(CharSequence text, int start, int end) {
+            if (!exactMeasurer.isAdditive()) {
+                return -1.0f;
+            }
+            float width = 0.0f;
+            for (int i = start; i < end; i++) {
+                final char ch = text.charAt(i);
+                if (!MultilineUtils.isSimpleChar(ch)) {
+                    return -1.0f;
+                }
+                width += table.getAdvance(ch);
+            }
+            return width;
+        }
+
+        float recordDrift(float cachedWidth, CharSequence text, int start, int end) {
+            final float drift = Math.abs(cachedWidth - exactMeasurer.getWidth(text, start, end));
+            MAX_DRIFT.accumulate(drift);
+            DRIFT_SAMPLES.increment();
+            return drift;
+        }
+
+        @Override
+        public boolean isAdditive() {
+            return exactMeasurer.isAdditive();
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package io.github.parubok.text.multiline;
+
+import javax.swing.JComponent;
+import java.awt.FontMetrics;
+
+import static javax.swing.plaf.basic.BasicGraphicsUtils.getStringWidth;
+
+/**
+ * Measures text with the full text shaping of the font.
+ *
+ * @see MeasurementMode#EXACT
+ */
+final class ExactTextMeasurer implements TextMeasurer {
+
+    private final JComponent c;
+    private final FontMetrics fm;
+
+    /**
+     * @param c Component to measure the text for. May be null.
+     * @param fm Not null.
+     */
+    ExactTextMeasurer(JComponent c, FontMetrics fm) {
+        this.c = c;
+        this.fm = fm;
+    }
+
+    @Override
+    public float getWidth(CharSequence text, int start, int end) {
+        return start == end ? 0.0f : getStringWidth(c, fm, text.subSequence(start, end).toString());
+    }
+
+    @Override
+    public boolean isAdditive() {
+        return !fm.getFont().hasLayoutAttributes();
+    }
+}
@@ -0,0 +1,44 @@
+package io.github.parubok.text.multiline;
+
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.font.FontRenderContext;
+import java.util.Objects;
+
+/**
+ * Font and {@link FontRenderContext} which together define the measured widths of text. Immutable.
+ */
+final class FontKey {
+    final Font font;
+    final FontRenderContext frc;
+
+    FontKey(FontMetrics fm) {
+        this.font = fm.getFont();
+        this.frc = fm.getFontRenderContext();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof FontKey)) {
+            return false;
+        }
+        FontKey other = (FontKey) o;
+        return font.equals(other.font) && frc.equals(other.frc);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(font, frc);
+    }
+
+    @Override
+    public String toString() {
+        return "FontKey{" +
+                "font=" + font +
+                ", frc=" + frc +
+                '}';
+    }
+}
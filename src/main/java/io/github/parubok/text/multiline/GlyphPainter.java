@@ -0,0 +1,97 @@
+package io.github.parubok.text.multiline;
+
+import javax.swing.JComponent;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.PrintGraphics;
+import java.awt.RenderingHints;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+import java.awt.font.TextAttribute;
+import java.awt.print.PrinterGraphics;
+
+/**
+ * Paints cached glyph vectors (see {@link GlyphVectorCache}) with the same result as
+ * {@link AbstractTextLayout#drawString}: the text anti-aliasing hints of the component are applied to the graphics
+ * while the painter is used, as {@link javax.swing.plaf.basic.BasicGraphicsUtils#drawString} does for each string.
+ */
+final class GlyphPainter {
+
+    /**
+     * @param c Component to paint the text on. May be null.
+     * @param g Graphics configured with the font to paint the text. Not null.
+     * @return Painter or null if the text must be painted as strings (e.g. when printing, which Swing does with
+     * {@link java.awt.font.TextLayout}, or when the component has numeric shaping).
+     */
+    static GlyphPainter of(JComponent c, Graphics g) {
+        if (!(g instanceof Graphics2D) || g instanceof PrinterGraphics || g instanceof PrintGraphics
+                || (c != null && c.getClientProperty(TextAttribute.NUMERIC_SHAPING) != null)
+                || g.getFont().hasLayoutAttributes()) {
+            return null;
+        }
+        return new GlyphPainter(c, (Graphics2D) g);
+    }
+
+    private final Graphics2D g;
+    private final Object oldAntialiasing;
+    private final Object oldLcdContrast;
+    private final boolean antialiasingChanged;
+    private final boolean lcdContrastChanged;
+
+    private GlyphPainter(JComponent c, Graphics2D g) {
+        this.g = g;
+        final Object antialiasing = c != null ? c.getClientProperty(RenderingHints.KEY_TEXT_ANTIALIASING) : null;
+        this.oldAntialiasing = g.getRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING);
+        this.antialiasingChanged = antialiasing != null && antialiasing != oldAntialiasing;
+        if (antialiasingChanged) {
+            g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, antialiasing);
+        }
+        final Object lcdContrast = antialiasing != null ? c.getClientProperty(RenderingHints.KEY_TEXT_LCD_CONTRAST)
+                : null;
+        this.oldLcdContrast = g.getRenderingHint(RenderingHints.KEY_TEXT_LCD_CONTRAST);
+        this.lcdContrastChanged = lcdContrast != null && !lcdContrast.equals(oldLcdContrast);
+        if (lcdContrastChanged) {
+            g.setRenderingHint(RenderingHints.KEY_TEXT_LCD_CONTRAST, lcdContrast);
+        }
+    }
+
+    Font getFont() {
+        return g.getFont();
+    }
+
+    /**
+     * @return Context of the graphics with the hints of the component applied - the glyph vectors must be created
+     * for it.
+     */
+    FontRenderContext getFontRenderContext() {
+        return g.getFontRenderContext();
+    }
+
+    void draw(GlyphVector glyphVector, int x, int y) {
+        g.drawGlyphVector(glyphVector, x, y);
+    }
+
+    /**
+     * Same as {@link AbstractTextLayout#drawStringInDisabledStyle}.
+     */
+    void drawInDisabledStyle(GlyphVector glyphVector, Color color, int x, int y) {
+        g.setColor(color.brighter());
+        g.drawGlyphVector(glyphVector, x + 1, y + 1);
+        g.setColor(color.darker());
+        g.drawGlyphVector(glyphVector, x, y);
+    }
+
+    /**
+     * Restores the hints of the graphics.
+     */
+    void dispose() {
+        if (antialiasingChanged) {
+            g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, oldAntialiasing);
+        }
+        if (lcdContrastChanged) {
+            g.setRenderingHint(RenderingHints.KEY_TEXT_LCD_CONTRAST, oldLcdContrast);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package io.github.parubok.text.multiline;
+
+import javax.swing.text.Segment;
+import java.awt.Font;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+import java.util.Arrays;
+
+/**
+ * Glyph vectors of the lines of a text layout, so the lines are not shaped again on each paint. The glyph vectors are
+ * created lazily, for the painted lines only, and are discarded when the font or the {@link FontRenderContext}
+ * changes.
+ * <p>
+ * Only lines of simple characters (see {@link MultilineUtils#isSimpleChar(char)}) are kept as glyph vectors, since
+ * for them {@link Font#createGlyphVector(FontRenderContext, String)} produces the same glyphs and positions as
+ * {@link java.awt.Graphics2D#drawString(String, float, float)}. The glyph vectors are created from ranges of the text,
+ * without a string per line. Not thread-safe.
+ */
+final class GlyphVectorCache {
+
+    private static final GlyphVector[] NO_GLYPH_VECTORS = new GlyphVector[0];
+
+    /**
+     * Glyph vector per slot (e.g. line index). Null element - not created yet.
+     */
+    private GlyphVector[] glyphVectors = NO_GLYPH_VECTORS;
+    private Font font;
+    private FontRenderContext frc;
+
+    /**
+     * Copy of the characters of the line, to create its glyph vector without a string.
+     */
+    private final Segment chars = new Segment(new char[0], 0, 0);
+
+    /**
+     * @param slot Slot of the line.
+     * @param text Text which contains the line. The characters of the line must be the same for the slot until the
+     * slot is cleared.
+     * @param start Index of the first character of the line in the text.
+     * @param end Index after the last character of the line in the text.
+     * @return Glyph vector of the line, or null if the line must be painted as string.
+     */
+    GlyphVector get(int slot, CharSequence text, int start, int end, Font font, FontRenderContext frc) {
+        if (!font.equals(this.font) || !frc.equals(this.frc)) {
+            Arrays.fill(glyphVectors, null);
+            this.font = font;
+            this.frc = frc;
+        }
+        if (slot >= glyphVectors.length) {
+            glyphVectors = Arrays.copyOf(glyphVectors, Math.max(slot + 1, 2 * glyphVectors.length));
+        }
+        GlyphVector glyphVector = glyphVectors[slot];
+        if (glyphVector == null) {
+            glyphVector = create(text, start, end, font, frc);
+            glyphVectors[slot] = glyphVector;
+        }
+        return glyphVector;
+    }
+
+    /**
+     * Same as {@link #get(int, CharSequence, int, int, Font, FontRenderContext)}, but doesn't keep the created glyph
+     * vector.
+     */
+    GlyphVector create(CharSequence text, int start, int end, Font font, FontRenderContext frc) {
+        if (!isSimple(text, start, end)) {
+            return null;
+        }
+        copyChars(text, start, end);
+        return font.createGlyphVector(frc, chars);
+    }
+
+    private static boolean isSimple(CharSequence text, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (!MultilineUtils.isSimpleChar(text.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void copyChars(CharSequence text, int start, int end) {
+        final int length = end - start;
+        if (chars.array.length < length) {
+            chars.array = new char[Math.max(length, 2 * chars.array.length)];
+        }
+        if (text instanceof String) {
+            ((String) text).getChars(start, end, chars.array, 0);
+        } else if (text instanceof TextBuffer) {
+            ((TextBuffer) text).getChars(start, end, chars.array, 0);
+        } else {
+            for (int i = 0; i < length; i++) {
+                chars.array[i] = text.charAt(start + i);
+            }
+        }
+        chars.offset = 0;
+        chars.count = length;
+    }
+
+    /**
+     * Discards the glyph vector of the slot.
+     */
+    void clear(int slot) {
+        if (slot < glyphVectors.length) {
+            glyphVectors[slot] = null;
+        }
+    }
+
+    /**
+     * Moves the glyph vectors of the slots starting at {@code from} to the slots starting at 0 and discards the other
+     * glyph vectors.
+     */
+    void moveToStart(int from) {
+        if (from >= glyphVectors.length) {
+            Arrays.fill(glyphVectors, null);
+        } else if (from > 0) {
+            System.arraycopy(glyphVectors, from, glyphVectors, 0, glyphVectors.length - from);
+            Arrays.fill(glyphVectors, glyphVectors.length - from, glyphVectors.length, null);
+        }
+    }
+}
@@ -0,0 +1,287 @@
+package io.github.parubok.text.multiline;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Number of lines of a text as a function of the text width limit. The function is piecewise constant and doesn't
+ * increase with the width, so it is stored as the widths where the number of lines changes (breakpoints) and
+ * a query is a binary search.
+ * <p>
+ * To build the profile, each word of the text is measured once. The lines are then calculated by
+ * {@link WidthTextLayout#getNextLine} with the widths of the line prefixes summed from the word widths, so finding
+ * a breakpoint doesn't measure the text. The paragraphs (see {@link TextLines#breakText(CharSequence,
+ * LineBreakIndex, TextMeasurer, int, int, SeparatorMatcher, java.util.concurrent.ForkJoinPool, int)}) are profiled
+ * independently and identical paragraphs only once.
+ * <p>
+ * Available only for simple text (see {@link MultilineUtils#isSimpleChar(char)}) and additive measurement, where
+ * the summed widths are the widths of the prefixes (up to the rounding of the sum).
+ * <p>
+ * The number of breakpoints of a paragraph grows with its number of words and each step of the bisection breaks
+ * the whole paragraph, so the build time grows faster than the text length. The build is abandoned when the total
+ * length of the text broken by the bisection exceeds the budget (see {@link #BUDGET_FACTOR}), since then it is
+ * cheaper to break the text for the requested widths.
+ */
+final class HeightProfile {
+
+    /**
+     * Total length of the text broken by the bisection is limited by this factor times the text length, but no less
+     * than {@link #MIN_BUDGET} characters.
+     */
+    private static final int BUDGET_FACTOR = 32;
+
+    /**
+     * Minimum budget (in characters), so short texts are always profiled.
+     */
+    private static final int MIN_BUDGET = 256 * 1024;
+
+    /**
+     * @param text Text to profile. Not null.
+     * @param lineBreaks Line separators of the text. Not null.
+     * @param measurer Measurer of the text. Not null.
+     * @param maxLines Maximum number of lines.
+     * @param separators Characters where the text may be broken.
+     * @return Profile of the text or null if it is not available for the text or exceeds the budget.
+     */
+    static HeightProfile of(CharSequence text, LineBreakIndex lineBreaks, TextMeasurer measurer, int maxLines,
+                            SeparatorMatcher separators) {
+        if (!measurer.isAdditive()) {
+            return null;
+        }
+        if (text.length() == 0) {
+            return new HeightProfile(new int[]{1}, new int[]{0});
+        }
+        final int separator = lineBreaks.getSingleSeparator();
+        final int separatorLength = separator == -1 ? 0 : LineBreakIndex.LINE_SEPARATORS.get(separator).length();
+        if (separator == -1 && lineBreaks.getSeparatorCount() > 0) {
+            return null; // different line separators
+        }
+        long budget = Math.max(MIN_BUDGET, (long) BUDGET_FACTOR * text.length());
+        final Map<String, int[]> paragraphSteps = new HashMap<>();
+        final Map<Integer, Integer> deltas = new HashMap<>(); // change of the line count by width
+        int lineCount = 0;
+        int start = 0;
+        while (true) {
+            final int end = separator == -1 ? -1 : lineBreaks.indexOf(separator, start);
+            final String paragraph = text.subSequence(start, end == -1 ? text.length() : end).toString();
+            int[] steps = paragraphSteps.get(paragraph);
+            if (steps == null) {
+                if (!isSimple(paragraph)) {
+                    return null;
+                }
+                final var paragraphProfile = new ParagraphProfile(paragraph, measurer, maxLines, separators,
+                        budget);
+                steps = paragraphProfile.getSteps();
+                if (steps == null) {
+                    return null;
+                }
+                budget -= paragraphProfile.cost;
+                paragraphSteps.put(paragraph, steps);
+            }
+            lineCount += steps[0];
+            for (int i = 1; i < steps.length; i += 2) {
+                deltas.merge(steps[i], steps[i + 1], Integer::sum);
+            }
+            if (end == -1) {
+                break;
+            }
+            start = end + separatorLength;
+        }
+        final int[] widths = new int[deltas.size() + 1];
+        final int[] lineCounts = new int[widths.length];
+        widths[0] = 1;
+        int i = 1;
+        for (int width : deltas.keySet()) {
+            widths[i++] = width;
+        }
+        Arrays.sort(widths, 1, widths.length);
+        lineCounts[0] = Math.min(lineCount, maxLines);
+        for (i = 1; i < widths.length; i++) {
+            lineCount += deltas.get(widths[i]);
+            lineCounts[i] = Math.min(lineCount, maxLines);
+        }
+        return new HeightProfile(widths, lineCounts);
+    }
+
+    private static boolean isSimple(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (!MultilineUtils.isSimpleChar(text.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Breakpoints in increasing order. The first one is 1.
+     */
+    private final int[] widths;
+
+    /**
+     * Number of lines for the width limits from {@code widths[i]} (inclusive) to {@code widths[i + 1]} (exclusive).
+     */
+    private final int[] lineCounts;
+
+    private HeightProfile(int[] widths, int[] lineCounts) {
+        this.widths = widths;
+        this.lineCounts = lineCounts;
+    }
+
+    /**
+     * @param textWidthLimit Width limit of the text in pixels (excl. insets).
+     * @return Number of lines of the text for this width limit.
+     */
+    int getLineCount(int textWidthLimit) {
+        int i = Arrays.binarySearch(widths, Math.max(1, textWidthLimit));
+        if (i < 0) {
+            i = -i - 2; // the last breakpoint before the width
+        }
+        return lineCounts[i];
+    }
+
+    /**
+     * @return Number of the width ranges with different number of lines.
+     */
+    int getBreakpointCount() {
+        return widths.length;
+    }
+
+    /**
+     * Finds the breakpoints of a single paragraph by bisection of the width range.
+     */
+    private static final class ParagraphProfile {
+        private final String paragraph;
+        private final LineBreakIndex lineBreaks;
+        private final int maxLines;
+        private final SeparatorMatcher separators;
+        private final TextMeasurer summedMeasurer;
+        private final float width;
+
+        /**
+         * Breakpoint and change of the line count at it, in pairs.
+         */
+        private int[] steps = new int[8];
+        private int stepsLength = 1;
+
+        /**
+         * Maximum {@link #cost}.
+         */
+        private final long budget;
+
+        /**
+         * Total length of the text broken by {@link #getLineCount(int)}.
+         */
+        long cost;
+
+        /**
+         * Range of the width limits with the same lines as for the last call of {@link #getLineCount(int)}: from
+         * {@code rangeMin} (inclusive) to {@code rangeMax} (exclusive).
+         */
+        private int rangeMin;
+        private int rangeMax;
+
+        ParagraphProfile(String paragraph, TextMeasurer measurer, int maxLines, SeparatorMatcher separators,
+                         long budget) {
+            this.paragraph = paragraph;
+            this.budget = budget;
+            this.lineBreaks = LineBreakIndex.of(paragraph);
+            this.maxLines = maxLines;
+            this.separators = separators;
+            // prefix widths are constant inside a word, so the width of a range which starts and ends at word
+            // boundaries is the sum of the word widths
+            final float[] prefixWidths = new float[paragraph.length() + 1];
+            float width = 0.0f;
+            int wordStart = 0;
+            for (int i = 1; i <= paragraph.length(); i++) {
+                if (i == paragraph.length() || separators.isSeparator(paragraph.charAt(i - 1))
+                        || separators.isSeparator(paragraph.charAt(i))) {
+                    width += measurer.getWidth(paragraph, wordStart, i);
+                    wordStart = i;
+                }
+                prefixWidths[i] = width;
+            }
+            this.width = width;
+            this.summedMeasurer = new TextMeasurer() {
+                @Override
+                public float getWidth(CharSequence text, int start, int end) {
+                    return prefixWidths[end] - prefixWidths[start];
+                }
+
+                @Override
+                public boolean isAdditive() {
+                    return true;
+                }
+            };
+        }
+
+        /**
+         * @return Line count for the width limit 1 followed by the steps. Null if the budget is exceeded.
+         */
+        int[] getSteps() {
+            final int lineCount = getLineCount(1);
+            steps[0] = lineCount;
+            final int maxWidth = Math.max(2, (int) Math.ceil(width) + 1);
+            final int lo = Math.min(rangeMax - 1, maxWidth - 1);
+            final int maxWidthLineCount = getLineCount(maxWidth);
+            if (!bisect(lo, lineCount, Math.max(rangeMin, lo + 1), maxWidthLineCount)) {
+                return null;
+            }
+            return Arrays.copyOf(steps, stepsLength);
+        }
+
+        /**
+         * Adds the steps of the width range from {@code lo} to {@code hi} (both inclusive). The line count is
+         * calculated for a width in the middle of the range, but the range of the widths with the same lines (see
+         * {@link PrefixWidthMeasurer#getMinWidthLimit()}) is excluded from the further bisection, so the number of
+         * the calculations is limited by the number of different line breaks in the range.
+         *
+         * @return False if the budget is exceeded.
+         */
+        private boolean bisect(int lo, int loLineCount, int hi, int hiLineCount) {
+            if (cost > budget) {
+                return false;
+            }
+            if (loLineCount == hiLineCount) {
+                return true;
+            }
+            if (hi - lo == 1) {
+                if (stepsLength + 2 > steps.length) {
+                    steps = Arrays.copyOf(steps, 2 * steps.length);
+                }
+                steps[stepsLength++] = hi;
+                steps[stepsLength++] = hiLineCount - loLineCount;
+                return true;
+            }
+            final int midLineCount = getLineCount((lo + hi) >>> 1);
+            final int midMin = Math.max(rangeMin, lo + 1);
+            final int midMax = Math.min(rangeMax - 1, hi - 1);
+            return bisect(lo, loLineCount, midMin, midLineCount) && bisect(midMax, midLineCount, hi, hiLineCount);
+        }
+
+        /**
+         * Calculates the line count and sets {@link #rangeMin} and {@link #rangeMax}.
+         */
+
+        private int getLineCount(int textWidthLimit) {
+            if (paragraph.isEmpty()) {
+                rangeMin = 1;
+                rangeMax = Integer.MAX_VALUE;
+                return 1;
+            }
+            final var prefixMeasurer = new PrefixWidthMeasurer(summedMeasurer, paragraph);
+            int lineCount = 0;
+            int startIndex = 0;
+            do {
+                final long line = WidthTextLayout.breakLine(paragraph, lineBreaks, startIndex, textWidthLimit,
+                        separators, prefixMeasurer);
+                lineCount++;
+                startIndex = NextLine.getNextLineStartIndex(line);
+            } while (startIndex != -1 && lineCount < maxLines);
+            cost += startIndex == -1 ? paragraph.length() : startIndex;
+            rangeMin = prefixMeasurer.getMinWidthLimit();
+            rangeMax = prefixMeasurer.getMaxWidthLimit();
+            return lineCount;
+        }
+    }
+}
@@ -0,0 +1,700 @@
+package io.github.parubok.text.multiline;
+
+import javax.swing.JViewport;
+import javax.swing.SwingUtilities;
+import javax.swing.event.ChangeListener;
+import java.awt.Color;
+import java.awt.Container;
+import java.awt.Dimension;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Insets;
+import java.awt.Point;
+import java.awt.font.GlyphVector;
+import java.util.Arrays;
+
+/**
+ * Width based layout of a huge text, which breaks into lines only the displayed part of the text (see
+ * {@link MultilineLabel#setLazyLayout(boolean)}).
+ * <p>
+ * The text is divided into blocks of about {@link #BLOCK_LENGTH} characters at line separators, since lines of
+ * a paragraph don't depend on the text before and after it. A block is broken into lines when one of its lines is
+ * displayed. The number of lines of a block which is not broken yet is estimated from the average number of lines per
+ * character of the broken blocks, so the preferred height of the label is refined as the text is scrolled. If the
+ * label is the view of a {@link JViewport}, the layout breaks the blocks which become visible when the view position
+ * changes, and moves the view position by the change of the lines above the displayed text, so the displayed text
+ * stays in place.
+ * <p>
+ * When text is appended to the label (see {@link MultilineLabel#appendText(CharSequence)}), only the lines of the last
+ * paragraph are discarded and the blocks of the appended text are added, so they are broken when displayed. The
+ * blocks of the lines which are removed from the beginning of the text are dropped.
+ * <p>
+ * The preferred width is the width limit, since the widest line of the text is not known.
+ */
+final class LazyTextLayout extends AbstractTextLayout {
+
+    /**
+     * Approximate number of characters in a block of the text which is broken into lines at once.
+     */
+    static final int BLOCK_LENGTH = 16 * 1024;
+
+    private CharSequence text;
+    private int blockCount;
+
+    /**
+     * Number of characters removed from the beginning of the text after the nominal start of the first block, so
+     * the nominal start of a block is {@code block * BLOCK_LENGTH - removedChars}. Less than {@link #BLOCK_LENGTH}.
+     */
+    private int removedChars;
+
+    /**
+     * Start index of each block: 0 for the first block, otherwise - the index of the first paragraph which starts at
+     * or after the nominal start of the block (see {@link #getNominalStart(int)}), or the text length if there is no
+     * such paragraph. The paragraphs of a block start before the start of the next block, so a block may have no
+     * paragraphs. -1 if not found yet.
+     */
+    private int[] blockStarts;
+
+    /**
+     * Parameters of {@link #blockLines}. Null if no lines were calculated yet.
+     */
+    private WidthTextLayout.LayoutKey key;
+    private TextMeasurer measurer;
+    private int textWidthLimit;
+
+    /**
+     * Lines of each block, with indexes in the whole text. Null for a block which is not broken yet.
+     */
+    private TextLines[] blockLines;
+
+    /**
+     * Number of characters and lines of the broken blocks, for the estimate of the other blocks.
+     */
+    private long brokenChars;
+    private long brokenLines;
+
+    /**
+     * Lines per character of the text before any block is broken.
+     */
+    private double initialLinesPerChar;
+
+    /**
+     * Index of the first line of each block (incl. the estimated lines), followed by the total number of lines.
+     */
+    private int[] lineOffsets;
+    private boolean lineOffsetsValid;
+
+    /**
+     * Viewport of the label which is listened by this layout. Null if the label is not in a viewport.
+     */
+    private JViewport viewport;
+    private final ChangeListener viewportListener = e -> viewportChanged();
+
+    /**
+     * True while the layout moves the view position.
+     */
+    private boolean anchoring;
+
+    /**
+     * Index of the text which was displayed at the top of the viewport before the label width was changed, and its
+     * distance from the top of the viewport, so the text stays in place after the lines are recalculated for the new
+     * width. The index is -1 if there is no such text.
+     */
+    private int pendingAnchorIndex = -1;
+    private int pendingAnchorY;
+
+    LazyTextLayout(MultilineLabel label) {
+        super(label);
+        this.text = label.getTextChars();
+        this.blockCount = getNominalBlockCount();
+        this.blockStarts = new int[blockCount];
+        Arrays.fill(blockStarts, 1, blockCount, -1);
+        this.lineOffsets = new int[blockCount + 1];
+    }
+
+    private int getNominalBlockCount() {
+        return (int) Math.max(1, ((long) text.length() + removedChars + BLOCK_LENGTH - 1) / BLOCK_LENGTH);
+    }
+
+    /**
+     * @return Index in the text where the block would start if the text had no paragraphs. Negative for the first
+     * block if characters were removed from the beginning of the text.
+     */
+    private long getNominalStart(int block) {
+        return (long) block * BLOCK_LENGTH - removedChars;
+    }
+
+    /**
+     * Called by the label after text was appended to it and, possibly, the first lines of its text were removed.
+     * Drops the blocks of the removed lines, discards the lines of the paragraph which the appended text continues
+     * and adds the blocks of the appended text. The other lines are kept.
+     *
+     * @param text Text of the label. Not null.
+     * @param appendIndex Index in the text where the appended text starts.
+     * @param removedChars Number of characters of the lines removed from the beginning of the text.
+     */
+    void textAppended(TextBuffer text, int appendIndex, int removedChars) {
+        this.text = text;
+        lineOffsetsValid = false;
+        if (removedChars > 0) {
+            removeText(removedChars);
+        }
+        // blocks which were not found in the previous text may start in the appended text
+        for (int block = 1; block < blockCount; block++) {
+            if (blockStarts[block] == appendIndex) {
+                blockStarts[block] = -1;
+            }
+        }
+        if (blockLines != null) {
+            // the lines of the last paragraph may change
+            for (int block = 0; block < blockCount; block++) {
+                if (block + 1 == blockCount || blockStarts[block + 1] == -1) {
+                    blockLines[block] = null;
+                }
+            }
+        }
+        final int newBlockCount = getNominalBlockCount();
+        if (newBlockCount > blockCount) {
+            blockStarts = Arrays.copyOf(blockStarts, newBlockCount);
+            Arrays.fill(blockStarts, blockCount, newBlockCount, -1);
+            if (blockLines != null) {
+                blockLines = Arrays.copyOf(blockLines, newBlockCount);
+            }
+            lineOffsets = new int[newBlockCount + 1];
+            blockCount = newBlockCount;
+        }
+    }
+
+    /**
+     * Drops the blocks whose paragraphs were removed from the beginning of the text and shifts the indexes of the
+     * other blocks. The lines of the first remaining block are discarded, since some of its paragraphs may be removed.
+     */
+    private void removeText(int charCount) {
+        if (pendingAnchorIndex != -1) {
+            pendingAnchorIndex = Math.max(0, pendingAnchorIndex - charCount);
+        }
+        removedChars += charCount;
+        int droppedBlocks = 0;
+        while (droppedBlocks + 1 < blockCount && getNominalStart(droppedBlocks + 1) <= 0) {
+            droppedBlocks++;
+        }
+        removedChars -= droppedBlocks * BLOCK_LENGTH;
+        blockCount -= droppedBlocks;
+        blockStarts = Arrays.copyOfRange(blockStarts, droppedBlocks, droppedBlocks + blockCount);
+        lineOffsets = new int[blockCount + 1];
+        blockStarts[0] = 0;
+        for (int block = 1; block < blockCount; block++) {
+            if (blockStarts[block] != -1) {
+                blockStarts[block] -= charCount;
+            }
+        }
+        if (blockLines != null) {
+            blockLines = Arrays.copyOfRange(blockLines, droppedBlocks, droppedBlocks + blockCount);
+            blockLines[0] = null;
+            for (int block = 1; block < blockCount; block++) {
+                if (blockLines[block] != null && blockLines[block] != TextLines.EMPTY) {
+                    blockLines[block].removeText(charCount);
+                }
+            }
+        }
+    }
+
+    private WidthTextLayout.LayoutKey createKey(int wLimit, FontMetrics fm, Insets insets) {
+        return new WidthTextLayout.LayoutKey(wLimit, fm, insets, label.getLineSpacing(), label.getSeparatorMatcher(),
+                label.getMaxLines(), label.getMeasurementMode());
+    }
+
+    /**
+     * Discards the lines if they were calculated for other parameters.
+     */
+    private void setKey(WidthTextLayout.LayoutKey key, FontMetrics fm) {
+        if (key.equals(this.key)) {
+            return;
+        }
+        this.key = key;
+        this.textWidthLimit = Math.max(1, key.wLimit - key.insets.right - key.insets.left);
+        this.measurer = TextMeasurer.of(label, fm, key.measurementMode);
+        this.initialLinesPerChar = (double) fm.charWidth('n') / textWidthLimit;
+        this.blockLines = new TextLines[blockCount];
+        this.brokenChars = 0;
+        this.brokenLines = 0;
+        this.lineOffsetsValid = false;
+    }
+
+    private int getBlockStart(int block) {
+        int start = blockStarts[block];
+        if (start == -1) {
+            start = findParagraphStart((int) getNominalStart(block));
+            // the search for the next blocks which start before the paragraph would find the same paragraph
+            for (int i = block; i < blockCount && getNominalStart(i) <= start; i++) {
+                blockStarts[i] = start;
+            }
+        }
+        return start;
+    }
+
+    /**
+     * @param from Positive index in the text.
+     * @return Index of the first paragraph which starts at or after the specified index, or the text length if
+     * there is no such paragraph.
+     */
+    private int findParagraphStart(int from) {
+        final int length = text.length();
+        for (int i = from - 1; i < length; i++) {
+            final char ch = text.charAt(i);
+            if (ch == '\n' || (ch == '\r' && (i + 1 == length || text.charAt(i + 1) != '\n'))) {
+                return i + 1;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * @return Length of the line separator which ends before the specified index. 0 if there is no such separator.
+     */
+    private int getSeparatorLength(int index) {
+        if (index == 0) {
+            return 0;
+        }
+        final char ch = text.charAt(index - 1);
+        if (ch == '\n') {
+            return index > 1 && text.charAt(index - 2) == '\r' ? 2 : 1;
+        }
+        return ch == '\r' ? 1 : 0;
+    }
+
+    /**
+     * @return Number of characters from the start of the block to the start of the next block.
+     */
+    private int getBlockSpan(int block) {
+        final int end = block + 1 < blockCount ? getBlockStart(block + 1) : text.length();
+        return end - getBlockStart(block);
+    }
+
+    private void breakBlock(int block) {
+        final int start = getBlockStart(block);
+        final int next = block + 1 < blockCount ? getBlockStart(block + 1) : -1;
+        final TextLines lines;
+        if (next == start || (next == -1 && start == text.length() && getSeparatorLength(start) == 0)) {
+            lines = TextLines.EMPTY; // no paragraph starts in the block
+        } else {
+            final int end = next == -1 ? text.length() : next - getSeparatorLength(next);
+            lines = TextLines.breakParagraphs(text, start, end, measurer, textWidthLimit, key.separators);
+        }
+        blockLines[block] = lines;
+        brokenChars += (next == -1 ? text.length() : next) - start;
+        brokenLines += lines.getLineCount();
+        lineOffsetsValid = false;
+    }
+
+    /**
+     * Estimates the number of lines of the block from its nominal length, so the text is not scanned for the
+     * block starts.
+     */
+    private int estimateLineCount(int block) {
+        final long span;
+        if (blockStarts[block] != -1 && (block + 1 == blockCount || blockStarts[block + 1] != -1)) {
+            span = getBlockSpan(block);
+        } else {
+            span = Math.min(text.length(), getNominalStart(block + 1)) - Math.max(0, getNominalStart(block));
+        }
+        final double linesPerChar = brokenChars > 0 ? (double) brokenLines / brokenChars : initialLinesPerChar;
+        return (int) Math.max(1, Math.min(span, Math.round(span * linesPerChar)));
+    }
+
+    private void updateLineOffsets() {
+        if (lineOffsetsValid) {
+            return;
+        }
+        long offset = 0;
+        for (int block = 0; block < blockCount; block++) {
+            lineOffsets[block] = (int) Math.min(offset, Integer.MAX_VALUE);
+            offset += blockLines[block] != null ? blockLines[block].getLineCount() : estimateLineCount(block);
+        }
+        lineOffsets[blockCount] = (int) Math.min(offset, Integer.MAX_VALUE);
+        lineOffsetsValid = true;
+    }
+
+    /**
+     * @return Number of lines of the text (incl. the estimated lines), without the max. number of lines.
+     */
+    private int getTotalLineCount() {
+        updateLineOffsets();
+        return lineOffsets[blockCount];
+    }
+
+    /**
+     * @return Number of the displayed lines (incl. the estimated lines).
+     */
+    int getLineCount() {
+        return Math.min(getTotalLineCount(), key.maxLines);
+    }
+
+    private boolean isTruncated() {
+        return getTotalLineCount() > key.maxLines;
+    }
+
+    /**
+     * @param line Index of a line. Less than {@link #getTotalLineCount()}.
+     * @return Index of the block of the line.
+     */
+    private int getBlockOfLine(int line) {
+        updateLineOffsets();
+        int low = 0;
+        int high = blockCount - 1;
+        while (low < high) { // the last block which starts at or before the line
+            final int middle = (low + high + 1) >>> 1;
+            if (lineOffsets[middle] <= line) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return Index of the block of the paragraph which contains the character.
+     */
+    private int getBlockOfIndex(int index) {
+        int block = (int) Math.min(((long) index + removedChars) / BLOCK_LENGTH, blockCount - 1);
+        while (block > 0 && getBlockStart(block) > index) {
+            block--;
+        }
+        return block;
+    }
+
+    /**
+     * @return Index of the first character of the line. Estimated if the block of the line is not broken.
+     */
+    int getLineStart(int line) {
+        final int block = getBlockOfLine(line);
+        final TextLines lines = blockLines[block];
+        if (lines != null) {
+            return lines.getLineStart(line - lineOffsets[block]);
+        }
+        final int count = lineOffsets[block + 1] - lineOffsets[block];
+        return getBlockStart(block) + (int) ((long) (line - lineOffsets[block]) * getBlockSpan(block) / count);
+    }
+
+    /**
+     * @return Index of the line which contains the character. Estimated if the block of the line is not broken.
+     */
+    int getLineOfIndex(int index) {
+        final int block = getBlockOfIndex(index);
+        updateLineOffsets();
+        final TextLines lines = blockLines[block];
+        if (lines != null) {
+            return lineOffsets[block] + lines.getLineAt(index);
+        }
+        final int count = lineOffsets[block + 1] - lineOffsets[block];
+        final int span = getBlockSpan(block);
+        final int line = span == 0 ? 0 : (int) ((long) (index - getBlockStart(block)) * count / span);
+        return lineOffsets[block] + Math.min(line, count - 1);
+    }
+
+    /**
+     * Breaks the blocks of the lines which are not broken yet. Since the broken blocks replace the estimated lines,
+     * a line index may refer to another line after the call.
+     *
+     * @return True if any block was broken.
+     */
+    boolean breakLines(int firstLine, int lastLine) {
+        boolean broken = false;
+        int line = Math.max(0, firstLine);
+        while (line <= lastLine && line < getLineCount()) {
+            final int block = getBlockOfLine(line);
+            if (blockLines[block] == null) {
+                breakBlock(block);
+                broken = true;
+            } else {
+                line = lineOffsets[block + 1];
+            }
+        }
+        return broken;
+    }
+
+    /**
+     * @return True if the block of the line is broken into lines. For tests.
+     */
+    boolean isBroken(int line) {
+        return blockLines[getBlockOfLine(line)] != null;
+    }
+
+    /**
+     * @return Number of the blocks which are broken into lines. For tests.
+     */
+    int getBrokenBlockCount() {
+        return blockLines == null ? 0 : (int) Arrays.stream(blockLines).filter(lines -> lines != null).count();
+    }
+
+    /**
+     * @return The first line in the range which belongs to a broken block, otherwise - the first line of the range.
+     */
+    private int getAnchorLine(int firstLine, int lastLine) {
+        final int first = Math.max(0, Math.min(firstLine, getLineCount() - 1));
+        int line = first;
+        while (line <= lastLine && line < getLineCount()) {
+            final int block = getBlockOfLine(line);
+            if (blockLines[block] != null) {
+                return line;
+            }
+            line = lineOffsets[block + 1];
+        }
+        return first;
+    }
+
+    private void updateViewport() {
+        final Container parent = label.getParent();
+        if (parent != viewport) {
+            if (viewport != null) {
+                viewport.removeChangeListener(viewportListener);
+            }
+            viewport = parent instanceof JViewport ? (JViewport) parent : null;
+            if (viewport != null) {
+                viewport.addChangeListener(viewportListener);
+            }
+        }
+    }
+
+    /**
+     * Called when the view position or size of the viewport changes. Breaks the blocks of the visible lines and
+     * moves the view position, so the text at the top of the viewport (or the first visible line of a block which
+     * was broken before) stays in place.
+     */
+    private void viewportChanged() {
+        if (label.getTextLayout() != this) {
+            viewport.removeChangeListener(viewportListener); // the layout was replaced
+            viewport = null;
+            return;
+        }
+        if (label.getParent() != viewport) {
+            updateViewport();
+            return;
+        }
+        final var insets = label.getInsets();
+        final int wLimit = label.getWidth();
+        if (anchoring || label.getTextLength() == 0 || wLimit - insets.right - insets.left < 1) {
+            return;
+        }
+        final var fm = label.getFontMetrics(label.getFont());
+        setKey(createKey(wLimit, fm, insets), fm);
+        final int yIncrement = MultilineUtils.getHeightIncrement(fm, label.getLineSpacing());
+        final Point position = viewport.getViewPosition();
+        final int extentHeight = viewport.getExtentSize().height;
+        int top = position.y - insets.top; // relative to the top of the first line
+        final int anchorIndex;
+        final int anchorY;
+        if (pendingAnchorIndex != -1) {
+            anchorIndex = pendingAnchorIndex;
+            anchorY = pendingAnchorY;
+            pendingAnchorIndex = -1;
+            top = getLineOfIndex(anchorIndex) * yIncrement - anchorY;
+        } else {
+            final int anchorLine = getAnchorLine(Math.floorDiv(top, yIncrement),
+                    Math.floorDiv(top + extentHeight, yIncrement));
+            anchorIndex = getLineStart(anchorLine);
+            anchorY = anchorLine * yIncrement - top;
+        }
+        final int lineCount = getLineCount();
+        while (breakLines(Math.floorDiv(top, yIncrement), Math.floorDiv(top + extentHeight, yIncrement))) {
+            top = getLineOfIndex(anchorIndex) * yIncrement - anchorY;
+        }
+        final int height = getPreferredHeight(fm, insets);
+        if (getLineCount() != lineCount) {
+            label.setSize(label.getWidth(), height);
+            label.revalidate();
+        }
+        final int y = Math.max(0, Math.min(top + insets.top, height - extentHeight));
+        if (y != position.y) {
+            anchoring = true;
+            try {
+                viewport.setViewPosition(new Point(position.x, y));
+            } finally {
+                anchoring = false;
+            }
+        }
+    }
+
+    private int getPreferredHeight(FontMetrics fm, Insets insets) {
+        final int lineCount = getLineCount();
+        final int height = lineCount == 0 ? 0 : getTextPreferredHeight(lineCount, fm, key.lineSpacing);
+        return height + insets.top + insets.bottom;
+    }
+
+    @Override
+    public Dimension calculatePreferredSize() {
+        final int wLimit = label.isUseCurrentWidthForPreferredSize() && label.getWidth() > 0 ? label.getWidth()
+                : label.getPreferredWidthLimit();
+        return calcPreferredSize(wLimit);
+    }
+
+    @Override
+    public int calculatePreferredHeight(int width) {
+        return calcPreferredSize(width).height;
+    }
+
+    /**
+     * Lines are calculated only for the label width, so for another width (e.g. the preferred width limit of a label
+     * which already has lines for its width) the number of lines is estimated from the lines for the label width.
+     *
+     * @param wLimit Width limit in pixels (incl. insets).
+     */
+    private Dimension calcPreferredSize(int wLimit) {
+        updateViewport();
+        final var fm = label.getFontMetrics(label.getFont());
+        final var insets = label.getInsets();
+        final var newKey = createKey(wLimit, fm, insets);
+        final int newTextWidthLimit = Math.max(1, wLimit - insets.right - insets.left);
+        final int height;
+        if (key == null || wLimit == label.getWidth() || !newKey.equalsExceptWidth(key)) {
+            setKey(newKey, fm);
+            if (blockLines[0] == null) {
+                breakBlock(0); // the estimate of the other blocks is based on the lines of the first block
+            }
+            height = getPreferredHeight(fm, insets);
+        } else {
+            // the number of lines is roughly inversely proportional to the width
+            final long lineCount = Math.min(newKey.maxLines,
+                    Math.round((double) getTotalLineCount() * textWidthLimit / newTextWidthLimit));
+            height = (lineCount == 0 ? 0 : getTextPreferredHeight((int) lineCount, fm, newKey.lineSpacing))
+                    + insets.top + insets.bottom;
+        }
+        return new Dimension(newTextWidthLimit + insets.left + insets.right, height);
+    }
+
+    /**
+     * When the width changes, keeps the text at the top of the viewport, so it stays in place after the lines are
+     * recalculated for the new width.
+     */
+    @Override
+    public void preSetBounds(int x, int y, int width, int height) {
+        if (width == label.getWidth() || width < 1 || label.getTextLength() == 0) {
+            return;
+        }
+        if (viewport != null && label.getParent() == viewport && key != null && key.wLimit == label.getWidth()
+                && pendingAnchorIndex == -1) {
+            final var fm = label.getFontMetrics(label.getFont());
+            final int yIncrement = MultilineUtils.getHeightIncrement(fm, key.lineSpacing);
+            final int top = viewport.getViewPosition().y - key.insets.top;
+            final int anchorLine = getAnchorLine(Math.floorDiv(top, yIncrement),
+                    Math.floorDiv(top + viewport.getExtentSize().height, yIncrement));
+            pendingAnchorIndex = getLineStart(anchorLine);
+            pendingAnchorY = anchorLine * yIncrement - top;
+        }
+        SwingUtilities.invokeLater(() -> {
+            label.revalidate();
+            label.repaint();
+        });
+    }
+
+    /**
+     * @return Lines for the label width. The blocks of the lines are broken when the lines are accessed, so the
+     * indexes of the lines after the broken blocks may change.
+     */
+    @Override
+    LineTable getLineTable() {
+        final var insets = label.getInsets();
+        final int wLimit = label.getWidth();
+        if (label.getTextLength() == 0 || wLimit - insets.right - insets.left < 1) {
+            return TextLines.EMPTY;
+        }
+        final var fm = label.getFontMetrics(label.getFont());
+        setKey(createKey(wLimit, fm, insets), fm);
+        return new LineTable() {
+            @Override
+            public int getLineCount() {
+                return LazyTextLayout.this.getLineCount();
+            }
+
+            @Override
+            public int getLineStart(int index) {
+                breakLines(index, index);
+                return LazyTextLayout.this.getLineStart(index);
+            }
+
+            @Override
+            public int getLineEnd(int index) {
+                breakLines(index, index);
+                if (isTruncated() && index == key.maxLines - 1) {
+                    return LazyTextLayout.this.getLineStart(index); // ellipsis
+                }
+                final int block = getBlockOfLine(index);
+                return blockLines[block].getLineEnd(index - lineOffsets[block]);
+            }
+
+            @Override
+            public int getLineAt(int textIndex) {
+                final int block = getBlockOfIndex(textIndex);
+                if (blockLines[block] == null) {
+                    breakBlock(block);
+                }
+                return Math.min(getLineOfIndex(textIndex), getLineCount() - 1);
+            }
+
+            @Override
+            public boolean isTruncated() {
+                return LazyTextLayout.this.isTruncated();
+            }
+        };
+    }
+
+    @Override
+    public void paintText(Graphics g) {
+        final var insets = label.getInsets();
+        final int wLimit = label.getWidth();
+        if (label.getTextLength() == 0 || wLimit - insets.right - insets.left < 1) {
+            return;
+        }
+        updateViewport();
+        final var fm = label.getFontMetrics(label.getFont());
+        setKey(createKey(wLimit, fm, insets), fm);
+        final int yIncrement = MultilineUtils.getHeightIncrement(fm, key.lineSpacing);
+        final var clip = g.getClipBounds();
+        final int firstLine = MultilineUtils.getFirstVisibleLine(clip, insets.top, fm, yIncrement);
+        final int lastVisibleLine = MultilineUtils.getLastVisibleLine(clip, insets.top, fm, yIncrement);
+        final int lineCount = getLineCount();
+        if (breakLines(firstLine, lastVisibleLine) && getLineCount() != lineCount) {
+            SwingUtilities.invokeLater(() -> {
+                label.revalidate(); // the preferred height has changed
+                label.repaint();
+            });
+        }
+        final int lastLine = Math.min(getLineCount() - 1, lastVisibleLine);
+        final boolean truncated = isTruncated();
+        final boolean enabled = label.isEnabled();
+        final Color background = label.getBackground();
+        final int x = insets.left;
+        int y = insets.top + fm.getAscent() + yIncrement * firstLine;
+        final GlyphPainter painter = GlyphPainter.of(label, g);
+        try {
+            for (int i = firstLine; i <= lastLine; i++) {
+                if (truncated && i == key.maxLines - 1) {
+                    WidthTextLayout.paintLine(label, g, null, null, TextLines.ELLIPSIS, enabled, background, x, y);
+                } else {
+                    final int block = getBlockOfLine(i);
+                    final TextLines lines = blockLines[block];
+                    final int index = i - lineOffsets[block];
+                    final GlyphVector glyphVector = painter != null
+                            ? lines.getGlyphVector(index, text, painter.getFont(), painter.getFontRenderContext())
+                            : null;
+                    WidthTextLayout.paintLine(label, g, painter, glyphVector,
+                            glyphVector != null ? null : lines.getLine(index, text), enabled, background, x, y);
+                }
+                y += yIncrement;
+            }
+        } finally {
+            if (painter != null) {
+                painter.dispose();
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "LazyTextLayout{" +
+                "blockCount=" + blockCount +
+                ", brokenBlockCount=" + getBrokenBlockCount() +
+                '}';
+    }
+}
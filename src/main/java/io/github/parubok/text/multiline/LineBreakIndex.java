@@ -0,0 +1,127 @@
+package io.github.parubok.text.multiline;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Positions of line separators in a text. Allows to find the next line separator without scanning the text.
+ * Not modified after creation, except by {@link #reset(CharSequence)} which is used only by the owner of the object.
+ */
+final class LineBreakIndex {
+
+    /**
+     * Supported line separators. The order is important.
+     */
+    static final List<String> LINE_SEPARATORS = List.of("\r\n", "\n", "\r");
+
+    private static final int[] NO_POSITIONS = new int[0];
+
+    /**
+     * @param text Text to index. Not null.
+     */
+    static LineBreakIndex of(CharSequence text) {
+        final var index = new LineBreakIndex();
+        index.reset(text);
+        return index;
+    }
+
+    /**
+     * Sorted positions of each separator from {@link #LINE_SEPARATORS} (in the same order). Only the first
+     * {@code counts[i]} elements of {@code positions[i]} are used.
+     */
+    private final int[][] positions = {NO_POSITIONS, NO_POSITIONS, NO_POSITIONS};
+    private final int[] counts = new int[3];
+
+    LineBreakIndex() {
+    }
+
+    /**
+     * Indexes another text. Reuses the arrays of the previous text if they are large enough, so the steady state
+     * doesn't allocate.
+     *
+     * @param text Text to index. Not null.
+     */
+    void reset(CharSequence text) {
+        int crlfCount = 0;
+        int lfCount = 0;
+        int crCount = 0;
+        final int length = text.length();
+        for (int i = 0; i < length; i++) {
+            final char ch = text.charAt(i);
+            if (ch == '\n') {
+                lfCount++;
+            } else if (ch == '\r') {
+                crCount++;
+                if (i + 1 < length && text.charAt(i + 1) == '\n') {
+                    crlfCount++;
+                }
+            }
+        }
+        counts[0] = crlfCount;
+        counts[1] = lfCount;
+        counts[2] = crCount;
+        for (int i = 0; i < counts.length; i++) {
+            if (positions[i].length < counts[i]) {
+                positions[i] = new int[counts[i]];
+            }
+        }
+        final int[] crlf = positions[0];
+        final int[] lf = positions[1];
+        final int[] cr = positions[2];
+        if (lfCount > 0 || crCount > 0) {
+            crlfCount = lfCount = crCount = 0;
+            for (int i = 0; i < length; i++) {
+                final char ch = text.charAt(i);
+                if (ch == '\n') {
+                    lf[lfCount++] = i;
+                } else if (ch == '\r') {
+                    cr[crCount++] = i;
+                    if (i + 1 < length && text.charAt(i + 1) == '\n') {
+                        crlf[crlfCount++] = i;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return Number of line separators in the text ({@code "\r\n"} is counted as a single separator).
+     */
+    int getSeparatorCount() {
+        return counts[1] + counts[2] - counts[0];
+    }
+
+    /**
+     * @return Index (in {@link #LINE_SEPARATORS}) of the only line separator used in the text, or -1 if the text
+     * contains no line separators or different line separators.
+     */
+    int getSingleSeparator() {
+        final int crlfCount = counts[0];
+        final int lfCount = counts[1];
+        final int crCount = counts[2];
+        if (lfCount == 0 && crCount == 0) {
+            return -1;
+        } else if (crCount == 0) {
+            return 1;
+        } else if (lfCount == 0) {
+            return 2;
+        }
+        return crlfCount == lfCount && crlfCount == crCount ? 0 : -1;
+    }
+
+    /**
+     * Equivalent of {@code text.indexOf(LINE_SEPARATORS.get(separator), fromIndex)}.
+     *
+     * @param separator Index of the line separator in {@link #LINE_SEPARATORS}.
+     * @param fromIndex Index to start the search from.
+     * @return Index of the first occurrence of the separator, or -1 if there is no such occurrence.
+     */
+    int indexOf(int separator, int fromIndex) {
+        final int count = counts[separator];
+        int i = Arrays.binarySearch(positions[separator], 0, count, fromIndex);
+        if (i < 0) {
+            i = -i - 1; // insertion point
+        }
+        return i < count ? positions[separator][i] : -1;
+    }
+}
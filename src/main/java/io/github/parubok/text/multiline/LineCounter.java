@@ -0,0 +1,111 @@
+package io.github.parubok.text.multiline;
+
+import javax.swing.JComponent;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.font.FontRenderContext;
+import java.awt.font.TextAttribute;
+
+/**
+ * Counts lines of a text without allocating objects, e.g. to calculate heights of many table rows. The result is
+ * the same as the number of lines of {@link WidthTextLayout}.
+ * <p>
+ * Each thread has its own counter which keeps the objects needed to break a text (line separator positions, prefix
+ * measurer, etc.) between calls. A simple text (see {@link MultilineUtils#isSimpleChar(char)}) is measured by
+ * summing the character advances from {@link AdvanceWidthCache}, which gives the exact width of such text. Other text
+ * is measured exactly, with allocation. The exact measurer is kept for the last component and font metrics, so the
+ * calls for the same component don't allocate it.
+ */
+final class LineCounter implements TextMeasurer {
+
+    private static final ThreadLocal<LineCounter> COUNTERS = ThreadLocal.withInitial(LineCounter::new);
+
+    /**
+     * @param c Component to measure the text for. May be null.
+     * @param fm Not null.
+     * @param text Text to break. Not null.
+     * @param textWidthLimit Positive width limit of the text in pixels (excl. insets).
+     * @param maxLines Maximum number of lines. The counting stops when the text has more lines.
+     * @param separators Characters where the text may be broken.
+     * @return Number of lines of the text, but not more than {@code maxLines}.
+     */
+    static int countLines(JComponent c, FontMetrics fm, CharSequence text, int textWidthLimit, int maxLines,
+                          SeparatorMatcher separators) {
+        return COUNTERS.get().count(c, fm, text, textWidthLimit, maxLines, separators);
+    }
+
+    private final LineBreakIndex lineBreaks = new LineBreakIndex();
+    private final PrefixWidthMeasurer prefixMeasurer = new PrefixWidthMeasurer(this, "");
+
+    private Font font;
+    private FontRenderContext frc;
+    private AdvanceWidthCache.AdvanceTable table;
+
+    /**
+     * Measurer of the text which is not simple, for {@link #exactComponent} and {@link #exactMetrics}. Null if not
+     * created yet.
+     */
+    private ExactTextMeasurer exactMeasurer;
+    private JComponent exactComponent;
+    private FontMetrics exactMetrics;
+
+    private boolean additive;
+
+    private LineCounter() {
+    }
+
+    private int count(JComponent c, FontMetrics fm, CharSequence text, int textWidthLimit, int maxLines,
+                      SeparatorMatcher separators) {
+        if (text.length() == 0) {
+            return 0;
+        }
+        if (fm.getFont() != font || !fm.getFontRenderContext().equals(frc)) {
+            font = fm.getFont();
+            frc = fm.getFontRenderContext();
+            table = AdvanceWidthCache.getTable(fm);
+        }
+        if (exactMeasurer == null || c != exactComponent || fm != exactMetrics) {
+            exactMeasurer = new ExactTextMeasurer(c, fm);
+            exactComponent = c;
+            exactMetrics = fm;
+        }
+        this.additive = !font.hasLayoutAttributes()
+                && (c == null || c.getClientProperty(TextAttribute.NUMERIC_SHAPING) == null);
+        lineBreaks.reset(text);
+        prefixMeasurer.setText(text);
+        try {
+            int lineCount = 0;
+            int startIndex = 0;
+            do {
+                final long line = WidthTextLayout.breakLine(text, lineBreaks, startIndex, textWidthLimit,
+                        separators, prefixMeasurer);
+                lineCount++;
+                startIndex = NextLine.getNextLineStartIndex(line);
+            } while (startIndex != -1 && lineCount < maxLines);
+            return lineCount;
+        } finally {
+            prefixMeasurer.setText("");
+        }
+    }
+
+    @Override
+    public float getWidth(CharSequence text, int start, int end) {
+        if (additive) {
+            float width = 0.0f;
+            for (int i = start; i < end; i++) {
+                final char ch = text.charAt(i);
+                if (!MultilineUtils.isSimpleChar(ch)) {
+                    return exactMeasurer.getWidth(text, start, end);
+                }
+                width += table.getAdvance(ch);
+            }
+            return width;
+        }
+        return exactMeasurer.getWidth(text, start, end);
+    }
+
+    @Override
+    public boolean isAdditive() {
+        return additive;
+    }
+}
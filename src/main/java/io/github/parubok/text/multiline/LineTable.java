@@ -0,0 +1,34 @@
+package io.github.parubok.text.multiline;
+
+/**
+ * Displayed lines of a label text, as ranges of the text. Used for hit-testing (see
+ * {@link MultilineLabel#viewToOffset(java.awt.Point)}), so the lines are not calculated again.
+ */
+interface LineTable {
+
+    int getLineCount();
+
+    /**
+     * @param index Index of the line.
+     * @return Index of the first character of the line in the text.
+     */
+    int getLineStart(int index);
+
+    /**
+     * @param index Index of the line.
+     * @return Index after the last displayed character of the line in the text. Equals to the line start for the
+     * ellipsis line (see {@link #isTruncated()}).
+     */
+    int getLineEnd(int index);
+
+    /**
+     * @param textIndex Index in the text.
+     * @return Index of the last line which starts at or before the text index. 0 if there is no such line.
+     */
+    int getLineAt(int textIndex);
+
+    /**
+     * @return True if the text has more lines than the max. number of lines, so the last line is ellipsis.
+     */
+    boolean isTruncated();
+}
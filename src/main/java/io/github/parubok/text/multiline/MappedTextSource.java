@@ -0,0 +1,229 @@
+package io.github.parubok.text.multiline;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Text of a file which is mapped into memory and decoded lazily, in chunks. Allows to display a large file
+ * in {@link MultilineLabel} (see {@link MultilineLabel#setTextSource(CharSequence)}) without loading the whole file
+ * into the heap.
+ * <p>
+ * When the source is opened, the file is decoded once to find the number of characters in each chunk. After that,
+ * only the recently accessed chunks are kept decoded. Malformed input is replaced with {@code U+FFFD}.
+ * <p>
+ * Supported charsets are UTF-8 and single-byte charsets (e.g. ISO-8859-1). The file must not be modified while
+ * the source is used.
+ * <p>
+ * This class is thread-safe.
+ */
+public final class MappedTextSource implements CharSequence {
+
+    /**
+     * Default size of a chunk in bytes.
+     */
+    static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+
+    /**
+     * Max. number of decoded chunks to keep.
+     */
+    private static final int MAX_DECODED_CHUNKS = 16;
+
+    /**
+     * Maps the file into memory.
+     *
+     * @param file File to display. Not null.
+     * @param charset Charset of the file. Not null. Must be UTF-8 or a single-byte charset.
+     * @return Text of the file.
+     * @throws IOException If the file cannot be read or is larger than 2 GB.
+     */
+    public static MappedTextSource open(Path file, Charset charset) throws IOException {
+        return open(file, charset, DEFAULT_CHUNK_SIZE);
+    }
+
+    static MappedTextSource open(Path file, Charset charset, int chunkSize) throws IOException {
+        requireNonNull(file, "file");
+        requireNonNull(charset, "charset");
+        final boolean utf8 = charset.equals(StandardCharsets.UTF_8);
+        if (!utf8 && charset.newEncoder().maxBytesPerChar() != 1.0f) {
+            throw new IllegalArgumentException("Unsupported charset: " + charset);
+        }
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("File is too large: " + file);
+            }
+            final var bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            return new MappedTextSource(bytes, charset, utf8, chunkSize);
+        }
+    }
+
+    private final MappedByteBuffer bytes;
+    private final Charset charset;
+
+    /**
+     * Byte offset of each chunk. The last element is the file size.
+     */
+    private final int[] chunkOffsets;
+
+    /**
+     * Index of the first character of each chunk. The last element is the length of the text.
+     */
+    private final int[] chunkStarts;
+
+    /**
+     * The most recently accessed chunk.
+     */
+    private volatile Chunk lastChunk;
+
+    /**
+     * Decoded chunks by chunk index, in access order.
+     */
+    private final LinkedHashMap<Integer, Chunk> chunks = new LinkedHashMap<>(MAX_DECODED_CHUNKS, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Chunk> eldest) {
+            return size() > MAX_DECODED_CHUNKS;
+        }
+    };
+
+    private MappedTextSource(MappedByteBuffer bytes, Charset charset, boolean utf8, int chunkSize) throws IOException {
+        this.bytes = bytes;
+        this.charset = charset;
+        final int size = bytes.limit();
+        int[] offsets = new int[(int) ((size + (long) chunkSize - 1) / chunkSize) + 1];
+        int count = 0;
+        for (int offset = 0; offset < size; count++) {
+            if (count + 1 == offsets.length) {
+                offsets = Arrays.copyOf(offsets, 2 * offsets.length); // some UTF-8 chunks are shorter
+            }
+            offsets[count] = offset;
+            int end = (int) Math.min(size, (long) offset + chunkSize);
+            if (utf8) {
+                while (end < size && end > offset + 1 && isContinuationByte(bytes.get(end))) {
+                    end--; // don't split a character
+                }
+            }
+            offset = end;
+        }
+        offsets[count] = size;
+        this.chunkOffsets = Arrays.copyOf(offsets, count + 1);
+        this.chunkStarts = new int[count + 1];
+        for (int i = 0; i < count; i++) {
+            final long start = (long) chunkStarts[i] + decode(i).length;
+            if (start > Integer.MAX_VALUE) {
+                throw new IOException("Text is too long.");
+            }
+            chunkStarts[i + 1] = (int) start;
+        }
+    }
+
+    private static boolean isContinuationByte(byte b) {
+        return (b & 0xC0) == 0x80;
+    }
+
+    private char[] decode(int chunkIndex) {
+        final CharsetDecoder decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        final ByteBuffer chunkBytes = bytes.duplicate()
+                .position(chunkOffsets[chunkIndex])
+                .limit(chunkOffsets[chunkIndex + 1]);
+        try {
+            final CharBuffer chars = decoder.decode(chunkBytes);
+            return Arrays.copyOf(chars.array(), chars.limit());
+        } catch (CharacterCodingException e) {
+            throw new IllegalStateException(e); // not expected with REPLACE
+        }
+    }
+
+    private Chunk getChunk(int index) {
+        final Chunk chunk = lastChunk;
+        if (chunk != null && index >= chunk.start && index < chunk.end) {
+            return chunk;
+        }
+        int chunkIndex = Arrays.binarySearch(chunkStarts, index);
+        if (chunkIndex < 0) {
+            chunkIndex = -chunkIndex - 2; // chunk which contains the index
+        }
+        while (chunkStarts[chunkIndex + 1] == chunkStarts[chunkIndex]) {
+            chunkIndex++; // skip empty chunks
+        }
+        Chunk found;
+        synchronized (chunks) {
+            found = chunks.get(chunkIndex);
+            if (found == null) {
+                found = new Chunk(chunkStarts[chunkIndex], decode(chunkIndex));
+                chunks.put(chunkIndex, found);
+            }
+        }
+        lastChunk = found;
+        return found;
+    }
+
+    @Override
+    public int length() {
+        return chunkStarts[chunkStarts.length - 1];
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", length: " + length());
+        }
+        final Chunk chunk = getChunk(index);
+        return chunk.chars[index - chunk.start];
+    }
+
+    /**
+     * @return The specified part of the text as {@link String}.
+     */
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        if (start < 0 || end > length() || start > end) {
+            throw new IndexOutOfBoundsException("Start: " + start + ", end: " + end + ", length: " + length());
+        }
+        final var sb = new StringBuilder(end - start);
+        int index = start;
+        while (index < end) {
+            final Chunk chunk = getChunk(index);
+            final int partEnd = Math.min(end, chunk.end);
+            sb.append(chunk.chars, index - chunk.start, partEnd - index);
+            index = partEnd;
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return The whole text as {@link String}.
+     */
+    @Override
+    public String toString() {
+        return subSequence(0, length()).toString();
+    }
+
+    private static final class Chunk {
+        final int start;
+        final int end;
+        final char[] chars;
+
+        Chunk(int start, char[] chars) {
+            this.start = start;
+            this.end = start + chars.length;
+            this.chars = chars;
+        }
+    }
+}
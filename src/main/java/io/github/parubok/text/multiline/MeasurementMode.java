@@ -0,0 +1,30 @@
+package io.github.parubok.text.multiline;
+
+/**
+ * Defines how {@link MultilineLabel} measures its text to calculate the line breaks and the preferred size.
+ *
+ * @see MultilineLabel#setMeasurementMode(MeasurementMode)
+ */
+public enum MeasurementMode {
+    /**
+     * Each line and part of line is measured with the full text shaping of the font. This is the default mode.
+     */
+    EXACT,
+
+    /**
+     * Same as {@link #EXACT}, but widths of words and other short parts of text are kept in a bounded cache shared
+     * by all labels with the same font. The results are identical to {@link #EXACT}.
+     *
+     * @see WordWidthCache
+     */
+    WORD_CACHE,
+
+    /**
+     * Width of text is the sum of character advances from a cache shared by all labels with the same font.
+     * Faster than {@link #EXACT}, but may be less precise for texts which need shaping (e.g. kerning, ligatures).
+     * Texts which require layout (combining marks, complex scripts, etc.) are still measured exactly.
+     *
+     * @see AdvanceWidthCache
+     */
+    ADVANCE_CACHE
+}
@@ -3,17 +3,21 @@ package io.github.parubok.text.multiline;
 import javax.swing.BorderFactory;
 import javax.swing.JComponent;
 import javax.swing.Scrollable;
+import javax.swing.SwingConstants;
 import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.FontMetrics;
 import java.awt.Graphics;
 import java.awt.Insets;
+import java.awt.Point;
 import java.awt.Rectangle;
 import java.awt.Toolkit;
 import java.awt.datatransfer.Clipboard;
 import java.awt.datatransfer.StringSelection;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 
 import static java.util.Objects.requireNonNull;
 
@@ -36,11 +40,27 @@ public class MultilineLabel extends JComponent implements Scrollable {
      */
     public static final Set<Character> DEFAULT_SEPARATORS = Set.of(' ');
 
+    private static final Object SEPARATOR_MATCHER_PROPERTY_KEY = new Object();
+
     public static Set<Character> getSeparators(JComponent c) {
         var separators = (Set<Character>) c.getClientProperty(SEPARATORS_PROPERTY_KEY);
         return Objects.requireNonNullElse(separators, DEFAULT_SEPARATORS);
     }
 
+    /**
+     * @return Compiled separators of the component. The compiled separators are kept as the component client
+     * property until the separators are changed.
+     */
+    static SeparatorMatcher getSeparatorMatcher(JComponent c) {
+        final Set<Character> separators = getSeparators(c);
+        var matcher = (SeparatorMatcher) c.getClientProperty(SEPARATOR_MATCHER_PROPERTY_KEY);
+        if (matcher == null || !matcher.isCompiledFrom(separators)) {
+            matcher = SeparatorMatcher.of(separators);
+            c.putClientProperty(SEPARATOR_MATCHER_PROPERTY_KEY, matcher);
+        }
+        return matcher;
+    }
+
     /**
      * Default preferred width limit in pixels.
      *
@@ -70,6 +90,44 @@ public class MultilineLabel extends JComponent implements Scrollable {
      */
     public static final int DEFAULT_MAX_LINES = 100_000;
 
+    /**
+     * Texts shorter than this number of characters are laid out synchronously, even if the label has a layout
+     * executor.
+     *
+     * @see #setLayoutExecutor(Executor)
+     */
+    public static final int ASYNC_LAYOUT_MIN_TEXT_LENGTH = 10_000;
+
+    /**
+     * Texts shorter than this number of characters are broken into lines sequentially, even if the label has
+     * a parallel layout pool.
+     *
+     * @see #setParallelLayoutPool(ForkJoinPool)
+     */
+    public static final int PARALLEL_LAYOUT_MIN_TEXT_LENGTH = 100_000;
+
+    /**
+     * Texts shorter than this number of characters are broken into lines completely, even if the label has the lazy
+     * layout enabled.
+     *
+     * @see #setLazyLayout(boolean)
+     */
+    public static final int LAZY_LAYOUT_MIN_TEXT_LENGTH = 100_000;
+
+    /**
+     * Default value for {@code maxTextLines} property - no limit.
+     *
+     * @see #setMaxTextLines(int)
+     */
+    public static final int DEFAULT_MAX_TEXT_LINES = Integer.MAX_VALUE;
+
+    /**
+     * Default value for {@code layoutCacheCapacity} property.
+     *
+     * @see #setLayoutCacheCapacity(int)
+     */
+    public static final int DEFAULT_LAYOUT_CACHE_CAPACITY = 8;
+
     /**
      * @param insets Insets to include in the calculation. Not null.
      * @param fm {@link FontMetrics} to calculate text size. Not null.
@@ -79,11 +137,71 @@ public class MultilineLabel extends JComponent implements Scrollable {
      * @param lineSpacing Distance between two adjacent baselines will be the font height (as returned
      * by {@link FontMetrics#getHeight()}) multiplied by this value.
      * @return Preferred size of text bounds.
+     * @see PreparedText
      */
     public static Dimension calculatePreferredSize(JComponent c, Insets insets, FontMetrics fm, String text,
                                                    int wLimit, float lineSpacing) {
         return WidthTextLayout.calcPreferredSize(c, insets, fm, text, wLimit, lineSpacing,
-                getSeparators(c));
+                getSeparatorMatcher(c));
+    }
+
+    /**
+     * Calculates number of lines of the text for the specified width limit, as the text would be displayed by
+     * the width based layout (see {@link #isWidthBasedLayout()}). Intended for calculation of many heights, e.g. of
+     * table rows: for simple text (e.g. Latin, Cyrillic or Greek), the calculation doesn't allocate objects once
+     * the thread has counted lines of a text of similar length.
+     *
+     * @param c Component to measure the text for. Its separators are used (see {@link #setSeparators(Set)}).
+     * May be null - then {@link #DEFAULT_SEPARATORS} are used.
+     * @param fm {@link FontMetrics} to measure the text. Not null.
+     * @param text Text to calculate number of lines for. Not null.
+     * @param textWidthLimit Positive width limit of the text in pixels (excl. insets).
+     * @param maxLines Positive maximum number of lines. The calculation stops when it is reached.
+     * @return Number of lines, not more than {@code maxLines}. 0 for empty text.
+     */
+    public static int calculateLineCount(JComponent c, FontMetrics fm, String text, int textWidthLimit,
+                                         int maxLines) {
+        requireNonNull(fm, "fm");
+        requireNonNull(text, "text");
+        if (textWidthLimit < 1 || maxLines < 1) {
+            throw new IllegalArgumentException("Width limit and max. lines must be positive.");
+        }
+        return LineCounter.countLines(c, fm, text, textWidthLimit, maxLines,
+                c == null ? SeparatorMatcher.DEFAULT : getSeparatorMatcher(c));
+    }
+
+    /**
+     * Same as {@code calculatePreferredSize(c, insets, fm, text, wLimit, lineSpacing).height} for the specified
+     * max. number of lines, but doesn't calculate the width and, for simple text, doesn't allocate objects.
+     *
+     * @param insets Insets to include in the calculation. Not null.
+     * @param wLimit Positive width limit in pixels (incl. insets).
+     * @param maxLines Positive maximum number of lines.
+     * @return Preferred height of the text (incl. insets).
+     * @see #calculateLineCount(JComponent, FontMetrics, String, int, int)
+     */
+    public static int calculatePreferredHeight(JComponent c, Insets insets, FontMetrics fm, String text, int wLimit,
+                                               float lineSpacing, int maxLines) {
+        requireNonNull(insets, "insets");
+        requireNonNull(fm, "fm");
+        requireNonNull(text, "text");
+        if (maxLines < 1) {
+            throw new IllegalArgumentException("Max. lines must be positive.");
+        }
+        return calculatePreferredHeight(c, insets, fm, text, wLimit, lineSpacing, maxLines,
+                c == null ? SeparatorMatcher.DEFAULT : getSeparatorMatcher(c));
+    }
+
+    /**
+     * Same as {@link #calculatePreferredHeight(JComponent, Insets, FontMetrics, String, int, float, int)}, but with
+     * the specified separators, so the component is not accessed if it is null.
+     */
+    static int calculatePreferredHeight(JComponent c, Insets insets, FontMetrics fm, String text, int wLimit,
+                                        float lineSpacing, int maxLines, SeparatorMatcher separators) {
+        final int lineCount = LineCounter.countLines(c, fm, text, Math.max(1, wLimit - insets.right - insets.left),
+                maxLines, separators);
+        final int height = lineCount == 0 ? 0 : AbstractTextLayout.getTextPreferredHeight(lineCount, fm, lineSpacing);
+        return height + insets.top + insets.bottom;
     }
 
     /**
@@ -99,6 +217,7 @@ public class MultilineLabel extends JComponent implements Scrollable {
      * @param background Background color of the target component. Used to paint disabled text. Not null.
      * @param lineSpacing Distance between two adjacent baselines will be the font height (as returned
      * by {@link FontMetrics#getHeight()}) multiplied by this value.
+     * @see PreparedText
      */
     public static void paintText(JComponent c, Graphics g, String text, Insets insets, int wLimit, boolean enabled,
                                  Color background, float lineSpacing) {
@@ -106,17 +225,29 @@ public class MultilineLabel extends JComponent implements Scrollable {
         requireNonNull(text, "text");
         requireNonNull(insets, "insets");
         requireNonNull(background, "background");
-        WidthTextLayout.paintText(c, g, text, insets, wLimit, enabled, background, lineSpacing, getSeparators(c));
+        WidthTextLayout.paintText(c, g, text, insets, wLimit, enabled, background, lineSpacing,
+                getSeparatorMatcher(c));
     }
 
     private final boolean ignorePrefWidthLimit;
-    private String text = "";
+    private CharSequence text = ""; // String, TextBuffer (after appendText) or text source
     private TextLayout textLayout; // not null after constructor
     private int prefWidthLimit = DEFAULT_WIDTH_LIMIT;
     private boolean useCurrentWidthForPreferredSize = true;
     private float lineSpacing = DEFAULT_LINE_SPACING;
     private int preferredViewportLineCount = DEFAULT_PREFERRED_VIEWPORT_LINE_COUNT;
     private int maxLines = DEFAULT_MAX_LINES;
+    private MeasurementMode measurementMode = MeasurementMode.EXACT;
+    private Executor layoutExecutor; // null - synchronous layout
+    private ForkJoinPool parallelLayoutPool; // null - sequential layout
+    private int maxTextLines = DEFAULT_MAX_TEXT_LINES;
+    private int layoutCacheCapacity = DEFAULT_LAYOUT_CACHE_CAPACITY;
+    private boolean imageCacheEnabled;
+    private boolean lazyLayout;
+    private int textVersion; // incremented when the text or the text layout changes
+    private final TextSelection selection = new TextSelection(this);
+    private boolean selectionEnabled;
+    private Color selectionColor; // null - color of the L&F
 
     /**
      * Default constructor.
@@ -172,6 +303,11 @@ public class MultilineLabel extends JComponent implements Scrollable {
             throw new IllegalArgumentException("Separators must be specified.");
         }
         putClientProperty(SEPARATORS_PROPERTY_KEY, separators);
+        putClientProperty(SEPARATOR_MATCHER_PROPERTY_KEY, SeparatorMatcher.of(separators));
+    }
+
+    SeparatorMatcher getSeparatorMatcher() {
+        return getSeparatorMatcher(this);
     }
 
     protected Clipboard getClipboard() {
@@ -185,6 +321,17 @@ public class MultilineLabel extends JComponent implements Scrollable {
         getClipboard().setContents(new StringSelection(getText()), null);
     }
 
+    /**
+     * Transfers the selected text of this label to the system clipboard. Does nothing if no text is selected.
+     *
+     * @see #setSelectionEnabled(boolean)
+     */
+    public void copySelection() {
+        if (!selection.isEmpty()) {
+            getClipboard().setContents(new StringSelection(getSelectedText()), null);
+        }
+    }
+
     @Override
     public void updateUI() {
         setUI(new MultilineLabelUI()); // ignores current L&F
@@ -225,9 +372,37 @@ public class MultilineLabel extends JComponent implements Scrollable {
      * may be collapsed into one space, text may be trimmed, EOL may be inserted, etc.
      */
     public String getText() {
+        return text.toString();
+    }
+
+    /**
+     * @return Text of this label as it was set, without conversion to {@link String}. The text which was appended to
+     * (see {@link #appendText(CharSequence)}) is returned as {@link String}.
+     * @see #setTextSource(CharSequence)
+     */
+    public CharSequence getTextSource() {
+        return text instanceof TextBuffer ? text.toString() : text;
+    }
+
+    int getTextLength() {
+        return text.length();
+    }
+
+    /**
+     * @return Text of this label without copying, unlike {@link #getTextSource()}. Must not be modified. It is
+     * modified by {@link #appendText(CharSequence)}, so it must not be kept or used outside EDT.
+     */
+    CharSequence getTextChars() {
         return text;
     }
 
+    /**
+     * @return Width in pixels of the range of the text, as measured to break the text into lines.
+     */
+    float getTextWidth(int start, int end) {
+        return TextMeasurer.of(this, getFontMetrics(getFont())).getWidth(text, start, end);
+    }
+
     /**
      * @param text Text of this label. Not null. The actually displayed text may differ from this value - multiple
      * adjacent spaces may be collapsed into one space, text may be trimmed, EOL may be inserted, etc.
@@ -235,14 +410,93 @@ public class MultilineLabel extends JComponent implements Scrollable {
      * {@code "\r\n"} (or no separator at all).
      */
     public void setText(String text) {
+        setTextSource(text);
+    }
+
+    /**
+     * Allows to display a text which is not a {@link String}, e.g. a large file (see {@link MappedTextSource}),
+     * without copying it. The text is converted to {@link String} only by {@link #getText()} and by the layout which
+     * ignores the preferred width limit.
+     *
+     * @param text Text of this label. Not null. Must not change while the label displays it. Must be thread-safe if
+     * the label has a layout executor (see {@link #setLayoutExecutor(Executor)}).
+     * @see #setText(String)
+     */
+    public void setTextSource(CharSequence text) {
         setTextAndTextLayout(text);
         revalidate();
         repaint();
     }
 
-    private void setTextAndTextLayout(String text) {
+    private void setTextAndTextLayout(CharSequence text) {
         this.text = Objects.requireNonNull(text);
         this.textLayout = createTextLayout();
+        textVersion++;
+        selection.reset();
+    }
+
+    /**
+     * Sets the text with a layout which was created by this label for the same text, so the lines calculated by the
+     * layout are reused. Used by cell renderers to keep a layout per cell.
+     */
+    void setTextAndTextLayout(CharSequence text, TextLayout textLayout) {
+        this.text = Objects.requireNonNull(text);
+        this.textLayout = Objects.requireNonNull(textLayout);
+        textVersion++;
+        selection.reset();
+    }
+
+    /**
+     * @return Number which changes when the text of this label is set or appended, or its text layout is replaced.
+     */
+    int getTextVersion() {
+        return textVersion;
+    }
+
+    /**
+     * Appends the specified text to the text of this label.
+     * <p>
+     * Unlike {@code setText(getText() + text)}, this method keeps the calculated lines and breaks into lines only
+     * the appended text and the text after the last {@code '\n'}, so its cost doesn't depend on the length of the
+     * label text. This is useful to display a log. The lines are recalculated for the whole text if the text
+     * contains line separators other than {@code "\n"} or {@code "\r\n"}, or if lines are removed from the text
+     * which doesn't fit into {@link #getMaxLines()} lines.
+     * <p>
+     * The last paragraph of the text is broken into lines again on each call, so the cost of appending to a long
+     * paragraph (e.g. a log which is appended in pieces without {@code '\n'}) is proportional to the length of the
+     * paragraph.
+     *
+     * @param text Text to append. Not null.
+     * @see #setMaxTextLines(int)
+     */
+    public void appendText(CharSequence text) {
+        requireNonNull(text, "text");
+        if (text.length() == 0) {
+            return;
+        }
+        if (!(this.text instanceof TextBuffer)) {
+            this.text = new TextBuffer(this.text);
+        }
+        final var buffer = (TextBuffer) this.text;
+        final int oldLength = buffer.length();
+        buffer.append(text);
+        textVersion++;
+        selection.reset();
+        int removedLines = 0;
+        int removedChars = 0;
+        while (buffer.getLineCount() > maxTextLines) {
+            removedChars += buffer.removeFirstLine();
+            removedLines++;
+        }
+        if (textLayout instanceof WidthTextLayout) {
+            ((WidthTextLayout) textLayout).textAppended(buffer, oldLength - removedChars, removedLines, removedChars);
+        } else if (textLayout instanceof LazyTextLayout) {
+            ((LazyTextLayout) textLayout).textAppended(buffer, oldLength - removedChars, removedChars);
+        } else {
+            textLayout = createTextLayout();
+        }
+        revalidate();
+        repaint();
     }
 
     /**
@@ -252,11 +506,15 @@ public class MultilineLabel extends JComponent implements Scrollable {
      */
     public boolean isWidthBasedLayout() {
         assert textLayout != null;
-        return textLayout instanceof WidthTextLayout;
+        return textLayout instanceof WidthTextLayout || textLayout instanceof LazyTextLayout;
     }
 
     protected TextLayout createTextLayout() {
-        return ignorePrefWidthLimit ? new ProvidedTextLayout(this) : new WidthTextLayout(this);
+        if (ignorePrefWidthLimit) {
+            return new ProvidedTextLayout(this);
+        }
+        return lazyLayout && text.length() >= LAZY_LAYOUT_MIN_TEXT_LENGTH ? new LazyTextLayout(this)
+                : new WidthTextLayout(this);
     }
 
     protected TextLayout getTextLayout() {
@@ -336,14 +594,155 @@ public class MultilineLabel extends JComponent implements Scrollable {
         repaint();
     }
 
+    /**
+     * Vertical increment scrolls to the next (or previous) line boundary, so the top line of the viewport is
+     * displayed entirely.
+     */
     @Override
     public int getScrollableUnitIncrement(Rectangle visibleRect, int orientation, int direction) {
-        return 20;
+        if (orientation != SwingConstants.VERTICAL) {
+            return 20;
+        }
+        final int yIncrement = getLineHeightIncrement();
+        final int top = getInsets().top;
+        final int y = visibleRect.y;
+        final int lineTop;
+        if (direction > 0) {
+            lineTop = top + (MultilineUtils.getLineAt(y, top, yIncrement) + 1) * yIncrement;
+        } else {
+            lineTop = Math.max(0, top + MultilineUtils.getLineAt(y - 1, top, yIncrement) * yIncrement);
+        }
+        final int increment = Math.abs(lineTop - y);
+        return increment > 0 ? increment : yIncrement;
     }
 
+    /**
+     * Vertical increment scrolls by the height of the viewport, snapped to a line boundary: the line which is not
+     * entirely visible at the bottom (or the top) of the viewport becomes the top (or the bottom) line.
+     */
     @Override
     public int getScrollableBlockIncrement(Rectangle visibleRect, int orientation, int direction) {
-        return 20;
+        if (orientation != SwingConstants.VERTICAL) {
+            return Math.max(20, visibleRect.width);
+        }
+        final int yIncrement = getLineHeightIncrement();
+        final int top = getInsets().top;
+        final int y = visibleRect.y;
+        final int increment;
+        if (direction > 0) {
+            increment = top + MultilineUtils.getLineAt(y + visibleRect.height, top, yIncrement) * yIncrement - y;
+        } else {
+            final int end = top + (MultilineUtils.getLineAt(y - 1, top, yIncrement) + 1) * yIncrement;
+            final int newTop = top + (MultilineUtils.getLineAt(end - visibleRect.height - 1, top, yIncrement) + 1)
+                    * yIncrement;
+            increment = y - Math.max(0, newTop);
+        }
+        return increment > 0 ? increment : getScrollableUnitIncrement(visibleRect, orientation, direction);
+    }
+
+    /**
+     * @return Distance between tops of two adjacent lines. Positive.
+     */
+    int getLineHeightIncrement() {
+        return Math.max(1, MultilineUtils.getHeightIncrement(getFontMetrics(getFont()), getLineSpacing()));
+    }
+
+    /**
+     * @return Lines displayed for the current size of this label. Empty if the layout doesn't expose its lines.
+     */
+    LineTable getLineTable() {
+        return textLayout instanceof AbstractTextLayout ? ((AbstractTextLayout) textLayout).getLineTable()
+                : TextLines.EMPTY;
+    }
+
+    /**
+     * @return Number of lines displayed for the current size of this label, incl. the ellipsis line (see
+     * {@link #getMaxLines()}). 0 if the text is empty or the label is too narrow to display it.
+     * @see #lineBounds(int)
+     */
+    public int getDisplayedLineCount() {
+        return getLineTable().getLineCount();
+    }
+
+    /**
+     * Finds the character boundary nearest to the specified point, e.g. to show a tooltip for the word under the
+     * mouse pointer. The point is mapped to the line which occupies its Y coordinate (the first or the last line if
+     * the point is above or below the lines), and the boundary is found by binary search over the widths of the
+     * prefixes of the line. The lines are not calculated again if the label was painted for its current size.
+     *
+     * @param p Point in the coordinates of this label. Not null.
+     * @return Index in the text (see {@link #getText()}) of the boundary nearest to the point. -1 if no lines are
+     * displayed.
+     */
+    public int viewToOffset(Point p) {
+        requireNonNull(p, "p");
+        final LineTable lines = getLineTable();
+        final int lineCount = lines.getLineCount();
+        if (lineCount == 0) {
+            return -1;
+        }
+        final var insets = getInsets();
+        final int line = Math.max(0, Math.min(lineCount - 1,
+                MultilineUtils.getLineAt(p.y, insets.top, getLineHeightIncrement())));
+        final int start = lines.getLineStart(line);
+        final int end = lines.getLineEnd(line);
+        final TextMeasurer measurer = TextMeasurer.of(this, getFontMetrics(getFont()));
+        final float x = p.x - insets.left;
+        int low = start;
+        int high = end;
+        while (low < high) { // the last boundary which is at or before the point
+            final int middle = (low + high + 1) >>> 1;
+            if (measurer.getWidth(text, start, middle) <= x) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        if (low > start && low < end && Character.isLowSurrogate(text.charAt(low))
+                && Character.isHighSurrogate(text.charAt(low - 1))) {
+            low--; // don't split a surrogate pair
+        }
+        if (low < end) {
+            final int next = low + Character.charCount(Character.codePointAt(text, low));
+            if (x - measurer.getWidth(text, start, low) > measurer.getWidth(text, start, next) - x) {
+                low = next;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @param offset Index in the text (see {@link #getText()}). From 0 to the text length (incl.).
+     * @return Index of the displayed line which contains the offset. The offset of whitespace where the text was
+     * broken belongs to the line before it, and the offsets of the text which is not displayed due to the max. number
+     * of lines belong to the last line. -1 if no lines are displayed.
+     */
+    public int offsetToLine(int offset) {
+        if (offset < 0 || offset > getTextLength()) {
+            throw new IllegalArgumentException("Offset is out of the text: " + offset);
+        }
+        final LineTable lines = getLineTable();
+        final int lineCount = lines.getLineCount();
+        return lineCount == 0 ? -1 : Math.min(lines.getLineAt(offset), lineCount - 1);
+    }
+
+    /**
+     * @param line Index of a displayed line. From 0 to {@link #getDisplayedLineCount()} (excl.).
+     * @return Bounds of the text of the line in the coordinates of this label. The height is the distance between
+     * tops of two adjacent lines, so the bounds of the lines don't overlap.
+     */
+    public Rectangle lineBounds(int line) {
+        final LineTable lines = getLineTable();
+        if (line < 0 || line >= lines.getLineCount()) {
+            throw new IllegalArgumentException("No such line: " + line);
+        }
+        final TextMeasurer measurer = TextMeasurer.of(this, getFontMetrics(getFont()));
+        final boolean ellipsis = lines.isTruncated() && line == lines.getLineCount() - 1;
+        final float width = ellipsis ? measurer.getWidth(TextLines.ELLIPSIS, 0, TextLines.ELLIPSIS.length())
+                : measurer.getWidth(text, lines.getLineStart(line), lines.getLineEnd(line));
+        final var insets = getInsets();
+        final int yIncrement = getLineHeightIncrement();
+        return new Rectangle(insets.left, insets.top + line * yIncrement, (int) Math.ceil(width), yIncrement);
     }
 
     @Override
@@ -379,6 +778,27 @@ public class MultilineLabel extends JComponent implements Scrollable {
         repaint();
     }
 
+    /**
+     * @return Maximum number of lines of the label text kept by {@link #appendText(CharSequence)}.
+     * @see #setMaxTextLines(int)
+     */
+    public int getMaxTextLines() {
+        return maxTextLines;
+    }
+
+    /**
+     * @param maxTextLines Maximum number of lines of the label text (as separated by line separators, see
+     * {@link String#lines()}). When text is appended by {@link #appendText(CharSequence)} and the label text has more
+     * lines, the first lines are removed from the text. Doesn't affect {@link #setText(String)}.
+     * @see #DEFAULT_MAX_TEXT_LINES
+     */
+    public void setMaxTextLines(int maxTextLines) {
+        if (maxTextLines < 1) {
+            throw new IllegalArgumentException("Value must be positive.");
+        }
+        this.maxTextLines = maxTextLines;
+    }
+
     /**
      * @return Distance between two adjacent baselines is the font height (as returned
      * by {@link FontMetrics#getHeight()}) multiplied by this value.
@@ -400,6 +820,283 @@ public class MultilineLabel extends JComponent implements Scrollable {
         repaint();
     }
 
+    /**
+     * @return Mode of the text measurement.
+     * @see #setMeasurementMode(MeasurementMode)
+     */
+    public MeasurementMode getMeasurementMode() {
+        return measurementMode;
+    }
+
+    /**
+     * @param measurementMode Mode of the text measurement. Not null. Default: {@link MeasurementMode#EXACT}.
+     * {@link MeasurementMode#ADVANCE_CACHE} is faster, but may be less precise for some fonts.
+     * @see AdvanceWidthCache#getMaxDrift()
+     */
+    public void setMeasurementMode(MeasurementMode measurementMode) {
+        this.measurementMode = requireNonNull(measurementMode, "measurementMode");
+        revalidate();
+        repaint();
+    }
+
+    /**
+     * @return Executor to break the text into lines. Null if the lines are calculated on EDT.
+     * @see #setLayoutExecutor(Executor)
+     */
+    public Executor getLayoutExecutor() {
+        return layoutExecutor;
+    }
+
+    /**
+     * Allows to break a long text into lines outside EDT. Until the lines are calculated, the label displays
+     * the previously calculated lines or, if there are no such lines, reports an estimated preferred size.
+     * When the lines are ready, the label is revalidated and repainted. Lines calculated for a previous text
+     * of the label are discarded. If the calculation throws, the exception is rethrown to the executor and the lines
+     * are calculated on EDT.
+     * <p>
+     * Applicable only to the width based layout (see {@link #isWidthBasedLayout()}) and texts of at least
+     * {@link #ASYNC_LAYOUT_MIN_TEXT_LENGTH} characters.
+     *
+     * @param layoutExecutor Executor to break the text into lines. For example, on Java 21+,
+     * {@code Executors.newVirtualThreadPerTaskExecutor()}. If null (default), the lines are calculated on EDT.
+     */
+    public void setLayoutExecutor(Executor layoutExecutor) {
+        this.layoutExecutor = layoutExecutor;
+        revalidate();
+        repaint();
+    }
+
+    /**
+     * @return Pool to break the text into lines in parallel. Null if the text is broken sequentially.
+     * @see #setParallelLayoutPool(ForkJoinPool)
+     */
+    public ForkJoinPool getParallelLayoutPool() {
+        return parallelLayoutPool;
+    }
+
+    /**
+     * Allows to break a long text into lines using multiple threads. The text is divided into parts at line
+     * separators and the parts are broken in parallel. The result is the same as of the sequential layout.
+     * <p>
+     * Applicable only to the width based layout (see {@link #isWidthBasedLayout()}) and texts of at least
+     * {@link #PARALLEL_LAYOUT_MIN_TEXT_LENGTH} characters which contain a single type of line separator.
+     * May be combined with the layout executor (see {@link #setLayoutExecutor(Executor)}).
+     *
+     * @param parallelLayoutPool Pool to break the text into lines, e.g. {@link ForkJoinPool#commonPool()}.
+     * If null (default), the text is broken sequentially.
+     */
+    public void setParallelLayoutPool(ForkJoinPool parallelLayoutPool) {
+        this.parallelLayoutPool = parallelLayoutPool;
+    }
+
+    /**
+     * Calculates the preferred height of the label for the specified width, i.e. the preferred height of the label
+     * if it had this width and {@code useCurrentWidthForPreferredSize} was true. Allows layout managers to probe many
+     * widths without changing the label bounds.
+     * <p>
+     * For the width based layout (see {@link #isWidthBasedLayout()}), the first call builds a profile of the text
+     * which maps a width to the number of lines, so the next calls (until the text, font, insets, etc. are changed)
+     * don't break the text into lines.
+     *
+     * @param width Width of the label (incl. insets). Must be positive.
+     * @return Preferred height of the label (incl. insets).
+     */
+    public int getPreferredHeight(int width) {
+        if (width < 1) {
+            throw new IllegalArgumentException("Width must be positive.");
+        }
+        return getTextLayout().calculatePreferredHeight(width);
+    }
+
+    /**
+     * @return Max. number of widths for which the label keeps the lines of its text.
+     * @see #setLayoutCacheCapacity(int)
+     */
+    public int getLayoutCacheCapacity() {
+        return layoutCacheCapacity;
+    }
+
+    /**
+     * The label keeps the lines of its text calculated for the recently used widths, so repeated resizes (e.g.
+     * dragging a split pane divider back and forth) don't break the text again for the same widths. The kept lines
+     * are discarded when the text, font, insets, separators or other parameters of the layout are changed.
+     * <p>
+     * Applicable only to the width based layout (see {@link #isWidthBasedLayout()}). Each entry holds the lines of
+     * the whole text, so a smaller value may be preferable for long texts.
+     *
+     * @param layoutCacheCapacity Max. number of widths for which the lines are kept. Must be positive. Default:
+     * {@link #DEFAULT_LAYOUT_CACHE_CAPACITY}.
+     */
+    public void setLayoutCacheCapacity(int layoutCacheCapacity) {
+        if (layoutCacheCapacity < 1) {
+            throw new IllegalArgumentException("Value must be positive.");
+        }
+        this.layoutCacheCapacity = layoutCacheCapacity;
+    }
+
+    /**
+     * @return True if the painted text of this label is kept as an image.
+     * @see #setImageCacheEnabled(boolean)
+     */
+    public boolean isImageCacheEnabled() {
+        return imageCacheEnabled;
+    }
+
+    /**
+     * If enabled, the label keeps its painted text as an image and, while the text, size, colors, font and other
+     * properties which affect the painting stay the same, repaints by drawing the image. This is useful for labels
+     * with a static text which are repainted often, e.g. because of animated neighbour components.
+     * <p>
+     * Applicable only to an opaque label (so the image may be opaque and the text is rendered exactly as without the
+     * cache) which is painted without rotation. The images of all labels share a memory budget (see
+     * {@link TextImageCache#setMaxBytes(long)}).
+     *
+     * @param imageCacheEnabled True to keep the painted text as an image. Default: false.
+     */
+    public void setImageCacheEnabled(boolean imageCacheEnabled) {
+        this.imageCacheEnabled = imageCacheEnabled;
+        if (!imageCacheEnabled) {
+            TextImageCache.release(this);
+        }
+    }
+
+    /**
+     * @return True if only the displayed part of a long text is broken into lines.
+     * @see #setLazyLayout(boolean)
+     */
+    public boolean isLazyLayout() {
+        return lazyLayout;
+    }
+
+    /**
+     * Allows to display a huge text (e.g. a large file, see {@link MappedTextSource}) in a scroll pane without
+     * breaking the whole text into lines. The text is divided into blocks of paragraphs and a block is broken into
+     * lines only when it is displayed. The height of the other blocks is estimated from the average number of lines
+     * per character of the broken blocks, so the preferred height of the label is refined as the text is scrolled.
+     * When the estimate above the displayed text is corrected, the view position of the viewport is moved, so the
+     * displayed text stays in place. The preferred width of the label is its width limit.
+     * <p>
+     * Applicable only to the width based layout (see {@link #isWidthBasedLayout()}) and texts of at least
+     * {@link #LAZY_LAYOUT_MIN_TEXT_LENGTH} characters. A paragraph is broken into lines at once, so the text should
+     * consist of many paragraphs. The image cache (see {@link #setImageCacheEnabled(boolean)}) is not used with this
+     * layout.
+     *
+     * @param lazyLayout True to break only the displayed part of the text into lines. Default: false.
+     */
+    public void setLazyLayout(boolean lazyLayout) {
+        this.lazyLayout = lazyLayout;
+        if (!ignorePrefWidthLimit) {
+            textLayout = createTextLayout();
+            textVersion++;
+        }
+        revalidate();
+        repaint();
+    }
+
+    /**
+     * @return True if the user may select a part of the text of this label.
+     * @see #setSelectionEnabled(boolean)
+     */
+    public boolean isSelectionEnabled() {
+        return selectionEnabled;
+    }
+
+    /**
+     * Allows the user to select a part of the text with the mouse (drag, shift-click) and the keyboard (shift with
+     * arrow keys, select all) and to copy the selected text (see {@link #copySelection()}). The selection is painted
+     * as the background of the selected text. The label becomes focusable, so it receives the key events.
+     * <p>
+     * The selection is mapped to the lines calculated to paint the text (see {@link #viewToOffset(Point)}), so
+     * changing the selection doesn't break the text into lines and repaints only the lines of the changed part of the
+     * selection. The selection is discarded when the text is changed. The image cache (see
+     * {@link #setImageCacheEnabled(boolean)}) is not used while a part of the text is selected.
+     *
+     * @param selectionEnabled True to allow the selection. Default: false.
+     */
+    public void setSelectionEnabled(boolean selectionEnabled) {
+        if (selectionEnabled == this.selectionEnabled) {
+            return;
+        }
+        this.selectionEnabled = selectionEnabled;
+        if (selectionEnabled) {
+            selection.install();
+            setFocusable(true);
+        } else {
+            selection.uninstall();
+            selection.select(0, 0);
+        }
+    }
+
+    /**
+     * @return Background color of the selected text. Null if the color of the L&F is used.
+     * @see #setSelectionColor(Color)
+     */
+    public Color getSelectionColor() {
+        return selectionColor;
+    }
+
+    /**
+     * @param selectionColor Background color of the selected text. If null, the text selection background of the
+     * L&F is used. Default: null.
+     */
+    public void setSelectionColor(Color selectionColor) {
+        this.selectionColor = selectionColor;
+        repaint();
+    }
+
+    /**
+     * @return Index in the text of the first selected character. Equals to {@link #getSelectionEnd()} if no text is
+     * selected.
+     */
+    public int getSelectionStart() {
+        return selection.getStart();
+    }
+
+    /**
+     * @return Index in the text after the last selected character.
+     */
+    public int getSelectionEnd() {
+        return selection.getEnd();
+    }
+
+    /**
+     * Selects a range of the text. Only the lines of the changed part of the selection are repainted. May be called
+     * even if the user selection is not enabled (see {@link #setSelectionEnabled(boolean)}).
+     *
+     * @param start Index of the first selected character.
+     * @param end Index after the last selected character. From {@code start} to the text length (incl.).
+     */
+    public void select(int start, int end) {
+        if (start < 0 || start > end || end > getTextLength()) {
+            throw new IllegalArgumentException("Invalid selection: " + start + ", " + end);
+        }
+        selection.select(start, end);
+    }
+
+    /**
+     * Selects the whole text.
+     */
+    public void selectAll() {
+        select(0, getTextLength());
+    }
+
+    /**
+     * @return The selected text. Empty if no text is selected.
+     */
+    public String getSelectedText() {
+        return text.subSequence(selection.getStart(), selection.getEnd()).toString();
+    }
+
+    TextSelection getSelection() {
+        return selection;
+    }
+
+    @Override
+    public void removeNotify() {
+        super.removeNotify();
+        TextImageCache.release(this);
+    }
+
     @Override
     protected String paramString() {
         return super.paramString()
@@ -408,7 +1105,15 @@ public class MultilineLabel extends JComponent implements Scrollable {
                 + ",textLayout=" + getTextLayout()
                 + ",lineSpacing=" + getLineSpacing()
                 + ",maxLines=" + getMaxLines()
-                + ",textLength=" + getText().length()
+                + ",maxTextLines=" + getMaxTextLines()
+                + ",layoutCacheCapacity=" + getLayoutCacheCapacity()
+                + ",imageCacheEnabled=" + isImageCacheEnabled()
+                + ",lazyLayout=" + isLazyLayout()
+                + ",selectionEnabled=" + isSelectionEnabled()
+                + ",measurementMode=" + getMeasurementMode()
+                + ",layoutExecutor=" + getLayoutExecutor()
+                + ",parallelLayoutPool=" + getParallelLayoutPool()
+                + ",textLength=" + getTextLength()
                 + ",separators=" + getSeparators();
     }
 }
@@ -17,6 +17,10 @@ public class MultilineLabelUI extends ComponentUI {
     @Override
     public void paint(Graphics g, JComponent c) {
         var label = (MultilineLabel) c;
+        if (label.isImageCacheEnabled() && label.getSelection().isEmpty() && TextImageCache.paint(label, g)) {
+            return;
+        }
+        label.getSelection().paint(g);
         g.setColor(label.getForeground());
         g.setFont(label.getFont());
         label.getTextLayout().paintText(g);
@@ -0,0 +1,57 @@
+package io.github.parubok.text.multiline;
+
+import javax.swing.JList;
+import javax.swing.ListCellRenderer;
+import javax.swing.UIManager;
+import javax.swing.border.Border;
+import java.awt.Component;
+
+import static java.util.Objects.requireNonNullElse;
+
+/**
+ * Renderer of {@link JList} cells which displays the cell value on multiple lines.
+ * <p>
+ * For a list with vertical layout, the text is broken according to the list width, so the list should track
+ * the viewport width or have its width set explicitly. The text layout of each recently rendered cell is kept by
+ * the renderer (see {@link #setCellCacheCapacity(int)}), so the list may recalculate the cell heights without
+ * breaking the texts into lines again.
+ *
+ * @see javax.swing.DefaultListCellRenderer
+ */
+public class MultilineListCellRenderer extends AbstractCellRenderer implements ListCellRenderer<Object> {
+
+    public MultilineListCellRenderer() {
+        super();
+        setBorder(getNoFocusBorder());
+    }
+
+    private static Border getNoFocusBorder() {
+        return getNoFocusBorder("List.cellNoFocusBorder");
+    }
+
+    @Override
+    public Component getListCellRendererComponent(JList<?> list, Object value, int index, boolean isSelected,
+                                                  boolean cellHasFocus) {
+        setForeground(isSelected ? list.getSelectionForeground() : list.getForeground());
+        setBackground(isSelected ? list.getSelectionBackground() : list.getBackground());
+        if (cellHasFocus) {
+            Border border = isSelected ? UIManager.getBorder("List.focusSelectedCellHighlightBorder") : null;
+            if (border == null) {
+                border = requireNonNullElse(UIManager.getBorder("List.focusCellHighlightBorder"),
+                        getNoFocusBorder());
+            }
+            setBorder(border);
+        } else {
+            setBorder(getNoFocusBorder());
+        }
+        setEnabled(list.isEnabled());
+        setFont(list.getFont());
+        final var insets = list.getInsets();
+        final int width = list.getWidth() - insets.left - insets.right;
+        if (list.getLayoutOrientation() == JList.VERTICAL && width > 0) {
+            setPreferredWidthLimit(width);
+        }
+        setCellText(index, toText(value));
+        return this;
+    }
+}
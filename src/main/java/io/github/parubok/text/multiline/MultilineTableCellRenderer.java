@@ -0,0 +1,422 @@
+package io.github.parubok.text.multiline;
+
+import javax.swing.JTable;
+import javax.swing.SwingUtilities;
+import javax.swing.UIManager;
+import javax.swing.border.Border;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ListSelectionEvent;
+import javax.swing.event.TableColumnModelEvent;
+import javax.swing.event.TableColumnModelListener;
+import javax.swing.event.TableModelEvent;
+import javax.swing.event.TableModelListener;
+import javax.swing.table.TableCellRenderer;
+import javax.swing.table.TableColumnModel;
+import javax.swing.table.TableModel;
+import java.awt.Color;
+import java.awt.Component;
+import java.awt.Insets;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+
+import static java.util.Objects.requireNonNull;
+import static java.util.Objects.requireNonNullElse;
+
+/**
+ * Renderer of {@link JTable} cells which displays the cell value on multiple lines.
+ * <p>
+ * The text layout of each recently rendered cell is kept by the renderer (see
+ * {@link #setCellCacheCapacity(int)}), so repaint of a cell doesn't break its text into lines again. To adjust
+ * heights of the table rows to the cell texts, use {@link #installRowHeightUpdater(JTable)}.
+ * <p>
+ * Example:
+ * <pre>
+ * var renderer = new MultilineTableCellRenderer();
+ * table.setDefaultRenderer(Object.class, renderer);
+ * renderer.installRowHeightUpdater(table);
+ * </pre>
+ *
+ * @see javax.swing.table.DefaultTableCellRenderer
+ */
+public class MultilineTableCellRenderer extends AbstractCellRenderer implements TableCellRenderer {
+
+    /**
+     * Heights of all rows of a table with less rows are calculated on EDT, even if the renderer has a layout
+     * executor.
+     *
+     * @see #installRowHeightUpdater(JTable)
+     */
+    public static final int ASYNC_ROW_HEIGHT_MIN_ROW_COUNT = 10_000;
+
+    private static long cellKey(int modelRow, int modelColumn) {
+        return ((long) modelRow << 32) | modelColumn;
+    }
+
+    private static int getModelRow(long cellKey) {
+        return (int) (cellKey >> 32);
+    }
+
+    private static int getModelColumn(long cellKey) {
+        return (int) cellKey;
+    }
+
+    /**
+     * Key of the table client property with the row height updater of this renderer.
+     */
+    private final Object rowHeightUpdaterKey = new Object();
+
+    public MultilineTableCellRenderer() {
+        super();
+        setBorder(getNoFocusBorder());
+    }
+
+    private static Border getNoFocusBorder() {
+        return getNoFocusBorder("Table.cellNoFocusBorder");
+    }
+
+    @Override
+    public Component getTableCellRendererComponent(JTable table, Object value, boolean isSelected, boolean hasFocus,
+                                                   int row, int column) {
+        Color foreground;
+        Color background;
+        if (isSelected) {
+            foreground = table.getSelectionForeground();
+            background = table.getSelectionBackground();
+        } else {
+            foreground = table.getForeground();
+            background = table.getBackground();
+            final Color alternateColor = UIManager.getColor("Table.alternateRowColor");
+            if (alternateColor != null && row % 2 != 0) {
+                background = alternateColor;
+            }
+        }
+        if (hasFocus) {
+            Border border = isSelected ? UIManager.getBorder("Table.focusSelectedCellHighlightBorder") : null;
+            if (border == null) {
+                border = requireNonNullElse(UIManager.getBorder("Table.focusCellHighlightBorder"),
+                        getNoFocusBorder());
+            }
+            setBorder(border);
+            if (!isSelected && table.isCellEditable(row, column)) {
+                foreground = requireNonNullElse(UIManager.getColor("Table.focusCellForeground"), foreground);
+                background = requireNonNullElse(UIManager.getColor("Table.focusCellBackground"), background);
+            }
+        } else {
+            setBorder(getNoFocusBorder());
+        }
+        setForeground(foreground);
+        setBackground(background);
+        setFont(table.getFont());
+        setCellText(cellKey(table.convertRowIndexToModel(row), table.convertColumnIndexToModel(column)),
+                toText(value));
+        return this;
+    }
+
+    /**
+     * @param table Table. Not null.
+     * @param row Row index in the table view.
+     * @return Preferred height of the row: max. preferred height of its cells rendered by this renderer (incl. the
+     * row margin), but not less than {@link JTable#getRowHeight()}.
+     */
+    public int getRowPreferredHeight(JTable table, int row) {
+        final TableColumnModel columnModel = table.getColumnModel();
+        final var fm = getFontMetrics(table.getFont());
+        final Insets insets = getNoFocusBorder().getBorderInsets(this);
+        int height = table.getRowHeight();
+        for (int column = 0; column < columnModel.getColumnCount(); column++) {
+            if (table.getCellRenderer(row, column) == this) {
+                final int width = columnModel.getColumn(column).getWidth() - columnModel.getColumnMargin();
+                final String text = toText(table.getValueAt(row, column));
+                final int cellHeight = calculatePreferredHeight(this, insets, fm, text, Math.max(1, width),
+                        getLineSpacing(), getMaxLines());
+                height = Math.max(height, cellHeight + table.getRowMargin());
+            }
+        }
+        return height;
+    }
+
+    /**
+     * Sets heights of the table rows to their preferred heights (see {@link #getRowPreferredHeight(JTable, int)})
+     * and keeps them up to date: when cells are updated, inserted or deleted, only heights of the changed rows are
+     * recalculated. Heights of all rows are recalculated when width of a column rendered by this renderer changes,
+     * when the table model is replaced or when all its data changes.
+     * <p>
+     * If the renderer has a layout executor (see {@link #setLayoutExecutor(Executor)}) and the table has at least
+     * {@link #ASYNC_ROW_HEIGHT_MIN_ROW_COUNT} rows, heights of all rows are calculated by the executor in chunks of
+     * rows, starting from the visible rows, and each chunk is applied on EDT when it is ready. The calculation uses
+     * a snapshot of the cell texts, so the table model is not accessed outside EDT. Pass an executor with several
+     * threads (e.g. {@link java.util.concurrent.ForkJoinPool#commonPool()}) to calculate the chunks in parallel.
+     * <p>
+     * The updater also discards the kept text layouts of the changed cells.
+     *
+     * @param table Table which uses this renderer. Not null.
+     * @see #uninstallRowHeightUpdater(JTable)
+     */
+    public void installRowHeightUpdater(JTable table) {
+        requireNonNull(table, "table");
+        if (table.getClientProperty(rowHeightUpdaterKey) != null) {
+            return;
+        }
+        final var updater = new RowHeightUpdater(table);
+        table.putClientProperty(rowHeightUpdaterKey, updater);
+        updater.install();
+    }
+
+    /**
+     * Stops updating heights of the table rows. The current heights are not changed.
+     *
+     * @param table Table. Not null.
+     * @see #installRowHeightUpdater(JTable)
+     */
+    public void uninstallRowHeightUpdater(JTable table) {
+        requireNonNull(table, "table");
+        final var updater = (RowHeightUpdater) table.getClientProperty(rowHeightUpdaterKey);
+        if (updater != null) {
+            table.putClientProperty(rowHeightUpdaterKey, null);
+            updater.uninstall();
+        }
+    }
+
+    /**
+     * Updates heights of the table rows after the table itself has processed the change (e.g. inserted the new
+     * rows), so the updates of an event are applied later on EDT. Consecutive changes are coalesced into a single
+     * range of rows.
+     */
+    private final class RowHeightUpdater implements TableModelListener, TableColumnModelListener,
+            PropertyChangeListener {
+        private final JTable table;
+        private TableModel model;
+        private TableColumnModel columnModel;
+
+        /**
+         * Widths of the table columns which are rendered by this renderer, when the heights were calculated.
+         */
+        private int[] columnWidths = new int[0];
+
+        /**
+         * Range of the model rows (inclusive) which heights must be recalculated. Empty if {@code dirtyFrom >
+         * dirtyTo}.
+         */
+        private int dirtyFrom = Integer.MAX_VALUE;
+        private int dirtyTo = -1;
+        private boolean allDirty;
+        private boolean updateScheduled;
+
+        /**
+         * Calculation of all heights by the layout executor. Null if there is no such calculation.
+         */
+        private RowHeightBatch batch;
+
+        RowHeightUpdater(JTable table) {
+            this.table = table;
+        }
+
+        void install() {
+            model = table.getModel();
+            columnModel = table.getColumnModel();
+            model.addTableModelListener(this);
+            columnModel.addColumnModelListener(this);
+            table.addPropertyChangeListener(this);
+            allDirty = true;
+            update();
+        }
+
+        void uninstall() {
+            model.removeTableModelListener(this);
+            columnModel.removeColumnModelListener(this);
+            table.removePropertyChangeListener(this);
+            cancelBatch();
+            allDirty = false;
+            dirtyFrom = Integer.MAX_VALUE;
+            dirtyTo = -1;
+        }
+
+        @Override
+        public void tableChanged(TableModelEvent e) {
+            final int firstRow = e.getFirstRow();
+            final int lastRow = e.getLastRow();
+            if (firstRow == TableModelEvent.HEADER_ROW || lastRow == Integer.MAX_VALUE) {
+                clearCells(); // structure or all data changed
+                allDirty = true;
+            } else if (e.getType() == TableModelEvent.INSERT) {
+                removeCells(key -> getModelRow(key) >= firstRow); // the rows are shifted
+                restartBatchIfShifted(firstRow);
+                final int count = lastRow - firstRow + 1;
+                if (dirtyFrom <= dirtyTo) { // shift the pending range
+                    dirtyFrom = dirtyFrom >= firstRow ? dirtyFrom + count : dirtyFrom;
+                    dirtyTo = dirtyTo >= firstRow ? dirtyTo + count : dirtyTo;
+                }
+                markDirty(firstRow, lastRow);
+            } else if (e.getType() == TableModelEvent.DELETE) {
+                removeCells(key -> getModelRow(key) >= firstRow);
+                restartBatchIfShifted(firstRow);
+                final int count = lastRow - firstRow + 1;
+                if (dirtyFrom <= dirtyTo) { // shift the pending range, the heights of deleted rows are removed
+                    dirtyFrom = dirtyFrom > lastRow ? dirtyFrom - count : Math.min(dirtyFrom, firstRow);
+                    dirtyTo = dirtyTo > lastRow ? dirtyTo - count : Math.min(dirtyTo, firstRow - 1);
+                }
+            } else {
+                final int column = e.getColumn();
+                removeCells(key -> getModelRow(key) >= firstRow && getModelRow(key) <= lastRow
+                        && (column == TableModelEvent.ALL_COLUMNS || getModelColumn(key) == column));
+                markDirty(firstRow, lastRow);
+            }
+            scheduleUpdate();
+        }
+
+        /**
+         * The snapshot of the batch is not valid if the rows of the snapshot are shifted, e.g. rows appended to
+         * the end of the model don't affect it.
+         */
+        private void restartBatchIfShifted(int firstRow) {
+            if (batch != null && !batch.isDone() && firstRow < batch.getModelRowCount()) {
+                allDirty = true;
+            }
+        }
+
+        private void cancelBatch() {
+            if (batch != null) {
+                batch.cancel();
+                batch = null;
+            }
+        }
+
+        private void markDirty(int from, int to) {
+            dirtyFrom = Math.min(dirtyFrom, from);
+            dirtyTo = Math.max(dirtyTo, to);
+        }
+
+        private void markAllDirty() {
+            allDirty = true;
+            scheduleUpdate();
+        }
+
+        private void scheduleUpdate() {
+            if (!updateScheduled) {
+                updateScheduled = true;
+                SwingUtilities.invokeLater(this::update);
+            }
+        }
+
+        private void update() {
+            updateScheduled = false;
+            if (table.getClientProperty(rowHeightUpdaterKey) != this) {
+                return; // uninstalled
+            }
+            if (batch != null && batch.isDone()) {
+                batch = null;
+            }
+            if (allDirty) {
+                allDirty = false;
+                dirtyFrom = Integer.MAX_VALUE;
+                dirtyTo = -1;
+                columnWidths = getColumnWidths();
+                cancelBatch();
+                final var renderer = MultilineTableCellRenderer.this;
+                final Executor executor = getLayoutExecutor();
+                if (executor != null && table.getRowCount() >= ASYNC_ROW_HEIGHT_MIN_ROW_COUNT
+                        && TextMeasurer.detached(renderer, getFontMetrics(table.getFont()), MeasurementMode.EXACT)
+                        != null) {
+                    batch = new RowHeightBatch(table, renderer, getNoFocusBorder().getBorderInsets(renderer));
+                    batch.start(executor);
+                    return;
+                }
+                for (int row = 0; row < table.getRowCount(); row++) {
+                    updateRowHeight(row);
+                }
+                return;
+            }
+            final int to = Math.min(dirtyTo, model.getRowCount() - 1);
+            for (int modelRow = dirtyFrom; modelRow <= to; modelRow++) {
+                if (batch != null) {
+                    batch.rowChanged(modelRow);
+                }
+                final int row = table.convertRowIndexToView(modelRow);
+                if (row > -1) {
+                    updateRowHeight(row);
+                }
+            }
+            dirtyFrom = Integer.MAX_VALUE;
+            dirtyTo = -1;
+        }
+
+        private void updateRowHeight(int row) {
+            final int height = getRowPreferredHeight(table, row);
+            if (table.getRowHeight(row) != height) {
+                table.setRowHeight(row, height);
+            }
+        }
+
+        /**
+         * @return Widths of the columns rendered by this renderer (as reported for the first row).
+         */
+        private int[] getColumnWidths() {
+            if (table.getRowCount() == 0) {
+                return new int[0];
+            }
+            final int[] widths = new int[columnModel.getColumnCount()];
+            for (int column = 0; column < widths.length; column++) {
+                widths[column] = table.getCellRenderer(0, column) == MultilineTableCellRenderer.this
+                        ? columnModel.getColumn(column).getWidth() : -1;
+            }
+            return widths;
+        }
+
+        @Override
+        public void columnAdded(TableColumnModelEvent e) {
+            markAllDirty();
+        }
+
+        @Override
+        public void columnRemoved(TableColumnModelEvent e) {
+            markAllDirty();
+        }
+
+        @Override
+        public void columnMoved(TableColumnModelEvent e) {
+            if (e.getFromIndex() != e.getToIndex()) {
+                columnWidths = getColumnWidths(); // the heights don't depend on the column order
+            }
+        }
+
+        @Override
+        public void columnMarginChanged(ChangeEvent e) {
+            if (!allDirty && !Arrays.equals(columnWidths, getColumnWidths())) {
+                markAllDirty();
+            }
+        }
+
+        @Override
+        public void columnSelectionChanged(ListSelectionEvent e) {
+        }
+
+        @Override
+        public void propertyChange(PropertyChangeEvent e) {
+            switch (e.getPropertyName()) {
+                case "model":
+                    model.removeTableModelListener(this);
+                    model = table.getModel();
+                    model.addTableModelListener(this);
+                    clearCells();
+                    markAllDirty();
+                    break;
+                case "columnModel":
+                    columnModel.removeColumnModelListener(this);
+                    columnModel = table.getColumnModel();
+                    columnModel.addColumnModelListener(this);
+                    markAllDirty();
+                    break;
+                case "font":
+                case "rowHeight":
+                case "rowMargin":
+                case "rowSorter":
+                    markAllDirty();
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package io.github.parubok.text.multiline;
+
+import javax.swing.BorderFactory;
+import javax.swing.JTree;
+import javax.swing.UIManager;
+import javax.swing.border.Border;
+import javax.swing.border.LineBorder;
+import javax.swing.tree.TreeCellRenderer;
+import java.awt.Color;
+import java.awt.Component;
+
+import static java.util.Objects.requireNonNullElse;
+
+/**
+ * Renderer of {@link JTree} nodes which displays the node text on multiple lines. Unlike
+ * {@link javax.swing.tree.DefaultTreeCellRenderer}, doesn't display icons.
+ * <p>
+ * The text is broken according to the preferred width limit of the renderer (see
+ * {@link #setPreferredWidthLimit(int)}). The tree must have variable row height ({@code tree.setRowHeight(0)}).
+ * The text layout of each recently rendered row is kept by the renderer (see {@link #setCellCacheCapacity(int)}).
+ *
+ * @see javax.swing.tree.DefaultTreeCellRenderer
+ */
+public class MultilineTreeCellRenderer extends AbstractCellRenderer implements TreeCellRenderer {
+
+    private static final Border NO_FOCUS_BORDER = BorderFactory.createEmptyBorder(1, 1, 1, 1);
+
+    private LineBorder focusBorder;
+
+    public MultilineTreeCellRenderer() {
+        super();
+        setBorder(NO_FOCUS_BORDER);
+    }
+
+    @Override
+    public Component getTreeCellRendererComponent(JTree tree, Object value, boolean selected, boolean expanded,
+                                                  boolean leaf, int row, boolean hasFocus) {
+        final Color foreground = UIManager.getColor(selected ? "Tree.selectionForeground" : "Tree.textForeground");
+        final Color background = UIManager.getColor(selected ? "Tree.selectionBackground" : "Tree.textBackground");
+        setForeground(requireNonNullElse(foreground, tree.getForeground()));
+        setBackground(requireNonNullElse(background, tree.getBackground()));
+        setBorder(hasFocus ? getFocusBorder() : NO_FOCUS_BORDER);
+        setEnabled(tree.isEnabled());
+        setFont(tree.getFont());
+        // the tree may ask for the size of a row which is not displayed yet (row -1)
+        setCellText(row, tree.convertValueToText(value, selected, expanded, leaf, row, hasFocus));
+        return this;
+    }
+
+    private Border getFocusBorder() {
+        final Color color = UIManager.getColor("Tree.selectionBorderColor");
+        if (color == null) {
+            return NO_FOCUS_BORDER;
+        }
+        if (focusBorder == null || !color.equals(focusBorder.getLineColor())) {
+            focusBorder = new LineBorder(color);
+        }
+        return focusBorder;
+    }
+}
@@ -3,6 +3,7 @@ package io.github.parubok.text.multiline;
 import java.awt.Dimension;
 import java.awt.FontMetrics;
 import java.awt.Insets;
+import java.awt.Rectangle;
 
 class MultilineUtils {
     private MultilineUtils() {
@@ -12,7 +13,58 @@ class MultilineUtils {
         return new Dimension(width + insets.right + insets.left, height + insets.top + insets.bottom);
     }
 
+    /**
+     * @return True if the character doesn't require text layout, so the width of a text of such characters is the
+     * sum of their advances.
+     * @implNote Conservative version of {@code sun.font.FontUtilities.isNonSimpleChar}.
+     */
+    static boolean isSimpleChar(char ch) {
+        return ch < 0x0300 || (ch >= 0x0370 && ch < 0x0590) || (ch > 0x206F && !Character.isSurrogate(ch));
+    }
+
     static int getHeightIncrement(FontMetrics fm, float lineSpacing) {
         return Math.round(fm.getHeight() * lineSpacing);
     }
+
+    /**
+     * Lines of all layouts have the same height, so the line at a point is calculated without a search.
+     *
+     * @param y Y coordinate.
+     * @param top Y coordinate of the top of the first line.
+     * @param yIncrement Distance between baselines of two adjacent lines. Positive.
+     * @return Index of the line which occupies the Y coordinate: [top of the line, top of the next line). Negative if
+     * the coordinate is above the first line. Not limited by the number of lines.
+     */
+    static int getLineAt(int y, int top, int yIncrement) {
+        return Math.floorDiv(y - top, yIncrement);
+    }
+
+    /**
+     * @param clip Clip bounds of the graphics context. May be null (no clip).
+     * @param top Y coordinate of the top of the first line.
+     * @param yIncrement Distance between baselines of two adjacent lines.
+     * @return Index of the first line which may intersect the clip.
+     */
+    static int getFirstVisibleLine(Rectangle clip, int top, FontMetrics fm, int yIncrement) {
+        if (clip == null || yIncrement < 1) {
+            return 0;
+        }
+        // +1 for the shadow of the disabled text
+        final int lineBottomOffset = fm.getAscent() + fm.getMaxDescent() + 1;
+        return Math.max(0, -Math.floorDiv(top + lineBottomOffset - clip.y, yIncrement)); // ceil
+    }
+
+    /**
+     * @param clip Clip bounds of the graphics context. May be null (no clip).
+     * @param top Y coordinate of the top of the first line.
+     * @param yIncrement Distance between baselines of two adjacent lines.
+     * @return Index of the last line which may intersect the clip. {@link Integer#MAX_VALUE} if unknown.
+     */
+    static int getLastVisibleLine(Rectangle clip, int top, FontMetrics fm, int yIncrement) {
+        if (clip == null || yIncrement < 1) {
+            return Integer.MAX_VALUE;
+        }
+        final int lineTopOffset = fm.getAscent() - fm.getMaxAscent();
+        return Math.floorDiv(clip.y + clip.height - 1 - top - lineTopOffset, yIncrement);
+    }
 }
@@ -35,18 +35,38 @@ final class NextLine {
     }
 
     /**
-     * @param text The label text.
-     * @param lineCount Current line count (including this line).
-     * @param maxLines Maximum number of lines to paint on the label.
-     * @return String to paint for this line.
-     */
-    String stringToPaint(String text, int lineCount, int maxLines) {
-        boolean paintAsEllipsis = !lastLine && lineCount == maxLines;
-        return paintAsEllipsis ? "..." : text.substring(lineStartIndex, lineEndIndex + 1);
+     * Packs the details of a line into a single value, so the line may be found without allocation.
+     *
+     * @param lineEndIndex Index of last character in the line. Inclusive.
+     * @param nextLineStartIndex Index of first character in the line after that line, or -1 for the last line.
+     * @see WidthTextLayout#breakLine
+     */
+    static long pack(int lineEndIndex, int nextLineStartIndex) {
+        return ((long) lineEndIndex << 32) | (nextLineStartIndex & 0xFFFF_FFFFL);
+    }
+
+    /**
+     * @param line Details of the line packed by {@link #pack(int, int)}.
+     */
+    static int getLineEndIndex(long line) {
+        return (int) (line >> 32);
     }
 
-    boolean hasMoreLines(int lineCount, int maxLines) {
-        return !lastLine && lineCount < maxLines;
+    /**
+     * @param line Details of the line packed by {@link #pack(int, int)}.
+     * @return Index of first character in the line after that line, or -1 if this is the last line.
+     */
+    static int getNextLineStartIndex(long line) {
+        return (int) line;
+    }
+
+    /**
+     * @param lineStartIndex Index of first character in the line.
+     * @param line Details of the line packed by {@link #pack(int, int)}.
+     */
+    static NextLine of(int lineStartIndex, long line) {
+        final int nextLineStartIndex = getNextLineStartIndex(line);
+        return new NextLine(nextLineStartIndex == -1, lineStartIndex, getLineEndIndex(line), nextLineStartIndex);
     }
 
     @Override
@@ -0,0 +1,144 @@
+package io.github.parubok.text.multiline;
+
+/**
+ * Measures widths of growing prefixes of a line, i.e. {@code text.subSequence(lineStart, end)} for increasing values
+ * of {@code end}. Each character of the line is measured once and the prefix width is the sum of the widths of its
+ * parts. The exact width of the prefix is measured only when the sum is too close to the width limit to decide,
+ * so the result of {@link #exceeds(int, int)} is the same as if the whole prefix was measured.
+ * <p>
+ * Widths are summed only for simple text (see {@link MultilineUtils#isSimpleChar(char)}), where the width of a
+ * string is the sum of its character advances. A prefix which contains other characters is always measured exactly.
+ * <p>
+ * The measurer also records the range of width limits for which all results of {@link #exceeds(int, int)} would be
+ * the same. Since the line breaks depend on the width limit only through these results, the lines are identical for
+ * any width limit in the range.
+ */
+final class PrefixWidthMeasurer {
+
+    /**
+     * Max. difference (in pixels) between the sum of widths of parts and the width of the whole simple text.
+     * Covers rounding errors of the float sum.
+     */
+    private static final float SLACK = 1.0f;
+
+    /**
+     * Max. number of characters to measure at once, so a test of a long prefix may stop as soon as it exceeds
+     * the limit.
+     */
+    private static final int CHUNK_LENGTH = 32;
+
+    private final TextMeasurer measurer;
+    private CharSequence text;
+
+    private int lineStart;
+    private int measuredEnd;
+    private float measuredWidth;
+    private boolean complex;
+
+    private int minWidthLimit = 1;
+    private int maxWidthLimit = Integer.MAX_VALUE;
+
+    /**
+     * @param measurer Not null.
+     * @param text Not null.
+     */
+    PrefixWidthMeasurer(TextMeasurer measurer, CharSequence text) {
+        this.measurer = measurer;
+        this.text = text;
+    }
+
+    /**
+     * Allows to reuse the measurer for another text. Resets the recorded range of the width limits.
+     *
+     * @param text Not null.
+     */
+    void setText(CharSequence text) {
+        this.text = text;
+        this.minWidthLimit = 1;
+        this.maxWidthLimit = Integer.MAX_VALUE;
+    }
+
+    /**
+     * Starts measurement of a new line.
+     *
+     * @param lineStart Index of the first character of the line.
+     */
+    void startLine(int lineStart) {
+        this.lineStart = lineStart;
+        this.measuredEnd = lineStart;
+        this.measuredWidth = 0.0f;
+        this.complex = !measurer.isAdditive();
+    }
+
+    /**
+     * @param end Index after the last character of the prefix. Normally, not less than the value of the previous
+     * call for this line.
+     * @param widthLimit Width limit in pixels.
+     * @return True if the width of {@code text.subSequence(lineStart, end)} exceeds {@code widthLimit}.
+     */
+    boolean exceeds(int end, int widthLimit) {
+        if (end < measuredEnd) {
+            return exceeds(measure(lineStart, end), 0.0f, widthLimit);
+        }
+        while (measuredEnd < end) {
+            final int chunkEnd = Math.min(end, measuredEnd + CHUNK_LENGTH);
+            complex = complex || !isSimple(measuredEnd, chunkEnd);
+            measuredWidth += measure(measuredEnd, chunkEnd);
+            measuredEnd = chunkEnd;
+            if (!complex && measuredWidth > widthLimit + SLACK) {
+                // width of simple text never decreases when characters are added
+                return exceeds(measuredWidth, SLACK, widthLimit);
+            }
+        }
+        if (complex || Math.abs(measuredWidth - widthLimit) <= SLACK) {
+            measuredWidth = measure(lineStart, end);
+            return exceeds(measuredWidth, 0.0f, widthLimit);
+        }
+        return exceeds(measuredWidth, SLACK, widthLimit);
+    }
+
+    /**
+     * Compares the width with the limit and narrows the range of the width limits for which the result is the same.
+     *
+     * @param width Measured width.
+     * @param error Max. difference between the measured width and the exact one. The result must be the same for
+     * the exact width.
+     */
+    private boolean exceeds(float width, float error, int widthLimit) {
+        if (width > widthLimit) {
+            maxWidthLimit = Math.min(maxWidthLimit, (int) Math.ceil(width - error));
+            return true;
+        }
+        minWidthLimit = Math.max(minWidthLimit, (int) Math.ceil(width + error));
+        return false;
+    }
+
+    /**
+     * @return Min. width limit (inclusive) for which the previous results of {@link #exceeds(int, int)} would be
+     * the same.
+     */
+    int getMinWidthLimit() {
+        return minWidthLimit;
+    }
+
+    /**
+     * @return Max. width limit (exclusive) for which the previous results of {@link #exceeds(int, int)} would be
+     * the same.
+     */
+    int getMaxWidthLimit() {
+        return maxWidthLimit;
+    }
+
+    private boolean isSimple(int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (!MultilineUtils.isSimpleChar(text.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private float measure(int start, int end) {
+        return measurer.getWidth(text, start, end);
+    }
+}
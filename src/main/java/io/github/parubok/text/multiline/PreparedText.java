@@ -0,0 +1,151 @@
+package io.github.parubok.text.multiline;
+
+import javax.swing.JComponent;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Insets;
+import java.util.Set;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Text broken into lines for a specific font and width limit, as it would be displayed by the width based layout of
+ * {@link MultilineLabel}. Intended for custom painting of multiline text on components other than
+ * {@link MultilineLabel}: unlike {@link MultilineLabel#calculatePreferredSize} and {@link MultilineLabel#paintText},
+ * which break the text on each call, the object is created once and may be measured and painted many times.
+ * <p>
+ * The object is immutable. It keeps the glyphs of the painted lines, so repeated painting doesn't shape the text
+ * again. This class is thread-safe.
+ */
+public final class PreparedText {
+
+    /**
+     * Breaks the text into lines.
+     *
+     * @param c Component to measure the text for. Its AA settings are used for the measurement. May be null.
+     * @param fm {@link FontMetrics} to measure the text. Not null.
+     * @param text Text to break. Not null.
+     * @param textWidthLimit Positive width limit of the text in pixels (excl. insets).
+     * @param lineSpacing Distance between two adjacent baselines will be the font height (as returned
+     * by {@link FontMetrics#getHeight()}) multiplied by this value.
+     * @param separators Characters where the text may be broken. May be null - then
+     * {@link MultilineLabel#DEFAULT_SEPARATORS} are used.
+     * @param maxLines Positive maximum number of lines. If the text has more lines, the last line is painted as
+     * ellipsis.
+     */
+    public static PreparedText prepare(JComponent c, FontMetrics fm, String text, int textWidthLimit,
+                                       float lineSpacing, Set<Character> separators, int maxLines) {
+        requireNonNull(fm, "fm");
+        requireNonNull(text, "text");
+        if (textWidthLimit < 1 || maxLines < 1) {
+            throw new IllegalArgumentException("Width limit and max. lines must be positive.");
+        }
+        final SeparatorMatcher separatorMatcher = separators == null ? SeparatorMatcher.DEFAULT
+                : SeparatorMatcher.of(separators);
+        final TextLines lines = TextLines.breakText(text, LineBreakIndex.of(text), TextMeasurer.of(c, fm),
+                textWidthLimit, maxLines, separatorMatcher);
+        return new PreparedText(text, fm, textWidthLimit, lineSpacing, maxLines, lines);
+    }
+
+    private final String text;
+    private final FontMetrics fm;
+    private final int textWidthLimit;
+    private final float lineSpacing;
+    private final int maxLines;
+
+    /**
+     * Painting updates the glyph vectors of the lines, so it is done under the lock of this object.
+     */
+    private final TextLines lines;
+
+    private PreparedText(String text, FontMetrics fm, int textWidthLimit, float lineSpacing, int maxLines,
+                         TextLines lines) {
+        this.text = text;
+        this.fm = fm;
+        this.textWidthLimit = textWidthLimit;
+        this.lineSpacing = lineSpacing;
+        this.maxLines = maxLines;
+        this.lines = lines;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public FontMetrics getFontMetrics() {
+        return fm;
+    }
+
+    public int getTextWidthLimit() {
+        return textWidthLimit;
+    }
+
+    public float getLineSpacing() {
+        return lineSpacing;
+    }
+
+    public int getMaxLines() {
+        return maxLines;
+    }
+
+    /**
+     * @return Number of lines, not more than the max. number of lines. 0 for empty text.
+     */
+    public int getLineCount() {
+        return lines.getLineCount();
+    }
+
+    /**
+     * @return True if the text has more lines than the max. number of lines, so the last line is ellipsis.
+     */
+    public boolean isTruncated() {
+        return lines.isTruncated();
+    }
+
+    /**
+     * @return Preferred size of the text (excl. insets).
+     */
+    public Dimension getPreferredSize() {
+        return getPreferredSize(new Insets(0, 0, 0, 0));
+    }
+
+    /**
+     * @param insets Insets to include in the size. Not null.
+     * @return Preferred size of the text (incl. insets). Same as {@link MultilineLabel#calculatePreferredSize} for
+     * the same parameters.
+     */
+    public Dimension getPreferredSize(Insets insets) {
+        requireNonNull(insets, "insets");
+        return MultilineUtils.toDimension(lines.getWidth(), lines.getHeight(fm, lineSpacing), insets);
+    }
+
+    /**
+     * Paints the lines which intersect the clip of the graphics.
+     *
+     * @param c Component. If not null, its AA settings will be used for the painting.
+     * @param g Graphics to paint the text. Must be preconfigured with the font of the {@link FontMetrics}, color
+     * and AA hints. Not null.
+     * @param x X coordinate of the left side of the text.
+     * @param y Y coordinate of the top of the text.
+     * @param enabled If false - paint disabled text.
+     * @param background Background color of the target component. Used to paint disabled text. Not null.
+     */
+    public synchronized void paint(JComponent c, Graphics g, int x, int y, boolean enabled, Color background) {
+        requireNonNull(g, "g");
+        requireNonNull(background, "background");
+        WidthTextLayout.paintLines(c, g, lines, text, fm, x, y, lineSpacing, enabled, background);
+    }
+
+    @Override
+    public String toString() {
+        return "PreparedText{" +
+                "textLength=" + text.length() +
+                ", textWidthLimit=" + textWidthLimit +
+                ", lineSpacing=" + lineSpacing +
+                ", maxLines=" + maxLines +
+                ", lineCount=" + lines.getLineCount() +
+                '}';
+    }
+}
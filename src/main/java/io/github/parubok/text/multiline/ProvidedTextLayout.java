@@ -6,6 +6,8 @@ import java.awt.Dimension;
 import java.awt.FontMetrics;
 import java.awt.Graphics;
 import java.awt.Insets;
+import java.awt.font.GlyphVector;
+import java.util.Arrays;
 import java.util.List;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -20,6 +22,16 @@ final class ProvidedTextLayout extends AbstractTextLayout {
 
     private final List<String> lines;
 
+    /**
+     * Glyph vectors of the painted lines, by line index.
+     */
+    private final GlyphVectorCache glyphVectors = new GlyphVectorCache();
+
+    /**
+     * Index of the first character of each line in the label text. Null if not calculated yet.
+     */
+    private int[] lineStarts;
+
     ProvidedTextLayout(MultilineLabel label) {
         super(label);
         this.lines = breakToLines(label.getText());
@@ -47,29 +59,53 @@ final class ProvidedTextLayout extends AbstractTextLayout {
      */
     static void paintText(JComponent c, Graphics g, String text, Insets insets, boolean enabled, Color backgroundColor,
                           float lineSpacing) {
-        paintText2(c, g, breakToLines(text), insets, enabled, backgroundColor, lineSpacing);
+        paintText2(c, g, breakToLines(text), insets, enabled, backgroundColor, lineSpacing, null);
     }
 
+    /**
+     * @param glyphVectors Glyph vectors of the lines. If null, the lines are painted as strings.
+     */
     private static void paintText2(JComponent c, Graphics g, List<String> lines, Insets insets, boolean enabled,
-                                   Color background, float lineSpacing) {
+                                   Color background, float lineSpacing, GlyphVectorCache glyphVectors) {
         final var fm = g.getFontMetrics();
         final int x = insets.left;
-        int y = insets.top + fm.getAscent();
         final int yIncrement = MultilineUtils.getHeightIncrement(fm, lineSpacing);
-        for (String line : lines) {
-            if (enabled) {
-                drawString(c, g, line, x, y);
-            } else {
-                drawStringInDisabledStyle(c, line, g, background, x, y);
+        final var clip = g.getClipBounds();
+        final int firstLine = MultilineUtils.getFirstVisibleLine(clip, insets.top, fm, yIncrement);
+        final int lastLine = Math.min(lines.size() - 1,
+                MultilineUtils.getLastVisibleLine(clip, insets.top, fm, yIncrement));
+        int y = insets.top + fm.getAscent() + yIncrement * firstLine;
+        final GlyphPainter painter = glyphVectors != null ? GlyphPainter.of(c, g) : null;
+        try {
+            for (int i = firstLine; i <= lastLine; i++) {
+                String line = lines.get(i);
+                final GlyphVector glyphVector = painter != null
+                        ? glyphVectors.get(i, line, 0, line.length(), painter.getFont(), painter.getFontRenderContext())
+                        : null;
+                if (glyphVector != null) {
+                    if (enabled) {
+                        painter.draw(glyphVector, x, y);
+                    } else {
+                        painter.drawInDisabledStyle(glyphVector, background, x, y);
+                    }
+                } else if (enabled) {
+                    drawString(c, g, line, x, y);
+                } else {
+                    drawStringInDisabledStyle(c, line, g, background, x, y);
+                }
+                y += yIncrement;
+            }
+        } finally {
+            if (painter != null) {
+                painter.dispose();
             }
-            y += yIncrement;
         }
     }
 
     @Override
     public void paintText(Graphics g) {
         paintText2(label, g, lines, label.getInsets(), label.isEnabled(), label.getBackground(),
-                label.getLineSpacing());
+                label.getLineSpacing(), glyphVectors);
     }
 
     static Dimension calcPreferredSize(JComponent c, String text, FontMetrics fm, Insets insets, float lineSpacing) {
@@ -103,6 +139,66 @@ final class ProvidedTextLayout extends AbstractTextLayout {
                 label.getLineSpacing());
     }
 
+    @Override
+    LineTable getLineTable() {
+        if (lineStarts == null) {
+            lineStarts = findLineStarts(label.getText(), lines);
+        }
+        return new LineTable() {
+            @Override
+            public int getLineCount() {
+                return lines.size();
+            }
+
+            @Override
+            public int getLineStart(int index) {
+                return lineStarts[index];
+            }
+
+            @Override
+            public int getLineEnd(int index) {
+                return lineStarts[index] + lines.get(index).length();
+            }
+
+            @Override
+            public int getLineAt(int textIndex) {
+                final int i = Arrays.binarySearch(lineStarts, textIndex);
+                return Math.max(0, i < 0 ? -i - 2 : i);
+            }
+
+            @Override
+            public boolean isTruncated() {
+                return false;
+            }
+        };
+    }
+
+    /**
+     * @param lines Lines of the text (see {@link #breakToLines(String)}).
+     * @return Index of each line in the text.
+     */
+    private static int[] findLineStarts(String text, List<String> lines) {
+        final int[] starts = new int[lines.size()];
+        int index = 0;
+        for (int i = 0; i < starts.length; i++) {
+            final String line = lines.get(i);
+            while (!text.startsWith(line, index)) {
+                index++; // leading whitespace of the line
+            }
+            starts[i] = index;
+            index += line.length();
+            while (index < text.length() && text.charAt(index) != '\n' && text.charAt(index) != '\r') {
+                index++; // trailing whitespace of the line
+            }
+            if (text.startsWith("\r\n", index)) {
+                index += 2;
+            } else if (index < text.length()) {
+                index++;
+            }
+        }
+        return starts;
+    }
+
     @Override
     public void preSetBounds(int x, int y, int width, int height) {
         // do nothing since this layout doesn't depend on the current bounds
@@ -0,0 +1,208 @@
+package io.github.parubok.text.multiline;
+
+import javax.swing.JTable;
+import javax.swing.SwingUtilities;
+import javax.swing.table.TableColumnModel;
+import java.awt.FontMetrics;
+import java.awt.Insets;
+import java.awt.Rectangle;
+import java.util.BitSet;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Calculation of heights of all rows of a table by an executor, for {@link MultilineTableCellRenderer}.
+ * <p>
+ * When the batch is created (on EDT), it takes a snapshot of the texts of the cells rendered by the renderer, of the
+ * column widths and of the font, so the calculation doesn't access the table or its model. The rows are calculated
+ * in chunks, each chunk by a separate task, so an executor with several threads calculates them in parallel.
+ * The chunks are submitted starting from the visible rows, and the heights of each chunk are applied to the table on
+ * EDT as soon as the chunk is calculated.
+ * <p>
+ * The lines are counted by {@link LineCounter} without the component (see {@link TextMeasurer#detached}), so the
+ * batch may be used only if the measurement doesn't depend on the component properties.
+ */
+final class RowHeightBatch {
+
+    /**
+     * Number of rows calculated by a single task.
+     */
+    static final int CHUNK_SIZE = 1_000;
+
+    private final JTable table;
+    private final FontMetrics fm;
+    private final Insets insets;
+    private final float lineSpacing;
+    private final int maxLines;
+    private final SeparatorMatcher separators;
+    private final int minHeight;
+    private final int rowMargin;
+    private final int modelRowCount;
+
+    /**
+     * Model index of each view row at the time of the snapshot.
+     */
+    private final int[] modelRows;
+
+    /**
+     * Texts of the cells rendered by the renderer, by view row, and the widths of their columns.
+     */
+    private final String[][] texts;
+    private final int[] widths;
+
+    /**
+     * Model rows which were changed after the snapshot. Their heights are calculated by the renderer on EDT.
+     */
+    private final BitSet changedRows = new BitSet();
+
+    private volatile boolean cancelled;
+
+    /**
+     * Number of chunks which were not applied yet. Accessed only on EDT.
+     */
+    private int pendingChunks;
+
+    /**
+     * Takes the snapshot of the table. Must be called on EDT.
+     */
+    RowHeightBatch(JTable table, MultilineTableCellRenderer renderer, Insets insets) {
+        this.table = table;
+        this.fm = renderer.getFontMetrics(table.getFont());
+        this.insets = insets;
+        this.lineSpacing = renderer.getLineSpacing();
+        this.maxLines = renderer.getMaxLines();
+        this.separators = renderer.getSeparatorMatcher();
+        this.minHeight = table.getRowHeight();
+        this.rowMargin = table.getRowMargin();
+        this.modelRowCount = table.getModel().getRowCount();
+        final int rowCount = table.getRowCount();
+        this.modelRows = new int[rowCount];
+        for (int row = 0; row < rowCount; row++) {
+            modelRows[row] = table.convertRowIndexToModel(row);
+        }
+        final TableColumnModel columnModel = table.getColumnModel();
+        int columnCount = 0;
+        final int[] columns = new int[columnModel.getColumnCount()];
+        for (int column = 0; column < columns.length; column++) {
+            if (rowCount > 0 && table.getCellRenderer(0, column) == renderer) {
+                columns[columnCount++] = column; // the renderer of the first row is used for the whole column
+            }
+        }
+        this.texts = new String[columnCount][];
+        this.widths = new int[columnCount];
+        final var model = table.getModel();
+        for (int i = 0; i < columnCount; i++) {
+            final int column = columns[i];
+            final int modelColumn = table.convertColumnIndexToModel(column);
+            widths[i] = Math.max(1, columnModel.getColumn(column).getWidth() - columnModel.getColumnMargin());
+            final String[] columnTexts = new String[rowCount];
+            for (int row = 0; row < rowCount; row++) {
+                columnTexts[row] = AbstractCellRenderer.toText(model.getValueAt(modelRows[row], modelColumn));
+            }
+            texts[i] = columnTexts;
+        }
+    }
+
+    /**
+     * @return Number of rows of the table model at the time of the snapshot.
+     */
+    int getModelRowCount() {
+        return modelRowCount;
+    }
+
+    /**
+     * Submits the chunks to the executor, starting from the chunk with the first visible row and continuing with
+     * the chunks which are closer to it. If the executor rejects a chunk, it is calculated on the current thread.
+     */
+    void start(Executor executor) {
+        final int chunkCount = (modelRows.length + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        pendingChunks = chunkCount;
+        int after = getFirstVisibleRow() / CHUNK_SIZE;
+        int before = after - 1;
+        while (after < chunkCount || before > -1) {
+            if (after < chunkCount) {
+                submit(executor, after++);
+            }
+            if (before > -1) {
+                submit(executor, before--);
+            }
+        }
+    }
+
+    private void submit(Executor executor, int chunk) {
+        final int from = chunk * CHUNK_SIZE;
+        final int to = Math.min(modelRows.length, from + CHUNK_SIZE);
+        final Runnable task = () -> {
+            if (!cancelled) {
+                final int[] heights = calculateHeights(from, to);
+                SwingUtilities.invokeLater(() -> apply(from, heights));
+            }
+        };
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            task.run();
+        }
+    }
+
+    private int getFirstVisibleRow() {
+        final Rectangle visibleRect = table.getVisibleRect();
+        final int row = table.rowAtPoint(visibleRect.getLocation());
+        return Math.min(Math.max(0, row), Math.max(0, modelRows.length - 1));
+    }
+
+    private int[] calculateHeights(int from, int to) {
+        final int[] heights = new int[to - from];
+        for (int row = from; row < to; row++) {
+            int height = minHeight;
+            for (int i = 0; i < texts.length; i++) {
+                final int cellHeight = MultilineLabel.calculatePreferredHeight(null, insets, fm, texts[i][row],
+                        widths[i], lineSpacing, maxLines, separators);
+                height = Math.max(height, cellHeight + rowMargin);
+            }
+            heights[row - from] = height;
+        }
+        return heights;
+    }
+
+    private void apply(int from, int[] heights) {
+        if (cancelled) {
+            return;
+        }
+        pendingChunks--;
+        for (int i = 0; i < heights.length; i++) {
+            final int modelRow = modelRows[from + i];
+            if (changedRows.get(modelRow)) {
+                continue;
+            }
+            final int row = table.convertRowIndexToView(modelRow);
+            if (row > -1 && table.getRowHeight(row) != heights[i]) {
+                table.setRowHeight(row, heights[i]);
+            }
+        }
+    }
+
+    /**
+     * Called on EDT when height of the model row was calculated after the snapshot, so the batch doesn't overwrite
+     * it.
+     */
+    void rowChanged(int modelRow) {
+        if (modelRow < modelRowCount) {
+            changedRows.set(modelRow);
+        }
+    }
+
+    /**
+     * @return True if all chunks were applied or the batch was cancelled.
+     */
+    boolean isDone() {
+        return cancelled || pendingChunks == 0;
+    }
+
+    /**
+     * Stops the calculation. The chunks which were already applied are not reverted.
+     */
+    void cancel() {
+        cancelled = true;
+    }
+}
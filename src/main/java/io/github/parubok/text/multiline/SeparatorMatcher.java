@@ -0,0 +1,80 @@
+package io.github.parubok.text.multiline;
+
+import java.util.Set;
+
+/**
+ * Compiled set of separator characters. Finds separators in a text in a single forward pass without boxing.
+ * Immutable.
+ *
+ * @see MultilineLabel#setSeparators(Set)
+ */
+final class SeparatorMatcher {
+
+    static final SeparatorMatcher DEFAULT = new SeparatorMatcher(MultilineLabel.DEFAULT_SEPARATORS);
+
+    /**
+     * @param separators Separator characters. Not null.
+     */
+    static SeparatorMatcher of(Set<Character> separators) {
+        return separators == MultilineLabel.DEFAULT_SEPARATORS ? DEFAULT : new SeparatorMatcher(separators);
+    }
+
+    private final Set<Character> separators;
+
+    /**
+     * Bit per character (up to the max. separator character).
+     */
+    private final long[] bits;
+
+    private SeparatorMatcher(Set<Character> separators) {
+        this.separators = separators;
+        int maxChar = 0;
+        for (char ch : separators) {
+            maxChar = Math.max(maxChar, ch);
+        }
+        this.bits = new long[(maxChar >> 6) + 1];
+        for (char ch : separators) {
+            bits[ch >> 6] |= 1L << ch;
+        }
+    }
+
+    /**
+     * @return True if this matcher was compiled from the specified set (the same instance).
+     */
+    boolean isCompiledFrom(Set<Character> separators) {
+        return this.separators == separators;
+    }
+
+    boolean isSeparator(char ch) {
+        final int i = ch >> 6;
+        return i < bits.length && (bits[i] & (1L << ch)) != 0;
+    }
+
+    /**
+     * @return Index of the first separator in the text at or after {@code fromIndex}, or -1 if there is no such
+     * separator.
+     */
+    int indexOf(CharSequence text, int fromIndex) {
+        return indexOf(text, fromIndex, text.length());
+    }
+
+    /**
+     * @return Index of the first separator in the text in range [{@code fromIndex}, {@code toIndex}), or -1 if there
+     * is no such separator.
+     */
+    int indexOf(CharSequence text, int fromIndex, int toIndex) {
+        for (int i = Math.max(0, fromIndex); i < toIndex; i++) {
+            if (isSeparator(text.charAt(i))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public String toString() {
+        return "SeparatorMatcher{" +
+                "separators=" + separators +
+                '}';
+    }
+}
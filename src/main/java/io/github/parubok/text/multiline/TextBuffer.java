@@ -0,0 +1,201 @@
+package io.github.parubok.text.multiline;
+
+/**
+ * Text of {@link MultilineLabel}. Allows to append text and to remove the first lines of the text in amortized
+ * constant time (per character), so the cost of {@link MultilineLabel#appendText(CharSequence)} doesn't depend on the
+ * length of the text.
+ * <p>
+ * Lines of the text are separated by {@code "\n"}, {@code "\r"} or {@code "\r\n"} as in {@link String#lines()}.
+ * <p>
+ * Not thread-safe.
+ */
+final class TextBuffer implements CharSequence {
+
+    private static final int MIN_CAPACITY = 16;
+
+    private char[] chars;
+    private int start;
+    private int length;
+
+    /**
+     * The text as string. Null if it has to be created from {@link #chars}.
+     */
+    private String string;
+
+    private int lfCount;
+    private int crCount;
+    private int crlfCount;
+
+    TextBuffer(CharSequence text) {
+        this.chars = new char[0];
+        append(text);
+        this.string = text instanceof String ? (String) text : null;
+    }
+
+    void append(CharSequence text) {
+        final int textLength = text.length();
+        if (textLength == 0) {
+            return;
+        }
+        if (start + length + textLength > chars.length) {
+            final var newChars = new char[Math.max(MIN_CAPACITY, 2 * (length + textLength))];
+            System.arraycopy(chars, start, newChars, 0, length);
+            chars = newChars;
+            start = 0;
+        }
+        final int oldLength = length;
+        if (text instanceof String) {
+            ((String) text).getChars(0, textLength, chars, start + length);
+        } else {
+            for (int i = 0; i < textLength; i++) {
+                chars[start + length + i] = text.charAt(i);
+            }
+        }
+        length += textLength;
+        string = null;
+        countSeparators(oldLength, length, 1);
+        if (oldLength > 0 && charAt(oldLength - 1) == '\r' && charAt(oldLength) == '\n') {
+            crlfCount++; // "\r\n" which spans both parts
+        }
+    }
+
+    /**
+     * Removes the first line of the text, including its line separator.
+     *
+     * @return Number of removed characters.
+     */
+    int removeFirstLine() {
+        int end = 0;
+        while (end < length) {
+            final char ch = charAt(end++);
+            if (ch == '\n') {
+                break;
+            }
+            if (ch == '\r') {
+                if (end < length && charAt(end) == '\n') {
+                    end++;
+                }
+                break;
+            }
+        }
+        countSeparators(0, end, -1);
+        start += end;
+        length -= end;
+        string = null;
+        return end;
+    }
+
+    /**
+     * Adds (or subtracts) the line separators in range [{@code from}, {@code to}) to the counters.
+     */
+    private void countSeparators(int from, int to, int sign) {
+        for (int i = from; i < to; i++) {
+            final char ch = charAt(i);
+            if (ch == '\n') {
+                lfCount += sign;
+            } else if (ch == '\r') {
+                crCount += sign;
+                if (i + 1 < to && charAt(i + 1) == '\n') {
+                    crlfCount += sign;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return Number of lines of the text as in {@link String#lines()}.
+     */
+    int getLineCount() {
+        if (length == 0) {
+            return 0;
+        }
+        final int separatorCount = lfCount + crCount - crlfCount;
+        final char lastChar = charAt(length - 1);
+        return separatorCount + (lastChar == '\n' || lastChar == '\r' ? 0 : 1);
+    }
+
+    /**
+     * @return True if the lines of the text are separated only by {@code "\n"} or only by {@code "\r\n"}, so the
+     * text after each {@code '\n'} may be laid out independently of the text before it.
+     */
+    boolean isLineFeedSeparated() {
+        return crCount == 0 || (crCount == crlfCount && lfCount == crlfCount);
+    }
+
+    /**
+     * @return Index of the last {@code '\n'} before {@code toIndex}, or -1 if there is no such character.
+     */
+    int lastIndexOfLineFeed(int toIndex) {
+        for (int i = toIndex - 1; i >= 0; i--) {
+            if (charAt(i) == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Copies characters in range [{@code srcBegin}, {@code srcEnd}) to {@code dst} as {@link String#getChars}.
+     */
+    void getChars(int srcBegin, int srcEnd, char[] dst, int dstBegin) {
+        System.arraycopy(chars, start + srcBegin, dst, dstBegin, srcEnd - srcBegin);
+    }
+
+    /**
+     * @return The text from {@code beginIndex} to the end, without copying. Valid only until the text is changed.
+     */
+    CharSequence tail(int beginIndex) {
+        final int tailLength = length - beginIndex;
+        return new CharSequence() {
+            @Override
+            public int length() {
+                return tailLength;
+            }
+
+            @Override
+            public char charAt(int index) {
+                return TextBuffer.this.charAt(beginIndex + index);
+            }
+
+            @Override
+            public CharSequence subSequence(int start, int end) {
+                return TextBuffer.this.subSequence(beginIndex + start, beginIndex + end);
+            }
+
+            @Override
+            public String toString() {
+                return subSequence(0, tailLength).toString();
+            }
+        };
+    }
+
+    /**
+     * @return True if the text was converted to {@link String} after the last change. For tests.
+     */
+    boolean isStringCreated() {
+        return string != null;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        return chars[start + index];
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return string != null ? string.substring(start, end) : new String(chars, this.start + start, end - start);
+    }
+
+    @Override
+    public String toString() {
+        if (string == null) {
+            string = new String(chars, start, length);
+        }
+        return string;
+    }
+}
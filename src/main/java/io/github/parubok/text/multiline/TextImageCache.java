@@ -0,0 +1,302 @@
+package io.github.parubok.text.multiline;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Insets;
+import java.awt.Transparency;
+import java.awt.font.FontRenderContext;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Objects;
+
+/**
+ * Process-wide cache of the painted texts of labels with enabled image cache (see
+ * {@link MultilineLabel#setImageCacheEnabled(boolean)}).
+ * <p>
+ * Each label has at most one image: its text painted over its background for the current size, colors, font,
+ * enabled state, scale of the graphics and other parameters of the painting. The image is in device pixels, so it is
+ * drawn without scaling. When the total size of the images exceeds the budget (see {@link #setMaxBytes(long)}),
+ * the images of the least recently painted labels are discarded. A label which image would take more than a quarter
+ * of the budget is painted without the cache. The cache references the labels weakly, so the image of a label which
+ * is no longer used is discarded after the label is garbage collected.
+ * <p>
+ * This class is thread-safe.
+ */
+public final class TextImageCache {
+
+    /**
+     * Default value for {@code maxBytes} property (32 MB).
+     *
+     * @see #setMaxBytes(long)
+     */
+    public static final long DEFAULT_MAX_BYTES = 32L * 1024 * 1024;
+
+    private static final Object ENTRY_PROPERTY_KEY = new Object();
+
+    /**
+     * Images in access order.
+     */
+    private static final LinkedHashMap<Entry, Entry> ENTRIES = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Entries of the garbage collected labels.
+     */
+    private static final ReferenceQueue<MultilineLabel> COLLECTED = new ReferenceQueue<>();
+
+    private static long maxBytes = DEFAULT_MAX_BYTES;
+    private static long bytes;
+
+    private TextImageCache() {
+    }
+
+    /**
+     * @return Max. total size of the images in bytes.
+     */
+    public static synchronized long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * @param maxBytes Max. total size of the images in bytes. Not negative. Default: {@link #DEFAULT_MAX_BYTES}.
+     */
+    public static synchronized void setMaxBytes(long maxBytes) {
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException("Value must not be negative.");
+        }
+        TextImageCache.maxBytes = maxBytes;
+        evict();
+    }
+
+    /**
+     * @return Total size of the cached images in bytes.
+     */
+    public static synchronized long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Discards all images.
+     */
+    public static synchronized void clear() {
+        ENTRIES.keySet().forEach(Entry::release);
+        ENTRIES.clear();
+        bytes = 0;
+    }
+
+    /**
+     * Discards the image of the label.
+     */
+    static synchronized void release(MultilineLabel label) {
+        final var entry = (Entry) label.getClientProperty(ENTRY_PROPERTY_KEY);
+        if (entry != null) {
+            label.putClientProperty(ENTRY_PROPERTY_KEY, null);
+            remove(entry);
+        }
+    }
+
+    private static void remove(Entry entry) {
+        if (ENTRIES.remove(entry) != null) {
+            bytes -= entry.bytes;
+        }
+        entry.release();
+    }
+
+    private static void evict() {
+        Entry collected;
+        while ((collected = (Entry) COLLECTED.poll()) != null) {
+            remove(collected);
+        }
+        final Iterator<Entry> iterator = ENTRIES.keySet().iterator();
+        while (bytes > maxBytes && iterator.hasNext()) {
+            final Entry entry = iterator.next(); // the least recently painted
+            iterator.remove();
+            bytes -= entry.bytes;
+            entry.release();
+        }
+    }
+
+    /**
+     * Paints the text of the label (over its background) from the cached image. The image is created if the label
+     * has no image for the current parameters.
+     *
+     * @return False if the image cannot be used for the label or the graphics - then the text must be painted as
+     * usual.
+     */
+    static boolean paint(MultilineLabel label, Graphics g) {
+        if (!label.isOpaque() || !(g instanceof Graphics2D) || label.getTextLayout() instanceof LazyTextLayout) {
+            return false;
+        }
+        final var g2 = (Graphics2D) g;
+        final AffineTransform transform = g2.getTransform();
+        final int allowedTypes = AffineTransform.TYPE_TRANSLATION | AffineTransform.TYPE_UNIFORM_SCALE
+                | AffineTransform.TYPE_GENERAL_SCALE;
+        final double tx = transform.getTranslateX();
+        final double ty = transform.getTranslateY();
+        if ((transform.getType() & ~allowedTypes) != 0 || tx != Math.rint(tx) || ty != Math.rint(ty)) {
+            return false; // rotation, flip or position between device pixels
+        }
+        final int width = label.getWidth();
+        final int height = label.getHeight();
+        final int imageWidth = (int) Math.ceil(width * transform.getScaleX());
+        final int imageHeight = (int) Math.ceil(height * transform.getScaleY());
+        if (imageWidth < 1 || imageHeight < 1) {
+            return false;
+        }
+        final long imageBytes = 4L * imageWidth * imageHeight;
+        final var key = new Key(label, transform.getScaleX(), transform.getScaleY());
+        BufferedImage image;
+        synchronized (TextImageCache.class) {
+            if (imageBytes > maxBytes / 4) {
+                release(label);
+                return false;
+            }
+            final var entry = (Entry) label.getClientProperty(ENTRY_PROPERTY_KEY);
+            image = entry != null && entry.key.equals(key) && ENTRIES.get(entry) != null ? entry.image : null;
+        }
+        if (image == null) {
+            image = createImage(label, g2, imageWidth, imageHeight);
+            if (label.getTextLayout() instanceof WidthTextLayout
+                    && ((WidthTextLayout) label.getTextLayout()).isLayoutPending()) {
+                release(label); // the painted text is not final
+            } else {
+                synchronized (TextImageCache.class) {
+                    release(label);
+                    final var entry = new Entry(label, key, image, imageBytes);
+                    label.putClientProperty(ENTRY_PROPERTY_KEY, entry);
+                    ENTRIES.put(entry, entry);
+                    bytes += imageBytes;
+                    evict();
+                }
+            }
+        }
+        g2.setTransform(AffineTransform.getTranslateInstance(tx, ty));
+        try {
+            g2.drawImage(image, 0, 0, null);
+        } finally {
+            g2.setTransform(transform);
+        }
+        return true;
+    }
+
+    private static BufferedImage createImage(MultilineLabel label, Graphics2D g, int imageWidth, int imageHeight) {
+        final GraphicsConfiguration gc = label.getGraphicsConfiguration();
+        final BufferedImage image = gc != null ? gc.createCompatibleImage(imageWidth, imageHeight, Transparency.OPAQUE)
+                : new BufferedImage(imageWidth, imageHeight, BufferedImage.TYPE_INT_RGB);
+        final Graphics2D imageGraphics = image.createGraphics();
+        try {
+            imageGraphics.setRenderingHints(g.getRenderingHints());
+            final AffineTransform transform = g.getTransform();
+            imageGraphics.scale(transform.getScaleX(), transform.getScaleY());
+            imageGraphics.setClip(0, 0, label.getWidth(), label.getHeight());
+            imageGraphics.setColor(label.getBackground());
+            imageGraphics.fillRect(0, 0, label.getWidth(), label.getHeight());
+            imageGraphics.setColor(label.getForeground());
+            imageGraphics.setFont(label.getFont());
+            label.getTextLayout().paintText(imageGraphics);
+        } finally {
+            imageGraphics.dispose();
+        }
+        return image;
+    }
+
+    /**
+     * Image of a label. The entry is enqueued to {@link #COLLECTED} when the label is garbage collected.
+     */
+    private static final class Entry extends WeakReference<MultilineLabel> {
+        final Key key;
+        final long bytes;
+        BufferedImage image;
+
+        Entry(MultilineLabel label, Key key, BufferedImage image, long bytes) {
+            super(label, COLLECTED);
+            this.key = key;
+            this.image = image;
+            this.bytes = bytes;
+        }
+
+        void release() {
+            if (image != null) {
+                image.flush();
+                image = null;
+            }
+        }
+    }
+
+    /**
+     * Parameters of the label which affect the painted text. The text and the text layout are identified by
+     * {@link MultilineLabel#getTextVersion()}, so the key doesn't reference them.
+     */
+    private static final class Key {
+        final int textVersion;
+        final int width;
+        final int height;
+        final double scaleX;
+        final double scaleY;
+        final Color foreground;
+        final Color background;
+        final boolean enabled;
+        final Font font;
+        final FontRenderContext frc;
+        final Insets insets;
+        final float lineSpacing;
+        final SeparatorMatcher separators;
+        final int maxLines;
+        final MeasurementMode measurementMode;
+
+        Key(MultilineLabel label, double scaleX, double scaleY) {
+            this.textVersion = label.getTextVersion();
+            this.width = label.getWidth();
+            this.height = label.getHeight();
+            this.scaleX = scaleX;
+            this.scaleY = scaleY;
+            this.foreground = label.getForeground();
+            this.background = label.getBackground();
+            this.enabled = label.isEnabled();
+            this.font = label.getFont();
+            this.frc = label.getFontMetrics(font).getFontRenderContext();
+            this.insets = label.getInsets();
+            this.lineSpacing = label.getLineSpacing();
+            this.separators = label.getSeparatorMatcher();
+            this.maxLines = label.getMaxLines();
+            this.measurementMode = label.getMeasurementMode();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return textVersion == other.textVersion
+                    && width == other.width
+                    && height == other.height
+                    && Double.compare(scaleX, other.scaleX) == 0
+                    && Double.compare(scaleY, other.scaleY) == 0
+                    && enabled == other.enabled
+                    && Float.compare(lineSpacing, other.lineSpacing) == 0
+                    && maxLines == other.maxLines
+                    && measurementMode == other.measurementMode
+                    && separators == other.separators
+                    && Objects.equals(foreground, other.foreground)
+                    && Objects.equals(background, other.background)
+                    && Objects.equals(font, other.font)
+                    && frc.equals(other.frc)
+                    && insets.equals(other.insets);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(textVersion, width, height, scaleX, scaleY, font);
+        }
+    }
+}
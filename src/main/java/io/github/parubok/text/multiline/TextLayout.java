@@ -20,6 +20,15 @@ public interface TextLayout {
      */
     Dimension calculatePreferredSize();
 
+    /**
+     * @param width Width of the label (incl. insets). Positive.
+     * @return Preferred height of the label (incl. insets) if it has the specified width.
+     * @see MultilineLabel#getPreferredHeight(int)
+     */
+    default int calculatePreferredHeight(int width) {
+        return calculatePreferredSize().height;
+    }
+
     /**
      * Called from {@link MultilineLabel#setBounds(int, int, int, int)} before applying the new bounds.
      */
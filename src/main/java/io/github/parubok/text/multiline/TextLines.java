@@ -0,0 +1,491 @@
+package io.github.parubok.text.multiline;
+
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Result of breaking a text into lines for a specific width limit.
+ * <p>
+ * Each line is stored as a range of the text (start and end indexes) and its width in parallel primitive arrays, so
+ * breaking the text doesn't create a string per line. The arrays allow to add lines at the end and to remove lines
+ * at both ends in amortized constant time, so the lines may be updated when text is appended to the label (see
+ * {@link MultilineLabel#appendText(CharSequence)}). The object also caches the glyph vectors of the painted lines
+ * (see {@link #getGlyphVector}). Not thread-safe.
+ */
+final class TextLines implements LineTable {
+
+    static final TextLines EMPTY = new TextLines(0, 0, 0);
+
+    /**
+     * Approximate number of characters in a part of the text broken by a single task.
+     *
+     * @see #breakText(CharSequence, LineBreakIndex, TextMeasurer, int, int, SeparatorMatcher, ForkJoinPool, int)
+     */
+    static final int PARALLEL_PART_LENGTH = 16 * 1024;
+
+    private static final int MIN_CAPACITY = 16;
+
+    /**
+     * Painted instead of the last line when the text has more lines than the max. number of lines.
+     */
+    static final String ELLIPSIS = "...";
+
+    /**
+     * Max. value of {@link #textStart} before the stored indexes are rebased, so they don't overflow.
+     */
+    private static final int MAX_TEXT_START = Integer.MAX_VALUE / 2;
+
+    /**
+     * @param text Text to break. Not null.
+     * @param lineBreaks Line separators of the text. Not null.
+     * @param measurer Measurer of the text. Not null.
+     * @param textWidthLimit Positive width limit of the text in pixels (excl. insets).
+     * @param maxLines Maximum number of lines. The last line is replaced with ellipsis if the text has more lines.
+     * @param separators Characters where the text may be broken.
+     */
+    static TextLines breakText(CharSequence text, LineBreakIndex lineBreaks, TextMeasurer measurer, int textWidthLimit,
+                               int maxLines, SeparatorMatcher separators) {
+        assert text != null;
+        assert measurer != null;
+        assert textWidthLimit > 0;
+
+        if (text.length() == 0) {
+            return EMPTY;
+        }
+        final var lines = new TextLines(MIN_CAPACITY, 0, 0);
+        lines.appendText(text, 0, lineBreaks, measurer, textWidthLimit, maxLines, separators);
+        return lines;
+    }
+
+    /**
+     * Same as {@link #breakText(CharSequence, LineBreakIndex, TextMeasurer, int, int, SeparatorMatcher)}, but breaks
+     * parts of the text in parallel. The text is divided into parts of about {@code partLength} characters at line
+     * separators, since lines of a paragraph don't depend on the text before and after it. The text is broken
+     * sequentially if it is short or contains different line separators.
+     *
+     * @param measurer Thread-safe measurer of the text. Not null.
+     * @param pool Pool to break the parts. Not null.
+     */
+    static TextLines breakText(CharSequence text, LineBreakIndex lineBreaks, TextMeasurer measurer, int textWidthLimit,
+                               int maxLines, SeparatorMatcher separators, ForkJoinPool pool, int partLength) {
+        final int separator = lineBreaks.getSingleSeparator();
+        if (separator == -1 || text.length() < 2 * partLength) {
+            return breakText(text, lineBreaks, measurer, textWidthLimit, maxLines, separators);
+        }
+        final int separatorLength = LineBreakIndex.LINE_SEPARATORS.get(separator).length();
+        final List<ForkJoinTask<TextLines>> tasks = new ArrayList<>();
+        final List<Integer> partStarts = new ArrayList<>();
+        int start = 0;
+        while (true) {
+            final int end = start + partLength < text.length() ? lineBreaks.indexOf(separator, start + partLength) : -1;
+            final String part = text.subSequence(start, end == -1 ? text.length() : end).toString();
+            tasks.add(pool.submit(() -> breakPart(part, measurer, textWidthLimit, separators)));
+            partStarts.add(start);
+            if (end == -1) {
+                break;
+            }
+            start = end + separatorLength;
+        }
+        final var lines = new TextLines(MIN_CAPACITY, 0, 0);
+        for (int i = 0; i < tasks.size(); i++) {
+            final TextLines part = tasks.get(i).join();
+            final int partStart = partStarts.get(i);
+            lines.restrictWidthLimits(part.minWidthLimit, part.maxWidthLimit);
+            for (int j = 0; j < part.lineCount; j++) {
+                final int k = part.first + j;
+                final int lineStart = partStart + part.starts[k];
+                if (lines.lineCount + 1 == maxLines && (j + 1 < part.lineCount || i + 1 < tasks.size())) {
+                    lines.addLine(lineStart, lineStart, Math.round(measurer.getWidth(ELLIPSIS, 0, ELLIPSIS.length())),
+                            part.paragraphStarts[k]);
+                    lines.truncated = true;
+                    tasks.subList(i + 1, tasks.size()).forEach(task -> task.cancel(false));
+                    return lines;
+                }
+                lines.addLine(lineStart, partStart + part.ends[k], part.widths[k], part.paragraphStarts[k]);
+            }
+        }
+        return lines;
+    }
+
+    private static TextLines breakPart(String part, TextMeasurer measurer, int textWidthLimit,
+                                       SeparatorMatcher separators) {
+        return breakParagraphs(part, 0, part.length(), measurer, textWidthLimit, separators);
+    }
+
+    /**
+     * Breaks range [{@code start}, {@code end}) of the text, which consists of whole paragraphs, without the max.
+     * number of lines. Unlike {@link #breakText}, an empty range is an empty paragraph, i.e. a single empty line.
+     * The indexes of the lines are in the whole text.
+     */
+    static TextLines breakParagraphs(CharSequence text, int start, int end, TextMeasurer measurer,
+                                     int textWidthLimit, SeparatorMatcher separators) {
+        final var lines = new TextLines(MIN_CAPACITY, 0, 0);
+        if (start == end) {
+            lines.addLine(start, start, 0, true); // empty paragraph
+        } else {
+            final CharSequence paragraphs = text.subSequence(start, end);
+            lines.appendText(paragraphs, start, LineBreakIndex.of(paragraphs), measurer, textWidthLimit,
+                    Integer.MAX_VALUE, separators);
+        }
+        return lines;
+    }
+
+    /**
+     * Cheap estimate of the lines, without the strings to paint. The estimate assumes that all characters have the
+     * width of {@code 'n'} and ignores word boundaries.
+     *
+     * @param text Text to break. Not null.
+     * @param lineBreaks Line separators of the text. Not null.
+     * @param textWidthLimit Positive width limit of the text in pixels (excl. insets).
+     * @param maxLines Maximum number of lines.
+     */
+    static TextLines estimate(CharSequence text, LineBreakIndex lineBreaks, FontMetrics fm, int textWidthLimit,
+                              int maxLines) {
+        if (text.length() == 0) {
+            return EMPTY;
+        }
+        final long textWidth = (long) text.length() * fm.charWidth('n');
+        final long lineCount = 1L + lineBreaks.getSeparatorCount() + textWidth / textWidthLimit;
+        final var lines = new TextLines(0, (int) Math.min(lineCount, maxLines), (int) Math.min(textWidth,
+                textWidthLimit));
+        lines.minWidthLimit = textWidthLimit;
+        lines.maxWidthLimit = textWidthLimit; // empty range - not valid for any width
+        return lines;
+    }
+
+    /**
+     * Start index (inclusive) of each line. The lines are stored at indexes [{@link #first}, {@link #first} +
+     * {@link #lineCount}). The index of a line start in the text is {@code starts[i] - textStart}. Empty for an
+     * estimate.
+     */
+    private int[] starts;
+
+    /**
+     * End index (exclusive) of each line, in the same coordinates as {@link #starts}. Parallel to {@link #starts}.
+     * Equals to the start for the ellipsis line (see {@link #isEllipsis(int)}).
+     */
+    private int[] ends;
+
+    /**
+     * Widths of the lines in pixels. Parallel to {@link #starts}.
+     */
+    private int[] widths;
+
+    /**
+     * True for a line which starts after {@code '\n'} (or at the beginning of the text). Parallel to {@link #starts}.
+     */
+    private boolean[] paragraphStarts;
+
+    /**
+     * Offset of {@link #starts} and {@link #ends} relative to the text. Grows when the first lines of the text are
+     * removed (see {@link #removeText(int)}), so the remaining lines are not updated.
+     */
+    private int textStart;
+
+    private int first;
+    private int lineCount;
+    private int width;
+    private boolean truncated;
+
+    /**
+     * Range of the text width limits for which the lines are the same: from {@code minWidthLimit} (inclusive) to
+     * {@code maxWidthLimit} (exclusive). See {@link PrefixWidthMeasurer#getMinWidthLimit()}.
+     */
+    private int minWidthLimit = 1;
+    private int maxWidthLimit = Integer.MAX_VALUE;
+
+    /**
+     * Number of lines per width. Created when the first line is removed, so the width may be updated without
+     * checking all lines.
+     */
+    private TreeMap<Integer, Integer> widthCounts;
+
+    /**
+     * Glyph vectors of the painted lines, by index in {@link #starts}. Created on the first paint.
+     */
+    private GlyphVectorCache glyphVectors;
+
+    private TextLines(int capacity, int lineCount, int width) {
+        this.starts = new int[capacity];
+        this.ends = new int[capacity];
+        this.widths = new int[capacity];
+        this.paragraphStarts = new boolean[capacity];
+        this.lineCount = lineCount;
+        this.width = width;
+    }
+
+    /**
+     * Breaks the text into lines and adds them after the existing lines. The text must start at the beginning of
+     * a line.
+     *
+     * @param text Text to break. It may be the end part of the text which the lines belong to. If it is empty and
+     * is not the whole text, it is the empty last paragraph after a line separator, i.e. a single empty line.
+     * @param textIndex Index of the first character of {@code text} in the text which the lines belong to.
+     */
+    void appendText(CharSequence text, int textIndex, LineBreakIndex lineBreaks, TextMeasurer measurer,
+                    int textWidthLimit, int maxLines, SeparatorMatcher separators) {
+        assert !isEstimate();
+        assert !truncated;
+
+        if (text.length() == 0) {
+            if (textIndex > 0 && lineCount < maxLines) {
+                addLine(textStart + textIndex, textStart + textIndex, 0, true); // empty last paragraph
+            }
+            return;
+        }
+        if (textStart > MAX_TEXT_START) {
+            rebase();
+        }
+        final int offset = textStart + textIndex;
+        final var prefixMeasurer = new PrefixWidthMeasurer(measurer, text);
+        int startIndex = 0;
+        int nextLineStartIndex;
+        do {
+            final long line = WidthTextLayout.breakLine(text, lineBreaks, startIndex, textWidthLimit, separators,
+                    prefixMeasurer);
+            nextLineStartIndex = NextLine.getNextLineStartIndex(line);
+            final boolean paragraphStart = startIndex == 0 || text.charAt(startIndex - 1) == '\n';
+            if (nextLineStartIndex != -1 && lineCount + 1 == maxLines) {
+                truncated = true;
+                addLine(offset + startIndex, offset + startIndex,
+                        Math.round(measurer.getWidth(ELLIPSIS, 0, ELLIPSIS.length())), paragraphStart);
+                break;
+            }
+            final int endIndex = NextLine.getLineEndIndex(line) + 1;
+            addLine(offset + startIndex, offset + endIndex, Math.round(measurer.getWidth(text, startIndex, endIndex)),
+                    paragraphStart);
+            startIndex = nextLineStartIndex;
+        } while (nextLineStartIndex != -1);
+        restrictWidthLimits(prefixMeasurer.getMinWidthLimit(), prefixMeasurer.getMaxWidthLimit());
+    }
+
+    /**
+     * Must be called after the first {@code charCount} characters were removed from the text, together with their
+     * lines (see {@link #removeFirstParagraphs(int)}).
+     */
+    void removeText(int charCount) {
+        textStart += charCount;
+    }
+
+    private void rebase() {
+        for (int i = first; i < first + lineCount; i++) {
+            starts[i] -= textStart;
+            ends[i] -= textStart;
+        }
+        textStart = 0;
+    }
+
+    private void restrictWidthLimits(int min, int max) {
+        minWidthLimit = Math.max(minWidthLimit, min);
+        maxWidthLimit = Math.min(maxWidthLimit, max);
+    }
+
+    private void addLine(int start, int end, int lineWidth, boolean paragraphStart) {
+        if (first + lineCount == starts.length) {
+            final int capacity = Math.max(MIN_CAPACITY, 2 * lineCount);
+            starts = Arrays.copyOfRange(starts, first, first + capacity);
+            ends = Arrays.copyOfRange(ends, first, first + capacity);
+            widths = Arrays.copyOfRange(widths, first, first + capacity);
+            paragraphStarts = Arrays.copyOfRange(paragraphStarts, first, first + capacity);
+            if (glyphVectors != null) {
+                glyphVectors.moveToStart(first);
+            }
+            first = 0;
+        }
+        final int i = first + lineCount;
+        starts[i] = start;
+        ends[i] = end;
+        widths[i] = lineWidth;
+        paragraphStarts[i] = paragraphStart;
+        lineCount++;
+        width = Math.max(width, lineWidth);
+        if (widthCounts != null) {
+            widthCounts.merge(lineWidth, 1, Integer::sum);
+        }
+    }
+
+    /**
+     * Removes the lines of the first {@code count} paragraphs (see {@link #isParagraphStart(int)}).
+     */
+    void removeFirstParagraphs(int count) {
+        for (int i = 0; i < count && lineCount > 0; i++) {
+            do {
+                removeWidth(first);
+                clearGlyphVector(first);
+                first++;
+                lineCount--;
+            } while (lineCount > 0 && !paragraphStarts[first]);
+        }
+        truncated = truncated && lineCount > 0;
+    }
+
+    /**
+     * Removes the lines of the last paragraph (see {@link #isParagraphStart(int)}).
+     */
+    void removeLastParagraph() {
+        while (lineCount > 0) {
+            final int i = first + lineCount - 1;
+            removeWidth(i);
+            clearGlyphVector(i);
+            lineCount--;
+            if (paragraphStarts[i]) {
+                break;
+            }
+        }
+        truncated = false;
+    }
+
+    private void removeWidth(int i) {
+        if (widthCounts == null) {
+            widthCounts = new TreeMap<>();
+            for (int j = first; j < first + lineCount; j++) {
+                widthCounts.merge(widths[j], 1, Integer::sum);
+            }
+        }
+        widthCounts.computeIfPresent(widths[i], (w, count) -> count > 1 ? count - 1 : null);
+        width = widthCounts.isEmpty() ? 0 : widthCounts.lastKey();
+    }
+
+    private void clearGlyphVector(int i) {
+        if (glyphVectors != null) {
+            glyphVectors.clear(i);
+        }
+    }
+
+    /**
+     * @param index Index of the line.
+     * @param text The text which the lines belong to.
+     * @return Glyph vector to paint the line, or null if the line must be painted as string (see
+     * {@link GlyphVectorCache}).
+     */
+    GlyphVector getGlyphVector(int index, CharSequence text, Font font, FontRenderContext frc) {
+        if (glyphVectors == null) {
+            glyphVectors = new GlyphVectorCache();
+        }
+        return isEllipsis(index) ? glyphVectors.get(first + index, ELLIPSIS, 0, ELLIPSIS.length(), font, frc)
+                : glyphVectors.get(first + index, text, getLineStart(index), getLineEnd(index), font, frc);
+    }
+
+    /**
+     * @param index Index of the line.
+     * @param text The text which the lines belong to.
+     * @return String to paint for the line.
+     */
+    String getLine(int index, CharSequence text) {
+        return isEllipsis(index) ? ELLIPSIS : text.subSequence(getLineStart(index), getLineEnd(index)).toString();
+    }
+
+    /**
+     * @param index Index of the line.
+     * @return Index of the first character of the line in the text.
+     */
+    @Override
+    public int getLineStart(int index) {
+        return starts[first + index] - textStart;
+    }
+
+    /**
+     * @param index Index of the line.
+     * @return Index after the last painted character of the line in the text. Whitespace where the line was broken
+     * is not included. Equals to the line start for the ellipsis line.
+     */
+    @Override
+    public int getLineEnd(int index) {
+        return ends[first + index] - textStart;
+    }
+
+    /**
+     * @param textIndex Index in the text which the lines belong to.
+     * @return Index of the last line which starts at or before the text index (the starts of the lines are
+     * increasing). 0 if there is no such line.
+     */
+    @Override
+    public int getLineAt(int textIndex) {
+        final int i = Arrays.binarySearch(starts, first, first + lineCount, textIndex + textStart);
+        return Math.max(0, (i < 0 ? -i - 2 : i) - first); // -i - 2: the line before the insertion point
+    }
+
+    /**
+     * @param index Index of the line.
+     * @return True if the line is painted as ellipsis since the text has more lines than the max. number of lines.
+     */
+    boolean isEllipsis(int index) {
+        return truncated && index == lineCount - 1;
+    }
+
+    /**
+     * @param index Index of the line.
+     * @return True if the line starts after {@code '\n'} or at the beginning of the text.
+     */
+    boolean isParagraphStart(int index) {
+        return paragraphStarts[first + index];
+    }
+
+    @Override
+    public int getLineCount() {
+        return lineCount;
+    }
+
+    /**
+     * @param textWidthLimit Width limit of the text in pixels (excl. insets).
+     * @return True if breaking the text for this width limit (with the same other parameters) would produce the same
+     * lines. Lines updated after {@link MultilineLabel#appendText(CharSequence)} may report a narrower range.
+     */
+    boolean isValidFor(int textWidthLimit) {
+        return textWidthLimit >= minWidthLimit && textWidthLimit < maxWidthLimit;
+    }
+
+    int getMinWidthLimit() {
+        return minWidthLimit;
+    }
+
+    int getMaxWidthLimit() {
+        return maxWidthLimit;
+    }
+
+    /**
+     * @return True if this object is an estimate (see {@link #estimate}) and has no lines to paint.
+     */
+    boolean isEstimate() {
+        return starts.length == 0 && lineCount > 0;
+    }
+
+    /**
+     * @return True if the text has more lines than the max. number of lines, so the last line is ellipsis.
+     */
+    @Override
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    /**
+     * @return Width of the widest line in pixels.
+     */
+    int getWidth() {
+        return width;
+    }
+
+    /**
+     * @return Preferred height of the lines in pixels (excl. insets).
+     */
+    int getHeight(FontMetrics fm, float lineSpacing) {
+        return lineCount == 0 ? 0 : AbstractTextLayout.getTextPreferredHeight(lineCount, fm, lineSpacing);
+    }
+
+    @Override
+    public String toString() {
+        return "TextLines{" +
+                "lineCount=" + lineCount +
+                ", estimate=" + isEstimate() +
+                ", width=" + width +
+                '}';
+    }
+}
@@ -0,0 +1,59 @@
+package io.github.parubok.text.multiline;
+
+import javax.swing.JComponent;
+import java.awt.FontMetrics;
+import java.awt.font.TextAttribute;
+
+/**
+ * Measures width of text in pixels.
+ */
+interface TextMeasurer {
+
+    /**
+     * @param c Component to measure the text for. If it is {@link MultilineLabel}, its measurement mode is used.
+     * May be null.
+     * @param fm Not null.
+     */
+    static TextMeasurer of(JComponent c, FontMetrics fm) {
+        final var mode = c instanceof MultilineLabel ? ((MultilineLabel) c).getMeasurementMode()
+                : MeasurementMode.EXACT;
+        return of(c, fm, mode);
+    }
+
+    static TextMeasurer of(JComponent c, FontMetrics fm, MeasurementMode mode) {
+        switch (mode) {
+            case WORD_CACHE:
+                return WordWidthCache.getMeasurer(c, fm);
+            case ADVANCE_CACHE:
+                return AdvanceWidthCache.getMeasurer(c, fm);
+            case EXACT:
+            default:
+                return new ExactTextMeasurer(c, fm);
+        }
+    }
+
+    /**
+     * Returns measurer which doesn't access the component, so it may be used outside EDT (in parallel). The results
+     * are the same as of {@link #of(JComponent, FontMetrics, MeasurementMode)}.
+     *
+     * @param c Component to measure the text for. May be null.
+     * @return Thread-safe measurer, or null if the measurement depends on the component properties.
+     */
+    static TextMeasurer detached(JComponent c, FontMetrics fm, MeasurementMode mode) {
+        if (c != null && c.getClientProperty(TextAttribute.NUMERIC_SHAPING) != null) {
+            return null;
+        }
+        return of(null, fm, mode);
+    }
+
+    /**
+     * @return Width of {@code text.subSequence(start, end)}.
+     */
+    float getWidth(CharSequence text, int start, int end);
+
+    /**
+     * @return True if the width of a simple text (see {@link MultilineUtils#isSimpleChar(char)}) is the sum of the
+     * widths of its parts (up to rounding errors).
+     */
+    boolean isAdditive();
+}
@@ -0,0 +1,278 @@
+package io.github.parubok.text.multiline;
+
+import javax.swing.AbstractAction;
+import javax.swing.ActionMap;
+import javax.swing.InputMap;
+import javax.swing.JComponent;
+import javax.swing.KeyStroke;
+import javax.swing.SwingUtilities;
+import javax.swing.UIManager;
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.GraphicsEnvironment;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.SystemColor;
+import java.awt.Toolkit;
+import java.awt.event.ActionEvent;
+import java.awt.event.InputEvent;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.util.List;
+
+/**
+ * Selected range of the text of a label (see {@link MultilineLabel#setSelectionEnabled(boolean)}).
+ * <p>
+ * The selection is mapped to the lines which the label layout calculated for painting (see {@link LineTable}), so
+ * changing the selection doesn't break the text into lines. When the selection changes, only the lines of the
+ * changed part of the selection are repainted.
+ */
+final class TextSelection {
+
+    private static final String SELECT_ALL = "selectAll";
+    private static final String COPY = "copySelection";
+    private static final String LEFT = "selectionLeft";
+    private static final String RIGHT = "selectionRight";
+    private static final String UP = "selectionUp";
+    private static final String DOWN = "selectionDown";
+    private static final List<String> ACTIONS = List.of(SELECT_ALL, COPY, LEFT, RIGHT, UP, DOWN);
+
+    private final MultilineLabel label;
+
+    /**
+     * Fixed end of the selection, e.g. where the mouse was pressed.
+     */
+    private int anchor;
+
+    /**
+     * Moving end of the selection, e.g. where the mouse is dragged. May be less than the anchor.
+     */
+    private int caret;
+
+    private final MouseAdapter mouseHandler = new MouseAdapter() {
+        @Override
+        public void mousePressed(MouseEvent e) {
+            if (!SwingUtilities.isLeftMouseButton(e)) {
+                return;
+            }
+            label.requestFocusInWindow();
+            final int offset = label.viewToOffset(e.getPoint());
+            if (offset != -1) {
+                select(e.isShiftDown() ? anchor : offset, offset);
+            }
+        }
+
+        @Override
+        public void mouseDragged(MouseEvent e) {
+            if (!SwingUtilities.isLeftMouseButton(e)) {
+                return;
+            }
+            final int offset = label.viewToOffset(e.getPoint());
+            if (offset != -1) {
+                select(anchor, offset);
+                label.scrollRectToVisible(new Rectangle(e.getX(), e.getY(), 1, 1));
+            }
+        }
+    };
+
+    TextSelection(MultilineLabel label) {
+        this.label = label;
+    }
+
+    int getStart() {
+        return Math.min(anchor, caret);
+    }
+
+    int getEnd() {
+        return Math.max(anchor, caret);
+    }
+
+    boolean isEmpty() {
+        return anchor == caret;
+    }
+
+    /**
+     * Discards the selection without repainting, e.g. when the text is changed.
+     */
+    void reset() {
+        anchor = 0;
+        caret = 0;
+    }
+
+    /**
+     * Changes the selection and repaints the lines of the changed part of the selection.
+     *
+     * @param anchor Fixed end of the selection. From 0 to the text length (incl.).
+     * @param caret Moving end of the selection. From 0 to the text length (incl.).
+     */
+    void select(int anchor, int caret) {
+        final int oldStart = getStart();
+        final int oldEnd = getEnd();
+        final boolean wasEmpty = isEmpty();
+        this.anchor = anchor;
+        this.caret = caret;
+        if (wasEmpty) {
+            repaint(getStart(), getEnd());
+        } else if (isEmpty()) {
+            repaint(oldStart, oldEnd);
+        } else {
+            repaint(Math.min(oldStart, getStart()), Math.max(oldStart, getStart()));
+            repaint(Math.min(oldEnd, getEnd()), Math.max(oldEnd, getEnd()));
+        }
+    }
+
+    /**
+     * Repaints the lines of the range of the text. Nothing if the range is empty.
+     */
+    private void repaint(int start, int end) {
+        if (start == end) {
+            return;
+        }
+        final LineTable lines = label.getLineTable();
+        final int lineCount = lines.getLineCount();
+        if (lineCount == 0) {
+            label.repaint();
+            return;
+        }
+        final int firstLine = Math.min(lines.getLineAt(start), lineCount - 1);
+        final int lastLine = Math.min(lines.getLineAt(end), lineCount - 1);
+        final int yIncrement = label.getLineHeightIncrement();
+        label.repaint(0, label.getInsets().top + firstLine * yIncrement, label.getWidth(),
+                (lastLine - firstLine + 1) * yIncrement);
+    }
+
+    /**
+     * Paints the background of the selected text of the lines which intersect the clip of the graphics.
+     */
+    void paint(Graphics g) {
+        if (isEmpty()) {
+            return;
+        }
+        final LineTable lines = label.getLineTable();
+        final int lineCount = lines.getLineCount();
+        if (lineCount == 0) {
+            return;
+        }
+        final int start = getStart();
+        final int end = getEnd();
+        final var insets = label.getInsets();
+        final int yIncrement = label.getLineHeightIncrement();
+        final var clip = g.getClipBounds();
+        final int firstLine = Math.max(lines.getLineAt(start),
+                clip == null ? 0 : MultilineUtils.getLineAt(clip.y, insets.top, yIncrement));
+        final int lastLine = Math.min(Math.min(lines.getLineAt(end), lineCount - 1),
+                clip == null ? lineCount - 1 : MultilineUtils.getLineAt(clip.y + clip.height - 1, insets.top,
+                        yIncrement));
+        // the separator after the line is selected too
+        final int separatorWidth = label.getFontMetrics(label.getFont()).charWidth(' ');
+        g.setColor(getColor());
+        for (int i = firstLine; i <= lastLine; i++) {
+            final int lineStart = lines.getLineStart(i);
+            final int lineEnd = lines.getLineEnd(i);
+            final int x1 = Math.round(label.getTextWidth(lineStart, Math.max(start, lineStart)));
+            int x2 = Math.round(label.getTextWidth(lineStart, Math.max(lineStart, Math.min(end, lineEnd))));
+            if (end > lineEnd && i + 1 < lineCount) {
+                x2 += separatorWidth;
+            }
+            if (x2 > x1) {
+                g.fillRect(insets.left + x1, insets.top + i * yIncrement, x2 - x1, yIncrement);
+            }
+        }
+    }
+
+    private Color getColor() {
+        if (label.getSelectionColor() != null) {
+            return label.getSelectionColor();
+        }
+        final Color color = UIManager.getColor("TextArea.selectionBackground");
+        return color != null ? color : SystemColor.textHighlight;
+    }
+
+    /**
+     * @return Point at the top of the line of the caret.
+     */
+    private Point getCaretPoint() {
+        final LineTable lines = label.getLineTable();
+        final int line = Math.min(lines.getLineAt(caret), lines.getLineCount() - 1);
+        final int lineStart = lines.getLineStart(line);
+        final int x = Math.round(label.getTextWidth(lineStart, Math.max(lineStart, Math.min(caret,
+                lines.getLineEnd(line)))));
+        return new Point(label.getInsets().left + x, label.getInsets().top + line * label.getLineHeightIncrement());
+    }
+
+    /**
+     * Moves the caret by a character or a line, keeping the anchor.
+     */
+    private void moveCaret(String direction) {
+        if (label.getDisplayedLineCount() == 0) {
+            return;
+        }
+        final int offset;
+        switch (direction) {
+            case LEFT:
+                offset = caret > 0 ? caret - Character.charCount(Character.codePointBefore(label.getTextChars(), caret))
+                        : 0;
+                break;
+            case RIGHT:
+                offset = caret < label.getTextLength()
+                        ? caret + Character.charCount(Character.codePointAt(label.getTextChars(), caret)) : caret;
+                break;
+            default:
+                final Point p = getCaretPoint();
+                p.y += direction.equals(UP) ? -label.getLineHeightIncrement() : label.getLineHeightIncrement();
+                offset = label.viewToOffset(p);
+                label.scrollRectToVisible(new Rectangle(p.x, p.y, 1, label.getLineHeightIncrement()));
+                break;
+        }
+        select(anchor, offset);
+    }
+
+    /**
+     * Adds the mouse listeners and the key bindings which change the selection.
+     */
+    void install() {
+        label.addMouseListener(mouseHandler);
+        label.addMouseMotionListener(mouseHandler);
+        final int shortcut = GraphicsEnvironment.isHeadless() ? InputEvent.CTRL_DOWN_MASK
+                : Toolkit.getDefaultToolkit().getMenuShortcutKeyMaskEx();
+        final InputMap inputMap = label.getInputMap(JComponent.WHEN_FOCUSED);
+        inputMap.put(KeyStroke.getKeyStroke(KeyEvent.VK_A, shortcut), SELECT_ALL);
+        inputMap.put(KeyStroke.getKeyStroke(KeyEvent.VK_C, shortcut), COPY);
+        inputMap.put(KeyStroke.getKeyStroke(KeyEvent.VK_LEFT, InputEvent.SHIFT_DOWN_MASK), LEFT);
+        inputMap.put(KeyStroke.getKeyStroke(KeyEvent.VK_RIGHT, InputEvent.SHIFT_DOWN_MASK), RIGHT);
+        inputMap.put(KeyStroke.getKeyStroke(KeyEvent.VK_UP, InputEvent.SHIFT_DOWN_MASK), UP);
+        inputMap.put(KeyStroke.getKeyStroke(KeyEvent.VK_DOWN, InputEvent.SHIFT_DOWN_MASK), DOWN);
+        final ActionMap actionMap = label.getActionMap();
+        actionMap.put(SELECT_ALL, action(label::selectAll));
+        actionMap.put(COPY, action(label::copySelection));
+        for (String direction : new String[]{LEFT, RIGHT, UP, DOWN}) {
+            actionMap.put(direction, action(() -> moveCaret(direction)));
+        }
+    }
+
+    /**
+     * Removes the mouse listeners and the key bindings added by {@link #install()}.
+     */
+    void uninstall() {
+        label.removeMouseListener(mouseHandler);
+        label.removeMouseMotionListener(mouseHandler);
+        final InputMap inputMap = label.getInputMap(JComponent.WHEN_FOCUSED);
+        for (KeyStroke keyStroke : inputMap.keys() == null ? new KeyStroke[0] : inputMap.keys()) {
+            final Object key = inputMap.get(keyStroke);
+            if (ACTIONS.contains(key)) {
+                inputMap.remove(keyStroke);
+                label.getActionMap().remove(key);
+            }
+        }
+    }
+
+    private static AbstractAction action(Runnable runnable) {
+        return new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                runnable.run();
+            }
+        };
+    }
+}
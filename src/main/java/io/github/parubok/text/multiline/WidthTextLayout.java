@@ -4,13 +4,20 @@ import javax.swing.JComponent;
 import javax.swing.SwingUtilities;
 import java.awt.Color;
 import java.awt.Dimension;
+import java.awt.Font;
 import java.awt.FontMetrics;
 import java.awt.Graphics;
 import java.awt.Insets;
-import java.util.List;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
-
-import static javax.swing.plaf.basic.BasicGraphicsUtils.getStringWidth;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * Dynamically calculates line breaks based on the current label width.
@@ -19,17 +26,14 @@ import static javax.swing.plaf.basic.BasicGraphicsUtils.getStringWidth;
  */
 final class WidthTextLayout extends AbstractTextLayout {
 
-    // order is important
-    private static final List<String> LINE_SEPARATORS = List.of("\r\n", "\n", "\r");
-
     static void paintText(JComponent c, Graphics g, String text, Insets insets, int wLimit, boolean enabled,
-                          Color background, float lineSpacing, Set<Character> separators) {
+                          Color background, float lineSpacing, SeparatorMatcher separators) {
         paintText2(c, g, text, insets, wLimit, enabled, background, lineSpacing,
                 maxLinesForComponent(c), separators);
     }
 
     private static void paintText2(JComponent c, Graphics g, String text, Insets insets, int wLimit, boolean enabled,
-                                   Color background, float lineSpacing, int maxLines, Set<Character> separators) {
+                                   Color background, float lineSpacing, int maxLines, SeparatorMatcher separators) {
         if (text.isEmpty()) {
             return;
         }
@@ -39,26 +43,64 @@ final class WidthTextLayout extends AbstractTextLayout {
         }
         final var fm = g.getFontMetrics();
         final int x = insets.left;
-        int y = insets.top + fm.getAscent();
         final int yIncrement = MultilineUtils.getHeightIncrement(fm, lineSpacing);
-        NextLine nextLine;
-        int index = 0;
-        int lineCount = 0;
-        do {
-            nextLine = getNextLine(c, text, index, fm, wLimitText, separators);
-            String lineStr = nextLine.stringToPaint(text, ++lineCount, maxLines);
+        final var clip = g.getClipBounds();
+        final int firstLine = MultilineUtils.getFirstVisibleLine(clip, insets.top, fm, yIncrement);
+        final int lastLine = MultilineUtils.getLastVisibleLine(clip, insets.top, fm, yIncrement);
+        final var lineBreaks = LineBreakIndex.of(text);
+        final var measurer = new PrefixWidthMeasurer(TextMeasurer.of(c, fm), text);
+        final GlyphPainter painter = GlyphPainter.of(c, g);
+        final GlyphVectorCache glyphVectors = painter != null ? new GlyphVectorCache() : null;
+        try {
+            int index = 0;
+            int lineCount = 0;
+            int nextLineStartIndex;
+            do {
+                final long line = breakLine(text, lineBreaks, index, wLimitText, separators, measurer);
+                nextLineStartIndex = NextLine.getNextLineStartIndex(line);
+                if (lineCount >= firstLine) {
+                    final boolean ellipsis = nextLineStartIndex != -1 && lineCount + 1 == maxLines;
+                    final String lineText = ellipsis ? TextLines.ELLIPSIS : text;
+                    final int start = ellipsis ? 0 : index;
+                    final int end = ellipsis ? lineText.length() : NextLine.getLineEndIndex(line) + 1;
+                    final GlyphVector glyphVector = glyphVectors != null
+                            ? glyphVectors.create(lineText, start, end, painter.getFont(),
+                            painter.getFontRenderContext()) : null;
+                    paintLine(c, g, painter, glyphVector, glyphVector != null ? null : lineText.substring(start, end),
+                            enabled, background, x, insets.top + fm.getAscent() + yIncrement * lineCount);
+                }
+                lineCount++;
+                index = nextLineStartIndex;
+            } while (lineCount <= lastLine && nextLineStartIndex != -1 && lineCount < maxLines);
+        } finally {
+            if (painter != null) {
+                painter.dispose();
+            }
+        }
+    }
+
+    /**
+     * @param painter Painter of the glyph vectors. May be null if the glyph vector is null.
+     * @param glyphVector Glyph vector of the line. If null, the line is painted as string.
+     * @param line String to paint if there is no glyph vector.
+     */
+    static void paintLine(JComponent c, Graphics g, GlyphPainter painter, GlyphVector glyphVector,
+                          String line, boolean enabled, Color background, int x, int y) {
+        if (glyphVector != null) {
             if (enabled) {
-                drawString(c, g, lineStr, x, y);
+                painter.draw(glyphVector, x, y);
             } else {
-                drawStringInDisabledStyle(c, lineStr, g, background, x, y);
+                painter.drawInDisabledStyle(glyphVector, background, x, y);
             }
-            y += yIncrement;
-            index = nextLine.nextLineStartIndex;
-        } while (nextLine.hasMoreLines(lineCount, maxLines));
+        } else if (enabled) {
+            drawString(c, g, line, x, y);
+        } else {
+            drawStringInDisabledStyle(c, line, g, background, x, y);
+        }
     }
 
     static Dimension calcPreferredSize(JComponent c, Insets insets, FontMetrics fm, String text, int wLimit,
-                                       float lineSpacing, Set<Character> separators) {
+                                       float lineSpacing, SeparatorMatcher separators) {
         return calcPreferredSize2(c, insets, fm, text, wLimit, lineSpacing, maxLinesForComponent(c),
                 separators);
     }
@@ -71,44 +113,47 @@ final class WidthTextLayout extends AbstractTextLayout {
     }
 
     private static Dimension calcPreferredSize2(JComponent c, Insets insets, FontMetrics fm, String text, int wLimit,
-                                                float lineSpacing, int maxLines, Set<Character> separators) {
+                                                float lineSpacing, int maxLines, SeparatorMatcher separators) {
         assert insets != null;
         assert fm != null;
         assert text != null;
         assert wLimit > 0;
 
-        int textPrefWidth;
-        int textPrefHeight;
-        if (!text.isEmpty()) {
-            NextLine nextLine;
-            int startIndex = 0;
-            final int textWidthLimit = Math.max(1, wLimit - insets.right - insets.left);
-            int lineCount = 0;
-            int maxLineWidth = 0; // pixels
-            do {
-                nextLine = getNextLine(c, text, startIndex, fm, textWidthLimit, separators);
-                String nextLineStr = nextLine.stringToPaint(text, ++lineCount, maxLines);
-                int nextLineWidth = Math.round(getStringWidth(c, fm, nextLineStr));
-                maxLineWidth = Math.max(maxLineWidth, nextLineWidth);
-                startIndex = nextLine.nextLineStartIndex;
-            } while (nextLine.hasMoreLines(lineCount, maxLines));
-            textPrefWidth = maxLineWidth;
-            textPrefHeight = getTextPreferredHeight(lineCount, fm, lineSpacing);
-        } else {
-            textPrefWidth = textPrefHeight = 0;
+        final int textWidthLimit = Math.max(1, wLimit - insets.right - insets.left);
+        final var mode = c instanceof MultilineLabel ? ((MultilineLabel) c).getMeasurementMode()
+                : MeasurementMode.EXACT;
+        final TextMeasurer detachedMeasurer = TextMeasurer.detached(c, fm, mode);
+        final TextLines lines = breakText(text, LineBreakIndex.of(text),
+                detachedMeasurer != null ? detachedMeasurer : TextMeasurer.of(c, fm, mode), textWidthLimit,
+                maxLines, separators, detachedMeasurer != null ? getParallelLayoutPool(c) : null);
+        return toPreferredSize(lines, insets, fm, lineSpacing);
+    }
+
+    private static ForkJoinPool getParallelLayoutPool(JComponent c) {
+        return c instanceof MultilineLabel ? ((MultilineLabel) c).getParallelLayoutPool() : null;
+    }
+
+    /**
+     * Breaks the text in parallel if there is a pool and the text is long enough, otherwise - sequentially.
+     *
+     * @param measurer Measurer of the text. Must be thread-safe if the pool is not null.
+     * @param pool Pool to break the text in parallel. May be null.
+     */
+    private static TextLines breakText(CharSequence text, LineBreakIndex lineBreaks, TextMeasurer measurer,
+                                       int textWidthLimit, int maxLines, SeparatorMatcher separators,
+                                       ForkJoinPool pool) {
+        if (pool != null && text.length() >= MultilineLabel.PARALLEL_LAYOUT_MIN_TEXT_LENGTH) {
+            return TextLines.breakText(text, lineBreaks, measurer, textWidthLimit, maxLines, separators, pool,
+                    TextLines.PARALLEL_PART_LENGTH);
         }
-        return MultilineUtils.toDimension(textPrefWidth, textPrefHeight, insets);
+        return TextLines.breakText(text, lineBreaks, measurer, textWidthLimit, maxLines, separators);
     }
 
-    static int getSeparatorIndex(String text, int fromIndex, Set<Character> separators) {
-        return separators.stream()
-                .mapToInt(s -> text.indexOf(Character.toString(s), fromIndex))
-                .filter(index -> index > -1)
-                .min()
-                .orElse(-1);
+    private static Dimension toPreferredSize(TextLines lines, Insets insets, FontMetrics fm, float lineSpacing) {
+        return MultilineUtils.toDimension(lines.getWidth(), lines.getHeight(fm, lineSpacing), insets);
     }
 
-    private static boolean isWhitespace(String text, int index) {
+    private static boolean isWhitespace(CharSequence text, int index) {
         return Character.isWhitespace(text.charAt(index));
     }
 
@@ -122,42 +167,76 @@ final class WidthTextLayout extends AbstractTextLayout {
      */
     static NextLine getNextLine(JComponent c, String text, int startIndex, FontMetrics fm, int widthLimit,
                                 Set<Character> separators) {
+        return getNextLine(text, LineBreakIndex.of(text), startIndex, widthLimit, SeparatorMatcher.of(separators),
+                new PrefixWidthMeasurer(TextMeasurer.of(c, fm), text));
+    }
+
+    /**
+     * @param text Text to display in {@link MultilineLabel}.
+     * @param lineBreaks Line separators of the text.
+     * @param startIndex Index of 1st character in the new line.
+     * @param widthLimit Limit on the width of the line (in pixels).
+     * @param measurer Measurer of the text.
+     * @return Object with details of the next line.
+     */
+    static NextLine getNextLine(CharSequence text, LineBreakIndex lineBreaks, int startIndex, int widthLimit,
+                                SeparatorMatcher separators, PrefixWidthMeasurer measurer) {
+        return NextLine.of(startIndex, breakLine(text, lineBreaks, startIndex, widthLimit, separators, measurer));
+    }
+
+    /**
+     * Same as {@link #getNextLine(CharSequence, LineBreakIndex, int, int, SeparatorMatcher, PrefixWidthMeasurer)},
+     * but doesn't allocate the result.
+     *
+     * @return Details of the next line packed by {@link NextLine#pack(int, int)}.
+     */
+    static long breakLine(CharSequence text, LineBreakIndex lineBreaks, int startIndex, int widthLimit,
+                          SeparatorMatcher separators, PrefixWidthMeasurer measurer) {
         assert text != null;
-        assert !text.isEmpty();
+        assert text.length() > 0;
         assert startIndex > -1;
-        assert fm != null;
         assert widthLimit > 0;
 
         // if there is a line separator before the width limit - return line before the separator
         // (we assume that, for a string, all line separators are identical)
-        for (String lineSep : LINE_SEPARATORS) {
-            int lineSepIndex = text.indexOf(lineSep, startIndex);
+        int paragraphEnd = text.length(); // lines don't continue after a line separator
+        int lineSepLength = 0;
+        for (int i = 0; i < LineBreakIndex.LINE_SEPARATORS.size(); i++) {
+            String lineSep = LineBreakIndex.LINE_SEPARATORS.get(i);
+            int lineSepIndex = lineBreaks.indexOf(i, startIndex);
             if (lineSepIndex > -1) {
                 boolean lineSepStart = lineSepIndex == startIndex; // special case
-                String sub = text.substring(startIndex, lineSepIndex);
-                if (lineSepStart || getSeparatorIndex(sub, 0, separators) == -1 || getStringWidth(c, fm, sub) <= widthLimit) {
-                    return new NextLine(false, startIndex, lineSepIndex - 1, lineSepIndex + lineSep.length());
+                measurer.startLine(startIndex);
+                if (lineSepStart || separators.indexOf(text, startIndex, lineSepIndex) == -1
+                        || !measurer.exceeds(lineSepIndex, widthLimit)) {
+                    return NextLine.pack(lineSepIndex - 1, lineSepIndex + lineSep.length());
                 } else {
+                    paragraphEnd = lineSepIndex;
+                    lineSepLength = lineSep.length();
                     break;
                 }
             }
         }
 
         // note: if separator is a whitespace - exclude it from the text, o/w keep it as part of the line
+        measurer.startLine(startIndex);
         int sepIndex = startIndex;
         while (true) {
-            int nextSepIndex = getSeparatorIndex(text, sepIndex + 1, separators);
+            int nextSepIndex = separators.indexOf(text, sepIndex + 1, paragraphEnd);
             if (nextSepIndex == -1) { // there is no next separator after sepIndex
-                if (sepIndex > startIndex && getStringWidth(c, fm, text.substring(startIndex)) > widthLimit) {
-                    // next line will be single word last line
-                    return new NextLine(false, startIndex, sepIndex - (isWhitespace(text, sepIndex) ? 1 : 0), sepIndex + 1);
+                if (sepIndex > startIndex && measurer.exceeds(paragraphEnd, widthLimit)) {
+                    // next line will be single word last line (of the paragraph)
+                    return NextLine.pack(sepIndex - (isWhitespace(text, sepIndex) ? 1 : 0), sepIndex + 1);
+                } else if (paragraphEnd < text.length()) {
+                    // single word line before the line separator (startIndex is separator)
+                    return NextLine.pack(paragraphEnd - 1, paragraphEnd + lineSepLength);
                 } else {
                     // last line
-                    return new NextLine(true, startIndex, text.length() - 1, -1);
+                    return NextLine.pack(text.length() - 1, -1);
                 }
             } else { // there is next separator after sepIndex
-                String sub = text.substring(startIndex, nextSepIndex + (isWhitespace(text, nextSepIndex) ? 0 : 1));
-                if (getStringWidth(c, fm, sub) > widthLimit) {
+                int subEnd = nextSepIndex + (isWhitespace(text, nextSepIndex) ? 0 : 1);
+                if (measurer.exceeds(subEnd, widthLimit)) {
                     int sIndex;
                     if (sepIndex > startIndex) {
                         // regular next line
@@ -168,7 +247,7 @@ final class WidthTextLayout extends AbstractTextLayout {
                         assert sepIndex == startIndex;
                         sIndex = nextSepIndex;
                     }
-                    return new NextLine(false, startIndex, sIndex - (isWhitespace(text, sIndex) ? 1 : 0), sIndex + 1);
+                    return NextLine.pack(sIndex - (isWhitespace(text, sIndex) ? 1 : 0), sIndex + 1);
                 } else {
                     sepIndex = nextSepIndex; // continue with current line
                 }
@@ -176,11 +255,114 @@ final class WidthTextLayout extends AbstractTextLayout {
         }
     }
 
-    private final String textToRender;
+    /**
+     * Text of the label without copying (see {@link MultilineLabel#getTextChars()}), so painting after
+     * {@link MultilineLabel#appendText(CharSequence)} doesn't copy the text. Null if it has to be obtained from
+     * the label.
+     */
+    private CharSequence textToRender;
+
+    /**
+     * Line separators of {@link #textToRender}. Null if not calculated yet.
+     */
+    private LineBreakIndex lineBreaks;
+
+    /**
+     * Incremented when text is appended to the label, so lines calculated for the previous text are discarded.
+     */
+    private int textVersion;
+
+    /**
+     * Parameters of the last calculated lines. Null if no lines were calculated yet.
+     */
+    private LayoutKey cachedKey;
+    private TextLines cachedLines;
+
+    /**
+     * Recently calculated lines (incl. the last ones) in access order, so repeated resizes (e.g. dragging a split
+     * pane divider) don't recalculate the lines for the widths seen recently. All keys differ from
+     * {@link #cachedKey} only by the width limit. Size is limited by {@link MultilineLabel#getLayoutCacheCapacity()}.
+     */
+    private final LinkedHashMap<LayoutKey, TextLines> layoutCache = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Parameters of the lines which are being calculated by the layout executor. Null if there is no such calculation.
+     */
+    private LayoutKey pendingKey;
+
+    /**
+     * Parameters of the lines which the layout executor has failed to calculate. Such lines are calculated
+     * synchronously, so the failure is not repeated on each layout. Null if there is no such failure.
+     */
+    private LayoutKey failedKey;
+
+    /**
+     * Profile of the text for the parameters of {@link #profileKey} (except the width). Null if the profile is not
+     * available for the text.
+     */
+    private HeightProfile heightProfile;
+    private LayoutKey profileKey;
 
     WidthTextLayout(MultilineLabel label) {
         super(label);
-        this.textToRender = label.getText();
+    }
+
+    private CharSequence getTextToRender() {
+        if (textToRender == null) {
+            textToRender = label.getTextChars();
+        }
+        return textToRender;
+    }
+
+    private LineBreakIndex getLineBreaks() {
+        if (lineBreaks == null) {
+            lineBreaks = LineBreakIndex.of(getTextToRender());
+        }
+        return lineBreaks;
+    }
+
+    /**
+     * Called by the label after text was appended to it and, possibly, the first lines of its text were removed.
+     * Updates the last calculated lines by breaking only the text after the last {@code '\n'} of the previous text.
+     * If that is not possible, the lines will be recalculated for the whole text.
+     *
+     * @param text Text of the label. Not null.
+     * @param appendIndex Index in the text where the appended text starts.
+     * @param removedLines Number of lines removed from the beginning of the text.
+     * @param removedChars Number of characters of the removed lines.
+     */
+    void textAppended(TextBuffer text, int appendIndex, int removedLines, int removedChars) {
+        textVersion++;
+        textToRender = null;
+        lineBreaks = null;
+        layoutCache.clear();
+        pendingKey = null;
+        failedKey = null;
+        heightProfile = null;
+        profileKey = null;
+        if (cachedLines == null) {
+            return;
+        }
+        if (cachedLines.isTruncated() && removedLines == 0) {
+            layoutCache.put(cachedKey, cachedLines);
+            return; // the text is appended after the last displayed line
+        }
+        final int paragraphStart = text.lastIndexOfLineFeed(appendIndex) + 1;
+        if (cachedLines.getLineCount() == 0 || cachedLines.isTruncated() || !text.isLineFeedSeparated()
+                || (removedLines > 0 && paragraphStart == 0)) {
+            cachedKey = null;
+            cachedLines = null;
+            return;
+        }
+        cachedLines.removeFirstParagraphs(removedLines);
+        cachedLines.removeText(removedChars);
+        cachedLines.removeLastParagraph();
+        final CharSequence tail = text.tail(paragraphStart);
+        final var key = cachedKey;
+        final int textWidthLimit = Math.max(1, key.wLimit - key.insets.right - key.insets.left);
+        cachedLines.appendText(tail, paragraphStart, LineBreakIndex.of(tail), TextMeasurer.of(label,
+                label.getFontMetrics(key.font), key.measurementMode), textWidthLimit, key.maxLines, key.separators);
+        layoutCache.put(key, cachedLines);
     }
 
     @Override
@@ -198,7 +380,7 @@ final class WidthTextLayout extends AbstractTextLayout {
     @Override
     public void preSetBounds(int x, int y, int width, int height) {
         if (label.isUseCurrentWidthForPreferredSize()
-                && !textToRender.isEmpty()
+                && label.getTextLength() > 0
                 && width > 0 && height > 0
                 && width != label.getWidth()
                 && calcPreferredSize(width).height != height) {
@@ -206,6 +388,35 @@ final class WidthTextLayout extends AbstractTextLayout {
         }
     }
 
+    /**
+     * Returns the height of the lines if they are cached for this width, otherwise - uses the height profile of the
+     * text (see {@link HeightProfile}), which is built on the first call for the current parameters of the label.
+     * If the profile is not available, the lines are calculated.
+     */
+    @Override
+    public int calculatePreferredHeight(int width) {
+        final var fm = label.getFontMetrics(label.getFont());
+        final var insets = label.getInsets();
+        final float lineSpacing = label.getLineSpacing();
+        final var key = new LayoutKey(width, fm, insets, lineSpacing, label.getSeparatorMatcher(),
+                label.getMaxLines(), label.getMeasurementMode());
+        final TextLines lines = key.equals(cachedKey) ? cachedLines : layoutCache.get(key);
+        if (lines != null) {
+            return toPreferredSize(lines, insets, fm, lineSpacing).height;
+        }
+        if (profileKey == null || !profileKey.equalsExceptWidth(key)) {
+            heightProfile = HeightProfile.of(getTextToRender(), getLineBreaks(),
+                    TextMeasurer.of(label, fm, key.measurementMode), key.maxLines, key.separators);
+            profileKey = key;
+        }
+        if (heightProfile == null) {
+            return calcPreferredSize(width).height;
+        }
+        final int lineCount = heightProfile.getLineCount(width - insets.right - insets.left);
+        final int height = lineCount == 0 ? 0 : getTextPreferredHeight(lineCount, fm, lineSpacing);
+        return height + insets.top + insets.bottom;
+    }
+
     /**
      * @param expectedLabelWidth Expected label width. Ignored if less than 1.
      */
@@ -221,13 +432,283 @@ final class WidthTextLayout extends AbstractTextLayout {
         }
         final var fm = label.getFontMetrics(label.getFont());
         final var insets = label.getInsets();
-        return calcPreferredSize2(label, insets, fm, textToRender, wLimit, label.getLineSpacing(), label.getMaxLines(),
-                label.getSeparators());
+        final float lineSpacing = label.getLineSpacing();
+        return toPreferredSize(getLines(wLimit, fm, insets, lineSpacing), insets, fm, lineSpacing);
+    }
+
+    /**
+     * Returns lines of the label text for the specified label width. The lines are calculated only if they are not
+     * in the layout cache (see {@link MultilineLabel#setLayoutCacheCapacity(int)}) and the cached lines are not
+     * valid for this width (see {@link TextLines#isValidFor(int)}), so a small resize usually doesn't measure
+     * the text.
+     * <p>
+     * If the label has a layout executor (see {@link MultilineLabel#setLayoutExecutor}) and the text is long enough,
+     * the lines are calculated by the executor. Until the calculation is finished, the method returns the previous
+     * lines or, if there are no such lines, an estimate (see {@link TextLines#estimate}). If the executor fails to
+     * calculate the lines, they are calculated synchronously by the next call.
+     *
+     * @param wLimit Width limit in pixels (incl. insets).
+     */
+    private TextLines getLines(int wLimit, FontMetrics fm, Insets insets, float lineSpacing) {
+        final var key = new LayoutKey(wLimit, fm, insets, lineSpacing, label.getSeparatorMatcher(),
+                label.getMaxLines(), label.getMeasurementMode());
+        if (key.equals(cachedKey)) {
+            return cachedLines;
+        }
+        final TextLines recentLines = layoutCache.get(key);
+        if (recentLines != null) {
+            putLines(key, recentLines);
+            return cachedLines;
+        }
+        final int textWidthLimit = Math.max(1, wLimit - insets.right - insets.left);
+        final LayoutKey validKey = findValidKey(key, textWidthLimit);
+        if (validKey != null) {
+            // the lines don't change for this width - no need to measure the text
+            cachedKey = key;
+            cachedLines = layoutCache.get(validKey);
+            return cachedLines;
+        }
+        // measurer which doesn't access the label may be used by other threads
+        final TextMeasurer detachedMeasurer = TextMeasurer.detached(label, fm, key.measurementMode);
+        final TextMeasurer measurer = detachedMeasurer != null ? detachedMeasurer
+                : TextMeasurer.of(label, fm, key.measurementMode);
+        final ForkJoinPool pool = detachedMeasurer != null ? label.getParallelLayoutPool() : null;
+        final CharSequence text = getTextToRender();
+        final LineBreakIndex lineBreaks = getLineBreaks();
+        final Executor executor = label.getLayoutExecutor();
+        if (executor != null && text.length() >= MultilineLabel.ASYNC_LAYOUT_MIN_TEXT_LENGTH
+                && !key.equals(failedKey)) {
+            if (!key.equals(pendingKey)) {
+                final int version = textVersion;
+                // the text buffer may be modified while the executor breaks it
+                final CharSequence snapshot = text instanceof TextBuffer ? text.toString() : text;
+                try {
+                    executor.execute(() -> {
+                        final TextLines lines;
+                        try {
+                            lines = breakText(snapshot, lineBreaks, measurer, textWidthLimit, key.maxLines,
+                                    key.separators, pool);
+                        } catch (RuntimeException | Error e) {
+                            SwingUtilities.invokeLater(() -> layoutFailed(key, version));
+                            throw e;
+                        }
+                        SwingUtilities.invokeLater(() -> applyLines(key, lines, version));
+                    });
+                    pendingKey = key;
+                } catch (RejectedExecutionException e) {
+                    putLines(key, breakText(text, lineBreaks, measurer, textWidthLimit, key.maxLines,
+                            key.separators, pool));
+                    return cachedLines;
+                }
+            }
+            if (cachedLines != null) {
+                return cachedLines;
+            }
+            return TextLines.estimate(text, lineBreaks, fm, textWidthLimit, key.maxLines);
+        }
+        putLines(key, breakText(text, lineBreaks, measurer, textWidthLimit, key.maxLines, key.separators,
+                pool));
+        return cachedLines;
+    }
+
+    /**
+     * @return Key of the cached lines which are the same for the specified width limit (see
+     * {@link TextLines#isValidFor(int)}). Null if there are no such lines.
+     */
+    private LayoutKey findValidKey(LayoutKey key, int textWidthLimit) {
+        for (Map.Entry<LayoutKey, TextLines> entry : layoutCache.entrySet()) {
+            if (entry.getValue().isValidFor(textWidthLimit) && entry.getKey().equalsExceptWidth(key)) {
+                return entry.getKey();
+            }
+        }
+        return null;
+    }
+
+    private void putLines(LayoutKey key, TextLines lines) {
+        if (cachedKey != null && !key.equalsExceptWidth(cachedKey)) {
+            layoutCache.clear(); // text font, insets, separators, etc. have changed
+        }
+        cachedKey = key;
+        cachedLines = lines;
+        layoutCache.put(key, lines);
+        final int capacity = label.getLayoutCacheCapacity();
+        final Iterator<TextLines> iterator = layoutCache.values().iterator();
+        while (layoutCache.size() > capacity) {
+            iterator.next();
+            iterator.remove(); // the least recently used
+        }
+    }
+
+    /**
+     * @return Number of the cached lines for different widths. For tests.
+     */
+    int getLayoutCacheSize() {
+        return layoutCache.size();
+    }
+
+    /**
+     * Called on EDT when the layout executor has calculated the lines.
+     */
+    private void applyLines(LayoutKey key, TextLines lines, int version) {
+        if (label.getTextLayout() != this || version != textVersion) {
+            return; // the text has been changed since the calculation was requested
+        }
+        putLines(key, lines);
+        if (key.equals(pendingKey)) {
+            pendingKey = null;
+            label.revalidate();
+            label.repaint();
+        }
+    }
+
+    /**
+     * Called on EDT when the layout executor has failed to calculate the lines. The next layout calculates the lines
+     * synchronously.
+     */
+    private void layoutFailed(LayoutKey key, int version) {
+        if (label.getTextLayout() != this || version != textVersion || !key.equals(pendingKey)) {
+            return;
+        }
+        pendingKey = null;
+        failedKey = key;
+        label.revalidate();
+        label.repaint();
+    }
+
+    /**
+     * @return True if the lines are being calculated by the layout executor, so the painted text will change when
+     * the calculation is finished.
+     */
+    boolean isLayoutPending() {
+        return pendingKey != null;
+    }
+
+    /**
+     * @return Lines calculated by the last call to {@link #getLines}. May be null.
+     */
+    TextLines getCachedLines() {
+        return cachedLines;
+    }
+
+    /**
+     * @return Lines for the label width. Empty while the lines are being calculated by the layout executor.
+     */
+    @Override
+    LineTable getLineTable() {
+        final var insets = label.getInsets();
+        final int wLimit = label.getWidth();
+        if (label.getTextLength() == 0 || wLimit - insets.right - insets.left < 1) {
+            return TextLines.EMPTY;
+        }
+        final TextLines lines = getLines(wLimit, label.getFontMetrics(label.getFont()), insets,
+                label.getLineSpacing());
+        return lines.isEstimate() ? TextLines.EMPTY : lines;
     }
 
     @Override
     public void paintText(Graphics g) {
-        paintText2(label, g, textToRender, label.getInsets(), label.getWidth(), label.isEnabled(),
-                label.getBackground(), label.getLineSpacing(), label.getMaxLines(), label.getSeparators());
+        final var insets = label.getInsets();
+        final int wLimit = label.getWidth();
+        if (label.getTextLength() == 0 || wLimit - insets.right - insets.left < 1) {
+            return;
+        }
+        final var fm = label.getFontMetrics(label.getFont());
+        final float lineSpacing = label.getLineSpacing();
+        final TextLines lines = getLines(wLimit, fm, insets, lineSpacing);
+        if (lines.isEstimate()) {
+            return;
+        }
+        paintLines(label, g, lines, getTextToRender(), fm, insets.left, insets.top, lineSpacing, label.isEnabled(),
+                label.getBackground());
+    }
+
+    /**
+     * Paints the lines which intersect the clip of the graphics.
+     *
+     * @param c Component to paint the lines on. If not null, its AA settings are used. May be null.
+     * @param lines Lines to paint. Not an estimate.
+     * @param text The text which the lines belong to.
+     * @param x X coordinate of the left side of the lines.
+     * @param top Y coordinate of the top of the first line.
+     */
+    static void paintLines(JComponent c, Graphics g, TextLines lines, CharSequence text, FontMetrics fm, int x,
+                           int top, float lineSpacing, boolean enabled, Color background) {
+        final int yIncrement = MultilineUtils.getHeightIncrement(fm, lineSpacing);
+        final var clip = g.getClipBounds();
+        final int firstLine = MultilineUtils.getFirstVisibleLine(clip, top, fm, yIncrement);
+        final int lastLine = Math.min(lines.getLineCount() - 1,
+                MultilineUtils.getLastVisibleLine(clip, top, fm, yIncrement));
+        int y = top + fm.getAscent() + yIncrement * firstLine;
+        final GlyphPainter painter = GlyphPainter.of(c, g);
+        try {
+            for (int i = firstLine; i <= lastLine; i++) {
+                final GlyphVector glyphVector = painter != null
+                        ? lines.getGlyphVector(i, text, painter.getFont(), painter.getFontRenderContext()) : null;
+                paintLine(c, g, painter, glyphVector, glyphVector != null ? null : lines.getLine(i, text),
+                        enabled, background, x, y);
+                y += yIncrement;
+            }
+        } finally {
+            if (painter != null) {
+                painter.dispose();
+            }
+        }
+    }
+
+    /**
+     * Parameters which affect the calculated lines of the label text.
+     */
+    static final class LayoutKey {
+        final int wLimit;
+        final Font font;
+        final FontRenderContext frc;
+        final Insets insets;
+        final float lineSpacing;
+        final SeparatorMatcher separators;
+        final int maxLines;
+        final MeasurementMode measurementMode;
+
+        LayoutKey(int wLimit, FontMetrics fm, Insets insets, float lineSpacing, SeparatorMatcher separators,
+                  int maxLines, MeasurementMode measurementMode) {
+            this.wLimit = wLimit;
+            this.font = fm.getFont();
+            this.frc = fm.getFontRenderContext();
+            this.insets = (Insets) insets.clone();
+            this.lineSpacing = lineSpacing;
+            this.separators = separators;
+            this.maxLines = maxLines;
+            this.measurementMode = measurementMode;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof LayoutKey)) {
+                return false;
+            }
+            LayoutKey other = (LayoutKey) o;
+            return wLimit == other.wLimit && equalsExceptWidth(other);
+        }
+
+        /**
+         * @return True if the lines for this key may differ from the lines for the other key only because of the
+         * width limit.
+         */
+        boolean equalsExceptWidth(LayoutKey other) {
+            return maxLines == other.maxLines
+                    && measurementMode == other.measurementMode
+                    && Float.compare(lineSpacing, other.lineSpacing) == 0
+                    && font.equals(other.font)
+                    && frc.equals(other.frc)
+                    && insets.equals(other.insets)
+                    && separators == other.separators;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(wLimit, font, frc, insets, lineSpacing, separators, maxLines, measurementMode);
+        }
     }
 }
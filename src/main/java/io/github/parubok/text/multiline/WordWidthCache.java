@@ -0,0 +1,212 @@
+package io.github.parubok.text.multiline;
+
+import javax.swing.JComponent;
+import java.awt.FontMetrics;
+import java.awt.font.TextAttribute;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Process-wide cache of widths of words (and other short parts of text) used by labels in
+ * {@link MeasurementMode#WORD_CACHE} mode. The widths are kept per font and {@link java.awt.font.FontRenderContext}.
+ * <p>
+ * The cache is bounded: when it reaches its capacity, the least recently used widths are evicted. The cache is
+ * divided into {@value #SEGMENT_COUNT} independently locked segments, each with its own LRU order.
+ * <p>
+ * This class is thread-safe.
+ */
+public final class WordWidthCache {
+
+    /**
+     * Default max. number of cached widths.
+     *
+     * @see #setCapacity(int)
+     */
+    public static final int DEFAULT_CAPACITY = 20_000;
+
+    /**
+     * Texts longer than this number of characters are not cached.
+     */
+    public static final int MAX_WORD_LENGTH = 32;
+
+    private static final int SEGMENT_COUNT = 16;
+
+    private static final Segment[] SEGMENTS = new Segment[SEGMENT_COUNT];
+    private static final LongAdder HITS = new LongAdder();
+    private static final LongAdder MISSES = new LongAdder();
+    private static volatile int capacity = DEFAULT_CAPACITY;
+
+    static {
+        for (int i = 0; i < SEGMENT_COUNT; i++) {
+            SEGMENTS[i] = new Segment();
+        }
+    }
+
+    private WordWidthCache() {
+    }
+
+    /**
+     * @return Number of measurements served from the cache since the last {@link #clear()}.
+     */
+    public static long getHitCount() {
+        return HITS.sum();
+    }
+
+    /**
+     * @return Number of measurements not found in the cache since the last {@link #clear()}.
+     */
+    public static long getMissCount() {
+        return MISSES.sum();
+    }
+
+    /**
+     * @return Current number of cached widths.
+     */
+    public static int getSize() {
+        int size = 0;
+        for (Segment segment : SEGMENTS) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    /**
+     * @return Max. number of cached widths.
+     * @see #DEFAULT_CAPACITY
+     */
+    public static int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @param capacity Max. number of cached widths. Must be positive.
+     */
+    public static void setCapacity(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive.");
+        }
+        WordWidthCache.capacity = capacity;
+        for (Segment segment : SEGMENTS) {
+            segment.trim();
+        }
+    }
+
+    /**
+     * Removes all cached widths and resets the hit and miss counters.
+     */
+    public static void clear() {
+        for (Segment segment : SEGMENTS) {
+            segment.clear();
+        }
+        HITS.reset();
+        MISSES.reset();
+    }
+
+    static TextMeasurer getMeasurer(JComponent c, FontMetrics fm) {
+        final var exactMeasurer = new ExactTextMeasurer(c, fm);
+        if (c != null && c.getClientProperty(TextAttribute.NUMERIC_SHAPING) != null) {
+            return exactMeasurer; // width of the same word may depend on the component
+        }
+        return new CachedTextMeasurer(new FontKey(fm), exactMeasurer);
+    }
+
+    private static int getSegmentCapacity() {
+        return Math.max(1, (capacity + SEGMENT_COUNT - 1) / SEGMENT_COUNT);
+    }
+
+    private static final class WordKey {
+        final FontKey fontKey;
+        final String word;
+        final int hash;
+
+        WordKey(FontKey fontKey, String word) {
+            this.fontKey = fontKey;
+            this.word = word;
+            this.hash = 31 * fontKey.hashCode() + word.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof WordKey)) {
+                return false;
+            }
+            WordKey other = (WordKey) o;
+            return hash == other.hash && word.equals(other.word) && fontKey.equals(other.fontKey);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static final class Segment {
+        private final LinkedHashMap<WordKey, Float> widths = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<WordKey, Float> eldest) {
+                return size() > getSegmentCapacity();
+            }
+        };
+
+        synchronized Float get(WordKey key) {
+            return widths.get(key);
+        }
+
+        synchronized void put(WordKey key, float width) {
+            widths.put(key, width);
+        }
+
+        synchronized int size() {
+            return widths.size();
+        }
+
+        synchronized void clear() {
+            widths.clear();
+        }
+
+        synchronized void trim() {
+            final var iterator = widths.keySet().iterator();
+            for (int i = widths.size() - getSegmentCapacity(); i > 0; i--) {
+                iterator.next();
+                iterator.remove();
+            }
+        }
+    }
+
+    private static final class CachedTextMeasurer implements TextMeasurer {
+        private final FontKey fontKey;
+        private final ExactTextMeasurer exactMeasurer;
+
+        CachedTextMeasurer(FontKey fontKey, ExactTextMeasurer exactMeasurer) {
+            this.fontKey = fontKey;
+            this.exactMeasurer = exactMeasurer;
+        }
+
+        @Override
+        public float getWidth(CharSequence text, int start, int end) {
+            if (start == end || end - start > MAX_WORD_LENGTH) {
+                return exactMeasurer.getWidth(text, start, end);
+            }
+            final var key = new WordKey(fontKey, text.subSequence(start, end).toString());
+            final var segment = SEGMENTS[(key.hash ^ (key.hash >>> 16)) & (SEGMENT_COUNT - 1)];
+            final Float cachedWidth = segment.get(key);
+            if (cachedWidth != null) {
+                HITS.increment();
+                return cachedWidth;
+            }
+            MISSES.increment();
+            final float width = exactMeasurer.getWidth(key.word, 0, key.word.length());
+            segment.put(key, width);
+            return width;
+        }
+
+        @Override
+        public boolean isAdditive() {
+            return exactMeasurer.isAdditive();
+        }
+    }
+}
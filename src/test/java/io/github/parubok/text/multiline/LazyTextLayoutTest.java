@@ -0,0 +1,161 @@
+package io.github.parubok.text.multiline;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import javax.swing.JViewport;
+import javax.swing.SwingUtilities;
+import java.awt.Point;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+public class LazyTextLayoutTest {
+
+    /**
+     * Paragraphs of random words, incl. empty paragraphs and paragraphs longer than a block.
+     */
+    static String createText(int paragraphCount, String lineSeparator) {
+        var random = new Random(21);
+        var sb = new StringBuilder();
+        for (int i = 0; i < paragraphCount; i++) {
+            int wordCount = i % 97 == 0 ? 8_000 : random.nextInt(60);
+            for (int j = 0; j < wordCount; j++) {
+                sb.append(j == 0 ? "" : " ").append("abcdefghijklmnopqrstuvwxyz", 0, 1 + random.nextInt(12));
+            }
+            sb.append(lineSeparator);
+        }
+        return sb.toString();
+    }
+
+    private static MultilineLabel createLabel(String text, boolean lazy) {
+        var label = new MultilineLabel();
+        label.setFont(WidthTextLayoutTest.font);
+        label.setLazyLayout(lazy);
+        label.setText(text);
+        return label;
+    }
+
+    private static int[] paint(MultilineLabel label, int y, int height) {
+        var image = new BufferedImage(label.getWidth(), height, BufferedImage.TYPE_INT_RGB);
+        var g = image.createGraphics();
+        g.translate(0, -y);
+        g.setClip(0, y, label.getWidth(), height);
+        label.paint(g);
+        g.dispose();
+        return image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth());
+    }
+
+    @Test
+    public void sameLinesAsWidthTextLayout() throws Exception {
+        SwingUtilities.invokeAndWait(() -> {
+            for (String lineSeparator : new String[]{"\n", "\r\n", "\r"}) {
+                var text = createText(3_000, lineSeparator);
+                var label = createLabel(text, true);
+                label.setSize(300, 100);
+                var layout = (LazyTextLayout) label.getTextLayout();
+                Assertions.assertTrue(label.isWidthBasedLayout());
+                label.getPreferredSize();
+                Assertions.assertEquals(1, layout.getBrokenBlockCount());
+
+                var reference = createLabel(text, false);
+                reference.setSize(300, 100);
+                reference.getPreferredSize();
+                var lines = ((WidthTextLayout) reference.getTextLayout()).getCachedLines();
+                layout.breakLines(0, Integer.MAX_VALUE);
+                Assertions.assertEquals(lines.getLineCount(), layout.getLineCount());
+                Assertions.assertEquals(reference.getPreferredSize().height, label.getPreferredSize().height);
+                for (int i = 0; i < lines.getLineCount(); i++) {
+                    Assertions.assertEquals(lines.getLineStart(i), layout.getLineStart(i));
+                    Assertions.assertEquals(i, layout.getLineOfIndex(lines.getLineStart(i)));
+                }
+                label.setSize(300, label.getPreferredSize().height);
+                reference.setSize(label.getSize());
+                int y = label.getHeight() / 2;
+                Assertions.assertArrayEquals(paint(reference, y, 200), paint(label, y, 200));
+                for (int i = 0; i < lines.getLineCount(); i += 997) {
+                    var bounds = reference.lineBounds(i);
+                    Assertions.assertEquals(bounds, label.lineBounds(i));
+                    var point = new Point(40, bounds.y);
+                    Assertions.assertEquals(reference.viewToOffset(point), label.viewToOffset(point));
+                    Assertions.assertEquals(i, label.offsetToLine(lines.getLineStart(i)));
+                }
+            }
+        });
+    }
+
+    @Test
+    public void appendText() throws Exception {
+        SwingUtilities.invokeAndWait(() -> {
+            var random = new Random(22);
+            var label = createLabel(createText(700, "\n"), true);
+            label.setMaxTextLines(705);
+            label.setSize(300, 100);
+            label.getPreferredSize();
+            var layout = (LazyTextLayout) label.getTextLayout();
+            layout.breakLines(0, Integer.MAX_VALUE);
+            for (int i = 0; i < 30; i++) {
+                int brokenBlockCount = layout.getBrokenBlockCount();
+                int length = label.getTextLength();
+                var appended = i % 10 == 9 ? createText(20, "\n") : random.nextBoolean() ? " abc def" : "\nxyz";
+                label.appendText(appended);
+                Assertions.assertSame(layout, label.getTextLayout());
+                // only the blocks of the last paragraph and of the removed lines are discarded
+                int removedChars = length + appended.length() - label.getTextLength();
+                Assertions.assertTrue(layout.getBrokenBlockCount()
+                        >= brokenBlockCount - removedChars / LazyTextLayout.BLOCK_LENGTH - 3);
+
+                var reference = createLabel(label.getText(), false);
+                reference.setSize(300, 100);
+                reference.getPreferredSize();
+                var lines = ((WidthTextLayout) reference.getTextLayout()).getCachedLines();
+                layout.breakLines(0, Integer.MAX_VALUE);
+                Assertions.assertEquals(lines.getLineCount(), layout.getLineCount());
+                for (int j = 0; j < lines.getLineCount(); j++) {
+                    Assertions.assertEquals(lines.getLineStart(j), layout.getLineStart(j));
+                    Assertions.assertEquals(j, layout.getLineOfIndex(lines.getLineStart(j)));
+                }
+                label.setSize(300, label.getPreferredSize().height);
+                reference.setSize(label.getSize());
+                int y = Math.max(0, label.getHeight() - 200);
+                Assertions.assertArrayEquals(paint(reference, y, 200), paint(label, y, 200));
+            }
+        });
+    }
+
+    @Test
+    public void viewport() throws Exception {
+        SwingUtilities.invokeAndWait(() -> {
+            var label = createLabel(createText(3_000, "\n"), true);
+            var layout = (LazyTextLayout) label.getTextLayout();
+            var viewport = new JViewport();
+            viewport.setView(label);
+            viewport.setSize(300, 200);
+            viewport.doLayout();
+            viewport.doLayout(); // the preferred height for the viewport width
+            Assertions.assertEquals(300, label.getWidth());
+            Assertions.assertEquals(label.getPreferredSize().height, label.getHeight());
+            Assertions.assertEquals(1, layout.getBrokenBlockCount());
+            var reference = createLabel(label.getText(), false);
+            reference.setSize(300, label.getHeight());
+            Assertions.assertArrayEquals(paint(reference, 0, 200), paint(label, 0, 200));
+
+            // scrolled to the estimated lines - the visible blocks are broken
+            viewport.setViewPosition(new Point(0, label.getHeight() / 2));
+            int brokenBlockCount = layout.getBrokenBlockCount();
+            Assertions.assertTrue(brokenBlockCount > 1 && brokenBlockCount < 10);
+            Assertions.assertEquals(label.getPreferredSize().height, label.getHeight());
+
+            // scrolled a bit above the first broken block - the text of the block stays in place
+            int yIncrement = MultilineUtils.getHeightIncrement(label.getFontMetrics(label.getFont()),
+                    label.getLineSpacing());
+            int line = viewport.getViewPosition().y / yIncrement;
+            while (layout.isBroken(line - 1)) {
+                line--; // the first line of the broken blocks
+            }
+            int index = layout.getLineStart(line);
+            viewport.setViewPosition(new Point(0, line * yIncrement - 2 * yIncrement));
+            Assertions.assertTrue(layout.getBrokenBlockCount() > brokenBlockCount);
+            Assertions.assertEquals(index, layout.getLineStart(viewport.getViewPosition().y / yIncrement + 2));
+        });
+    }
+}
@@ -0,0 +1,57 @@
+package io.github.parubok.text.multiline;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.swing.SwingUtilities;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class MappedTextSourceTest {
+    @Test
+    public void utf8(@TempDir Path dir) throws Exception {
+        var text = ("abc éАא 😀 €\n").repeat(50) + "ÿ";
+        var file = dir.resolve("utf8.txt");
+        Files.writeString(file, text, StandardCharsets.UTF_8);
+        for (int chunkSize : new int[]{5, 7, 64, MappedTextSource.DEFAULT_CHUNK_SIZE}) {
+            var source = MappedTextSource.open(file, StandardCharsets.UTF_8, chunkSize);
+            Assertions.assertEquals(text.length(), source.length());
+            Assertions.assertEquals(text, source.toString());
+            for (int i = text.length() - 1; i >= 0; i -= 3) {
+                Assertions.assertEquals(text.charAt(i), source.charAt(i));
+            }
+            Assertions.assertEquals(text.substring(11, 100), source.subSequence(11, 100));
+            Assertions.assertThrows(IndexOutOfBoundsException.class, () -> source.charAt(text.length()));
+        }
+    }
+
+    @Test
+    public void singleByteCharset(@TempDir Path dir) throws Exception {
+        var file = dir.resolve("latin1.txt");
+        Files.writeString(file, "café", StandardCharsets.ISO_8859_1);
+        Assertions.assertEquals("café", MappedTextSource.open(file, StandardCharsets.ISO_8859_1).toString());
+        Files.writeString(file, "");
+        Assertions.assertEquals(0, MappedTextSource.open(file, StandardCharsets.UTF_8).length());
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> MappedTextSource.open(file, StandardCharsets.UTF_16));
+    }
+
+    @Test
+    public void label(@TempDir Path dir) throws Exception {
+        var text = (MultilineLabelTest.LOREM_IPSUM + "\n").repeat(20);
+        var file = dir.resolve("label.txt");
+        Files.writeString(file, text, StandardCharsets.UTF_8);
+        var source = MappedTextSource.open(file, StandardCharsets.UTF_8, 100);
+        SwingUtilities.invokeAndWait(() -> {
+            var label = new MultilineLabel(text);
+            label.setPreferredWidthLimit(300);
+            var size = label.getPreferredSize();
+            label.setTextSource(source);
+            Assertions.assertSame(source, label.getTextSource());
+            Assertions.assertEquals(size, label.getPreferredSize());
+            Assertions.assertEquals(text, label.getText());
+        });
+    }
+}
@@ -3,14 +3,28 @@ package io.github.parubok.text.multiline;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import javax.swing.JComponent;
 import javax.swing.JLabel;
+import javax.swing.SwingConstants;
 import javax.swing.SwingUtilities;
 import javax.swing.border.EmptyBorder;
+import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Insets;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
 import java.awt.datatransfer.Clipboard;
 import java.awt.datatransfer.DataFlavor;
 import java.awt.datatransfer.Transferable;
+import java.awt.event.InputEvent;
+import java.awt.event.MouseEvent;
+import java.awt.font.NumericShaper;
+import java.awt.font.TextAttribute;
+import java.awt.image.BufferedImage;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
 
 public class MultilineLabelTest {
@@ -387,6 +401,96 @@ public class MultilineLabelTest {
         });
     }
 
+    @Test
+    public void scrollableIncrements() throws Exception {
+        SwingUtilities.invokeAndWait(() -> {
+            var label = new MultilineLabel(LOREM_IPSUM);
+            label.setBorder(new EmptyBorder(3, 0, 0, 0));
+            int yIncrement = MultilineUtils.getHeightIncrement(label.getFontMetrics(label.getFont()),
+                    label.getLineSpacing());
+            int down = 1;
+            int up = -1;
+            int v = SwingConstants.VERTICAL;
+            Assertions.assertEquals(3, label.getScrollableUnitIncrement(new Rectangle(0, 0, 100, 50), v, down));
+            Assertions.assertEquals(yIncrement, label.getScrollableUnitIncrement(new Rectangle(0, 3, 100, 50), v,
+                    down));
+            Assertions.assertEquals(yIncrement - 5, label.getScrollableUnitIncrement(new Rectangle(0, 8, 100, 50), v,
+                    down));
+            Assertions.assertEquals(5, label.getScrollableUnitIncrement(
+                    new Rectangle(0, 3 + yIncrement + 5, 100, 50), v, up));
+            Assertions.assertEquals(yIncrement, label.getScrollableUnitIncrement(
+                    new Rectangle(0, 3 + yIncrement, 100, 50), v, up));
+            Assertions.assertEquals(3, label.getScrollableUnitIncrement(new Rectangle(0, 3, 100, 50), v, up));
+
+            int height = 10 * yIncrement + 4; // 10 lines and a part of the next line
+            Assertions.assertEquals(10 * yIncrement, label.getScrollableBlockIncrement(
+                    new Rectangle(0, 3, 100, height), v, down));
+            Assertions.assertEquals(10 * yIncrement, label.getScrollableBlockIncrement(
+                    new Rectangle(0, 3 + 20 * yIncrement, 100, height), v, up));
+            // the top line is partially visible - it becomes the bottom line
+            Assertions.assertEquals(9 * yIncrement + 2, label.getScrollableBlockIncrement(
+                    new Rectangle(0, 3 + 20 * yIncrement + 2, 100, height), v, up));
+            Assertions.assertEquals(3 + 2 * yIncrement, label.getScrollableBlockIncrement(
+                    new Rectangle(0, 3 + 2 * yIncrement, 100, height), v, up));
+            // the viewport is lower than a line
+            Assertions.assertEquals(yIncrement, label.getScrollableBlockIncrement(
+                    new Rectangle(0, 3, 100, yIncrement / 2), v, down));
+            Assertions.assertEquals(20, label.getScrollableUnitIncrement(new Rectangle(0, 0, 100, 50),
+                    SwingConstants.HORIZONTAL, down));
+        });
+    }
+
+    @Test
+    public void hitTesting() throws Exception {
+        SwingUtilities.invokeAndWait(() -> {
+            var label = new MultilineLabel(LOREM_IPSUM);
+            label.setBorder(new EmptyBorder(3, 5, 0, 0));
+            Assertions.assertEquals(-1, label.viewToOffset(new Point(10, 10)));
+            Assertions.assertEquals(0, label.getDisplayedLineCount());
+            label.setSize(200, label.getPreferredHeight(200));
+            int yIncrement = MultilineUtils.getHeightIncrement(label.getFontMetrics(label.getFont()),
+                    label.getLineSpacing());
+            var measurer = TextMeasurer.of(label, label.getFontMetrics(label.getFont()));
+            var lines = ((WidthTextLayout) label.getTextLayout()).getCachedLines();
+            Assertions.assertTrue(lines.getLineCount() > 2);
+            Assertions.assertEquals(lines.getLineCount(), label.getDisplayedLineCount());
+            for (int i = 0; i < lines.getLineCount(); i++) {
+                int start = lines.getLineStart(i);
+                int end = lines.getLineEnd(i);
+                var bounds = label.lineBounds(i);
+                int width = (int) Math.ceil(measurer.getWidth(LOREM_IPSUM, start, end));
+                Assertions.assertEquals(new Rectangle(5, 3 + i * yIncrement, width, yIncrement), bounds);
+                Assertions.assertEquals(i, label.offsetToLine(start));
+                Assertions.assertEquals(i, label.offsetToLine(end));
+                Assertions.assertEquals(start, label.viewToOffset(new Point(0, bounds.y)));
+                Assertions.assertEquals(end, label.viewToOffset(new Point(500, bounds.y + bounds.height - 1)));
+                int middle = (start + end) / 2;
+                int x = 5 + Math.round(measurer.getWidth(LOREM_IPSUM, start, middle));
+                Assertions.assertEquals(middle, label.viewToOffset(new Point(x, bounds.y + 1)));
+            }
+            // points above and below the lines
+            Assertions.assertEquals(0, label.viewToOffset(new Point(0, -10)));
+            Assertions.assertEquals(LOREM_IPSUM.length(), label.viewToOffset(new Point(500, 1000)));
+            Assertions.assertEquals(lines.getLineCount() - 1, label.offsetToLine(LOREM_IPSUM.length()));
+            Assertions.assertThrows(IllegalArgumentException.class, () -> label.offsetToLine(-1));
+            Assertions.assertThrows(IllegalArgumentException.class,
+                    () -> label.lineBounds(lines.getLineCount()));
+
+            // lines provided by the text
+            String text = "  ab\r\n  cd  \n\nef";
+            var provided = new MultilineLabel(text, true);
+            provided.setBorder(new EmptyBorder(3, 5, 0, 0));
+            provided.setSize(provided.getPreferredSize());
+            Assertions.assertEquals(4, provided.getDisplayedLineCount());
+            Assertions.assertEquals(1, provided.offsetToLine(text.indexOf("cd")));
+            Assertions.assertEquals(2, provided.offsetToLine(text.indexOf("\n\n") + 1));
+            Assertions.assertEquals(3, provided.offsetToLine(text.indexOf("ef") + 1));
+            Assertions.assertEquals(text.indexOf("cd"), provided.viewToOffset(new Point(0, 3 + yIncrement)));
+            Assertions.assertEquals(text.indexOf("cd") + 2, provided.viewToOffset(new Point(500, 3 + yIncrement)));
+            Assertions.assertEquals(text.length(), provided.viewToOffset(new Point(500, 1000)));
+        });
+    }
+
     @Test
     public void setPreferredSize_1() throws Exception {
         SwingUtilities.invokeAndWait(() -> {
@@ -421,6 +525,75 @@ public class MultilineLabelTest {
         });
     }
 
+    @Test
+    public void selection() throws Exception {
+        SwingUtilities.invokeAndWait(() -> {
+            var clipboard = new Clipboard("test");
+            var repaints = new ArrayList<Rectangle>();
+            var label = new MultilineLabel(LOREM_IPSUM) {
+                @Override
+                protected Clipboard getClipboard() {
+                    return clipboard;
+                }
+
+                @Override
+                public void repaint(long tm, int x, int y, int width, int height) {
+                    repaints.add(new Rectangle(x, y, width, height));
+                }
+            };
+            label.setBorder(new EmptyBorder(3, 5, 0, 0));
+            label.setSelectionColor(Color.RED);
+            label.setSize(200, label.getPreferredHeight(200));
+            int yIncrement = MultilineUtils.getHeightIncrement(label.getFontMetrics(label.getFont()),
+                    label.getLineSpacing());
+            var lines = ((WidthTextLayout) label.getTextLayout()).getCachedLines();
+            Assertions.assertTrue(lines.getLineCount() > 4);
+            Assertions.assertEquals("", label.getSelectedText());
+
+            repaints.clear();
+            label.select(lines.getLineStart(2), lines.getLineEnd(2));
+            Assertions.assertEquals(lines.getLine(2, LOREM_IPSUM), label.getSelectedText());
+            Assertions.assertEquals(List.of(new Rectangle(0, 3 + 2 * yIncrement, 200, yIncrement)), repaints);
+            // only the lines of the changed part of the selection are repainted
+            repaints.clear();
+            label.select(lines.getLineStart(2), lines.getLineEnd(3));
+            Assertions.assertEquals(List.of(new Rectangle(0, 3 + 2 * yIncrement, 200, 2 * yIncrement)), repaints);
+            Assertions.assertSame(lines, ((WidthTextLayout) label.getTextLayout()).getCachedLines());
+
+            var image = new BufferedImage(200, label.getHeight(), BufferedImage.TYPE_INT_RGB);
+            var g = image.createGraphics();
+            label.paint(g);
+            g.dispose();
+            Assertions.assertEquals(Color.RED.getRGB(), image.getRGB(6, 3 + 3 * yIncrement));
+            Assertions.assertNotEquals(Color.RED.getRGB(), image.getRGB(6, 3 + 4 * yIncrement));
+
+            label.copySelection();
+            try {
+                Assertions.assertEquals(LOREM_IPSUM.substring(lines.getLineStart(2), lines.getLineEnd(3)),
+                        clipboard.getContents(null).getTransferData(DataFlavor.stringFlavor));
+            } catch (Exception e) {
+                Assertions.fail(e);
+            }
+            Assertions.assertThrows(IllegalArgumentException.class, () -> label.select(5, 4));
+
+            // mouse selection
+            label.setFocusable(false);
+            label.setSelectionEnabled(true);
+            Assertions.assertTrue(label.isFocusable());
+            var from = new Point(60, 3 + yIncrement);
+            var to = new Point(30, 3 + 3 * yIncrement);
+            label.dispatchEvent(new MouseEvent(label, MouseEvent.MOUSE_PRESSED, 0, InputEvent.BUTTON1_DOWN_MASK,
+                    from.x, from.y, 1, false, MouseEvent.BUTTON1));
+            label.dispatchEvent(new MouseEvent(label, MouseEvent.MOUSE_DRAGGED, 0, InputEvent.BUTTON1_DOWN_MASK,
+                    to.x, to.y, 0, false, MouseEvent.BUTTON1));
+            Assertions.assertEquals(label.viewToOffset(from), label.getSelectionStart());
+            Assertions.assertEquals(label.viewToOffset(to), label.getSelectionEnd());
+
+            label.setText("abc");
+            Assertions.assertEquals(0, label.getSelectionEnd());
+        });
+    }
+
     @Test
     public void setSeparators() throws Exception {
         SwingUtilities.invokeAndWait(() -> {
@@ -477,4 +650,123 @@ public class MultilineLabelTest {
             Assertions.assertEquals(new Dimension(27, 88), label.getPreferredSize()); // 5 lines
         });
     }
+
+    private static int[] paint(JComponent c, double scale) {
+        int width = (int) Math.ceil(c.getWidth() * scale);
+        int height = (int) Math.ceil(c.getHeight() * scale);
+        var image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        var g = image.createGraphics();
+        g.scale(scale, scale);
+        c.paint(g);
+        g.dispose();
+        return image.getRGB(0, 0, width, height, null, 0, width);
+    }
+
+    @Test
+    public void imageCache() throws Exception {
+        SwingUtilities.invokeAndWait(() -> {
+            TextImageCache.clear();
+            var label = new MultilineLabel(LOREM_IPSUM);
+            label.setBounds(0, 0, 200, 120);
+            Assertions.assertFalse(label.isImageCacheEnabled());
+            for (double scale : new double[]{1.0, 2.0, 1.5}) {
+                label.setImageCacheEnabled(false);
+                int[] expected = paint(label, scale);
+                label.setImageCacheEnabled(true);
+                Assertions.assertArrayEquals(expected, paint(label, scale));
+                Assertions.assertArrayEquals(expected, paint(label, scale)); // from the image
+                Assertions.assertEquals(4L * (int) Math.ceil(200 * scale) * (int) Math.ceil(120 * scale),
+                        TextImageCache.getBytes());
+            }
+
+            label.setText("abc def");
+            label.setEnabled(false);
+            label.setImageCacheEnabled(false);
+            int[] expected = paint(label, 1.0);
+            label.setImageCacheEnabled(true);
+            Assertions.assertArrayEquals(expected, paint(label, 1.0));
+            label.setEnabled(true);
+            label.setImageCacheEnabled(false);
+            expected = paint(label, 1.0);
+            label.setImageCacheEnabled(true);
+            Assertions.assertArrayEquals(expected, paint(label, 1.0));
+            Assertions.assertEquals(4L * 200 * 120, TextImageCache.getBytes()); // one image per label
+
+            var label2 = new MultilineLabel("text2");
+            label2.setBounds(0, 0, 100, 100);
+            label2.setImageCacheEnabled(true);
+            paint(label2, 1.0);
+            Assertions.assertEquals(4L * 200 * 120 + 4L * 100 * 100, TextImageCache.getBytes());
+            TextImageCache.setMaxBytes(120_000);
+            Assertions.assertEquals(120_000, TextImageCache.getMaxBytes());
+            Assertions.assertEquals(4L * 100 * 100, TextImageCache.getBytes()); // the least recently painted is evicted
+            paint(label, 1.0); // too large for the budget
+            Assertions.assertEquals(4L * 100 * 100, TextImageCache.getBytes());
+            label2.setImageCacheEnabled(false);
+            Assertions.assertEquals(0, TextImageCache.getBytes());
+            TextImageCache.setMaxBytes(TextImageCache.DEFAULT_MAX_BYTES);
+            Assertions.assertThrows(IllegalArgumentException.class, () -> TextImageCache.setMaxBytes(-1));
+        });
+    }
+
+    @Test
+    public void imageCache_collectedLabel() throws Exception {
+        var collected = new ArrayList<WeakReference<MultilineLabel>>();
+        SwingUtilities.invokeAndWait(() -> {
+            TextImageCache.clear();
+            collected.add(paintCachedLabel(200, 120));
+        });
+        for (int i = 0; i < 100 && collected.get(0).get() != null; i++) {
+            SwingUtilities.invokeAndWait(() -> {}); // the repaint of the label is processed
+            System.gc();
+        }
+        Assertions.assertNull(collected.get(0).get()); // the cache doesn't keep the label
+        SwingUtilities.invokeAndWait(() -> {
+            var label = new MultilineLabel(LOREM_IPSUM);
+            label.setBounds(0, 0, 100, 100);
+            label.setImageCacheEnabled(true);
+            paint(label, 1.0);
+            Assertions.assertEquals(4L * 100 * 100, TextImageCache.getBytes()); // the image of the label is discarded
+            TextImageCache.clear();
+        });
+    }
+
+    private static WeakReference<MultilineLabel> paintCachedLabel(int width, int height) {
+        var label = new MultilineLabel(LOREM_IPSUM);
+        label.setBounds(0, 0, width, height);
+        label.setImageCacheEnabled(true);
+        paint(label, 1.0);
+        Assertions.assertEquals(4L * width * height, TextImageCache.getBytes());
+        return new WeakReference<>(label);
+    }
+
+    @Test
+    public void glyphVectors() throws Exception {
+        SwingUtilities.invokeAndWait(() -> {
+            var label = new MultilineLabel(LOREM_IPSUM + "\nna\u00efve caf\u00e9\n\u05e9\u05dc\u05d5\u05dd");
+            label.setBounds(0, 0, 200, 200);
+            for (Object aa : new Object[]{null, RenderingHints.VALUE_TEXT_ANTIALIAS_ON}) {
+                label.putClientProperty(RenderingHints.KEY_TEXT_ANTIALIASING, aa);
+                for (boolean enabled : new boolean[]{true, false}) {
+                    label.setEnabled(enabled);
+                    for (double scale : new double[]{1.0, 2.0}) {
+                        // numeric shaping (identity for the text) makes the label paint the lines as strings
+                        label.putClientProperty(TextAttribute.NUMERIC_SHAPING,
+                                NumericShaper.getShaper(NumericShaper.EUROPEAN));
+                        int[] expected = paint(label, scale);
+                        label.putClientProperty(TextAttribute.NUMERIC_SHAPING, null);
+                        Assertions.assertArrayEquals(expected, paint(label, scale));
+                        Assertions.assertArrayEquals(expected, paint(label, scale)); // cached glyph vectors
+                    }
+                }
+            }
+
+            var lines = ((WidthTextLayout) label.getTextLayout()).getCachedLines();
+            var font = label.getFont();
+            var frc = label.getFontMetrics(font).getFontRenderContext();
+            var text = label.getText();
+            Assertions.assertSame(lines.getGlyphVector(0, text, font, frc), lines.getGlyphVector(0, text, font, frc));
+            Assertions.assertNull(lines.getGlyphVector(lines.getLineCount() - 1, text, font, frc)); // as string
+        });
+    }
 }
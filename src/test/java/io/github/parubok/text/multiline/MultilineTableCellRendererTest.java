@@ -0,0 +1,186 @@
+package io.github.parubok.text.multiline;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import javax.swing.JList;
+import javax.swing.JTable;
+import javax.swing.JViewport;
+import javax.swing.SwingUtilities;
+import javax.swing.table.DefaultTableModel;
+import java.awt.Insets;
+import java.awt.Point;
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.IntStream;
+
+public class MultilineTableCellRendererTest {
+
+    private static int getExpectedHeight(JTable table, MultilineTableCellRenderer renderer, String text, int column) {
+        var columnModel = table.getColumnModel();
+        int width = columnModel.getColumn(column).getWidth() - columnModel.getColumnMargin();
+        Insets insets = renderer.getInsets();
+        int height = MultilineLabel.calculatePreferredSize(renderer, insets, renderer.getFontMetrics(table.getFont()),
+                text, width, renderer.getLineSpacing()).height;
+        return Math.max(table.getRowHeight(), height + table.getRowMargin());
+    }
+
+    @Test
+    public void rowHeights() throws Exception {
+        var model = new DefaultTableModel(new Object[][]{
+                {"a", MultilineLabelTest.LOREM_IPSUM},
+                {"b", "short"},
+                {"c", null}
+        }, new Object[]{"Name", "Text"});
+        var table = new JTable(model);
+        var renderer = new MultilineTableCellRenderer();
+        SwingUtilities.invokeAndWait(() -> {
+            table.getColumnModel().getColumn(1).setCellRenderer(renderer);
+            table.getColumnModel().getColumn(1).setWidth(100);
+            renderer.installRowHeightUpdater(table);
+            Assertions.assertEquals(getExpectedHeight(table, renderer, MultilineLabelTest.LOREM_IPSUM, 1),
+                    table.getRowHeight(0));
+            Assertions.assertTrue(table.getRowHeight(0) > 5 * table.getRowHeight());
+            Assertions.assertEquals(getExpectedHeight(table, renderer, "short", 1), table.getRowHeight(1));
+            Assertions.assertEquals(table.getRowHeight(), table.getRowHeight(2)); // empty text
+
+            model.setValueAt(MultilineLabelTest.LOREM_IPSUM, 1, 1);
+            model.addRow(new Object[]{"d", "line1\nline2\nline3\nline4"});
+            model.removeRow(0);
+        });
+        SwingUtilities.invokeAndWait(() -> {
+            Assertions.assertEquals(3, table.getRowCount());
+            Assertions.assertEquals(getExpectedHeight(table, renderer, MultilineLabelTest.LOREM_IPSUM, 1),
+                    table.getRowHeight(0));
+            Assertions.assertEquals(table.getRowHeight(), table.getRowHeight(1)); // empty text
+            Assertions.assertEquals(getExpectedHeight(table, renderer, "line1\nline2\nline3\nline4", 1),
+                    table.getRowHeight(2));
+
+            table.getColumnModel().getColumn(1).setWidth(300); // the heights are recalculated for the new width
+        });
+        SwingUtilities.invokeAndWait(() -> {
+            Assertions.assertEquals(getExpectedHeight(table, renderer, MultilineLabelTest.LOREM_IPSUM, 1),
+                    table.getRowHeight(0));
+            renderer.uninstallRowHeightUpdater(table);
+            int height = table.getRowHeight(1);
+            model.setValueAt(MultilineLabelTest.LOREM_IPSUM, 1, 1);
+            Assertions.assertEquals(height, table.getRowHeight(1));
+        });
+    }
+
+    private static DefaultTableModel createLargeModel() {
+        var model = new DefaultTableModel(new Object[]{"Name", "Text"}, 0);
+        for (int i = 0; i < 25_000; i++) {
+            model.addRow(new Object[]{"row " + i, i % 7 == 0 ? MultilineLabelTest.LOREM_IPSUM : "short " + i});
+        }
+        return model;
+    }
+
+    @Test
+    public void rowHeights_async() throws Exception {
+        var table = new JTable(createLargeModel());
+        var renderer = new MultilineTableCellRenderer();
+        SwingUtilities.invokeAndWait(() -> {
+            table.getColumnModel().getColumn(1).setCellRenderer(renderer);
+            table.getColumnModel().getColumn(1).setWidth(120);
+            renderer.setLayoutExecutor(ForkJoinPool.commonPool());
+            renderer.installRowHeightUpdater(table);
+        });
+        long deadline = System.currentTimeMillis() + 30_000;
+        var done = new AtomicBoolean();
+        while (!done.get()) {
+            Assertions.assertTrue(System.currentTimeMillis() < deadline, "Row heights are not calculated.");
+            Thread.sleep(10);
+            SwingUtilities.invokeAndWait(() -> done.set(IntStream.range(0, table.getRowCount())
+                    .allMatch(row -> table.getRowHeight(row) == renderer.getRowPreferredHeight(table, row))));
+        }
+        SwingUtilities.invokeAndWait(() -> Assertions.assertTrue(table.getRowHeight(0) > 3 * table.getRowHeight()));
+    }
+
+    @Test
+    public void rowHeights_async_visibleRowsFirst() throws Exception {
+        var table = new JTable(createLargeModel());
+        var renderer = new MultilineTableCellRenderer();
+        var tasks = new ArrayList<Runnable>();
+        int visibleRow = 15_001;
+        SwingUtilities.invokeAndWait(() -> {
+            table.getColumnModel().getColumn(1).setCellRenderer(renderer);
+            var viewport = new JViewport();
+            viewport.setView(table);
+            viewport.setSize(300, 200);
+            table.setSize(300, table.getPreferredSize().height);
+            viewport.setViewPosition(new Point(0, table.getCellRect(visibleRow, 0, true).y));
+            renderer.setLayoutExecutor(tasks::add);
+            renderer.installRowHeightUpdater(table);
+            Assertions.assertEquals((table.getRowCount() + RowHeightBatch.CHUNK_SIZE - 1) / RowHeightBatch.CHUNK_SIZE,
+                    tasks.size());
+            tasks.get(0).run();
+        });
+        SwingUtilities.invokeAndWait(() -> {
+            Assertions.assertEquals(renderer.getRowPreferredHeight(table, visibleRow), table.getRowHeight(visibleRow));
+            Assertions.assertTrue(table.getRowHeight(visibleRow) > 3 * table.getRowHeight()); // LOREM_IPSUM row
+            Assertions.assertEquals(table.getRowHeight(), table.getRowHeight(0)); // not calculated yet
+
+            table.getModel().setValueAt("short", 14, 1); // calculated on EDT, not overwritten by the batch
+            table.getModel().setValueAt("short", 15_015, 1);
+        });
+        SwingUtilities.invokeAndWait(() -> tasks.forEach(Runnable::run));
+        SwingUtilities.invokeAndWait(() -> {
+            for (int row = 0; row < table.getRowCount(); row++) {
+                Assertions.assertEquals(renderer.getRowPreferredHeight(table, row), table.getRowHeight(row));
+            }
+        });
+    }
+
+    @Test
+    public void cellLayoutCache() throws Exception {
+        SwingUtilities.invokeAndWait(() -> {
+            var model = new DefaultTableModel(new Object[][]{{"text1"}, {"text2"}}, new Object[]{"Text"});
+            var table = new JTable(model);
+            var renderer = new MultilineTableCellRenderer();
+            table.setDefaultRenderer(Object.class, renderer);
+            renderer.installRowHeightUpdater(table);
+
+            table.prepareRenderer(renderer, 0, 0);
+            TextLayout layout = renderer.getTextLayout();
+            Assertions.assertEquals("text1", renderer.getText());
+            table.prepareRenderer(renderer, 1, 0);
+            Assertions.assertEquals("text2", renderer.getText());
+            Assertions.assertNotSame(layout, renderer.getTextLayout());
+            table.prepareRenderer(renderer, 0, 0);
+            Assertions.assertSame(layout, renderer.getTextLayout()); // the layout of the cell is reused
+            Assertions.assertEquals(2, renderer.getCellCacheSize());
+
+            model.setValueAt("text3", 0, 0);
+            Assertions.assertEquals(1, renderer.getCellCacheSize());
+            table.prepareRenderer(renderer, 0, 0);
+            Assertions.assertEquals("text3", renderer.getText());
+
+            renderer.setCellCacheCapacity(1);
+            Assertions.assertEquals(1, renderer.getCellCacheSize());
+            Assertions.assertThrows(IllegalArgumentException.class, () -> renderer.setCellCacheCapacity(0));
+        });
+    }
+
+    @Test
+    public void listCellRenderer() throws Exception {
+        SwingUtilities.invokeAndWait(() -> {
+            var list = new JList<>(new String[]{MultilineLabelTest.LOREM_IPSUM, "short"});
+            var renderer = new MultilineListCellRenderer();
+            list.setCellRenderer(renderer);
+            list.setSize(200, 1_000);
+            var c = renderer.getListCellRendererComponent(list, list.getModel().getElementAt(0), 0, false, false);
+            Assertions.assertSame(renderer, c);
+            Assertions.assertEquals(MultilineLabel.calculatePreferredSize(renderer, renderer.getInsets(),
+                    renderer.getFontMetrics(list.getFont()), MultilineLabelTest.LOREM_IPSUM,
+                    200 - list.getInsets().left - list.getInsets().right, renderer.getLineSpacing()),
+                    renderer.getPreferredSize());
+            TextLayout layout = renderer.getTextLayout();
+            renderer.getListCellRendererComponent(list, list.getModel().getElementAt(1), 1, true, true);
+            Assertions.assertEquals("short", renderer.getText());
+            renderer.getListCellRendererComponent(list, list.getModel().getElementAt(0), 0, false, false);
+            Assertions.assertSame(layout, renderer.getTextLayout());
+        });
+    }
+}
@@ -0,0 +1,73 @@
+package io.github.parubok.text.multiline;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import javax.swing.SwingUtilities;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Insets;
+import java.awt.image.BufferedImage;
+import java.util.function.Consumer;
+
+public class PreparedTextTest {
+
+    private static int[] paint(Consumer<BufferedImage> painter) {
+        var image = new BufferedImage(300, 400, BufferedImage.TYPE_INT_RGB);
+        painter.accept(image);
+        return image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth());
+    }
+
+    @Test
+    public void sameAsStaticMethods() throws Exception {
+        SwingUtilities.invokeAndWait(() -> {
+            var label = new MultilineLabel();
+            var font = new Font("Dialog", Font.PLAIN, 12);
+            var fm = label.getFontMetrics(font);
+            var insets = new Insets(3, 4, 5, 6);
+            for (String text : new String[]{"", "abc", MultilineLabelTest.LOREM_IPSUM,
+                    MultilineLabelTest.LOREM_IPSUM + "\n\n" + MultilineLabelTest.LOREM_IPSUM}) {
+                var prepared = PreparedText.prepare(label, fm, text, 200, 1.2f, null,
+                        MultilineLabel.DEFAULT_MAX_LINES);
+                Assertions.assertEquals(MultilineLabel.calculatePreferredSize(label, insets, fm, text, 210, 1.2f),
+                        prepared.getPreferredSize(insets));
+                Assertions.assertEquals(MultilineLabel.calculateLineCount(label, fm, text, 200,
+                        MultilineLabel.DEFAULT_MAX_LINES), prepared.getLineCount());
+                Assertions.assertFalse(prepared.isTruncated());
+                for (boolean enabled : new boolean[]{true, false}) {
+                    int[] expected = paint(image -> {
+                        var g = image.createGraphics();
+                        g.setFont(font);
+                        MultilineLabel.paintText(label, g, text, insets, 210, enabled, Color.WHITE, 1.2f);
+                        g.dispose();
+                    });
+                    for (int i = 0; i < 2; i++) { // the second time with the glyphs of the first painting
+                        Assertions.assertArrayEquals(expected, paint(image -> {
+                            var g = image.createGraphics();
+                            g.setFont(font);
+                            prepared.paint(label, g, insets.left, insets.top, enabled, Color.WHITE);
+                            g.dispose();
+                        }));
+                    }
+                }
+            }
+        });
+    }
+
+    @Test
+    public void maxLines() throws Exception {
+        SwingUtilities.invokeAndWait(() -> {
+            var label = new MultilineLabel();
+            var fm = label.getFontMetrics(label.getFont());
+            var prepared = PreparedText.prepare(null, fm, MultilineLabelTest.LOREM_IPSUM, 100, 1.0f, null, 3);
+            Assertions.assertEquals(3, prepared.getLineCount());
+            Assertions.assertTrue(prepared.isTruncated());
+            Assertions.assertEquals(AbstractTextLayout.getTextPreferredHeight(3, fm, 1.0f),
+                    prepared.getPreferredSize().height);
+            Assertions.assertThrows(IllegalArgumentException.class,
+                    () -> PreparedText.prepare(null, fm, "abc", 0, 1.0f, null, 3));
+            Assertions.assertThrows(IllegalArgumentException.class,
+                    () -> PreparedText.prepare(null, fm, "abc", 100, 1.0f, null, 0));
+        });
+    }
+}
@@ -1,11 +1,30 @@
 package io.github.parubok.text.multiline;
 
+import com.sun.management.ThreadMXBean;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import javax.swing.BorderFactory;
 import javax.swing.SwingUtilities;
+import java.awt.Color;
+import java.awt.Dimension;
 import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Insets;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.IntSupplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static javax.swing.plaf.basic.BasicGraphicsUtils.getStringWidth;
 
 public class WidthTextLayoutTest {
 
@@ -224,4 +243,812 @@ public class WidthTextLayoutTest {
             Assertions.assertEquals(-1, nextLine4.nextLineStartIndex);
         });
     }
+
+    @Test
+    public void lineRanges() throws Exception {
+        SwingUtilities.invokeAndWait(() -> {
+            var text = "aaa bbb\nccc ddd eee";
+            var label = new MultilineLabel();
+            var fm = label.getFontMetrics(font);
+            var measurer = TextMeasurer.of(label, fm);
+            var lines = TextLines.breakText(text, LineBreakIndex.of(text), measurer, 1, Integer.MAX_VALUE,
+                    SeparatorMatcher.DEFAULT);
+            Assertions.assertEquals(5, lines.getLineCount());
+            int[] starts = {0, 4, 8, 12, 16};
+            for (int i = 0; i < lines.getLineCount(); i++) {
+                Assertions.assertEquals(starts[i], lines.getLineStart(i));
+                Assertions.assertEquals(starts[i] + 3, lines.getLineEnd(i)); // the space is not included
+                Assertions.assertFalse(lines.isEllipsis(i));
+            }
+
+            lines = TextLines.breakText(text, LineBreakIndex.of(text), measurer, 1, 3, SeparatorMatcher.DEFAULT);
+            Assertions.assertEquals(3, lines.getLineCount());
+            Assertions.assertTrue(lines.isEllipsis(2));
+            Assertions.assertEquals("...", lines.getLine(2, text));
+            Assertions.assertEquals(8, lines.getLineStart(2));
+        });
+    }
+
+    /**
+     * Case where the line starts with a separator and the rest of the paragraph is a single long word - the line
+     * must not continue after the line separator.
+     */
+    @Test
+    public void getNextLine_separatorAtLineStart() throws Exception {
+        SwingUtilities.invokeAndWait(() -> {
+            var text = "ab\n cccccccccc\ndd ee";
+            var label = new MultilineLabel();
+            var sep = MultilineLabel.DEFAULT_SEPARATORS;
+            var fm = label.getFontMetrics(font);
+            final int limit = 3;
+            var nextLine = WidthTextLayout.getNextLine(label, text, 3, fm, limit, sep);
+            Assertions.assertFalse(nextLine.lastLine);
+            Assertions.assertEquals(3, nextLine.lineStartIndex);
+            Assertions.assertEquals(13, nextLine.lineEndIndex);
+            Assertions.assertEquals(15, nextLine.nextLineStartIndex);
+            var lines = TextLines.breakText(text, LineBreakIndex.of(text), TextMeasurer.of(label, fm), limit,
+                    Integer.MAX_VALUE, SeparatorMatcher.DEFAULT);
+            Assertions.assertEquals(List.of("ab", " cccccccccc", "dd", "ee"), toList(lines, text));
+        });
+    }
+
+    @Test
+    public void cachedLines_reusedUntilParametersChange() throws Exception {
+        SwingUtilities.invokeAndWait(() -> {
+            var label = new MultilineLabel(MultilineLabelTest.LOREM_IPSUM);
+            var textLayout = (WidthTextLayout) label.getTextLayout();
+            Assertions.assertNull(textLayout.getCachedLines());
+            label.getPreferredSize();
+            var lines = textLayout.getCachedLines();
+            Assertions.assertNotNull(lines);
+            label.getPreferredSize();
+            Assertions.assertSame(lines, textLayout.getCachedLines());
+
+            label.setMaxLines(2);
+            label.getPreferredSize();
+            Assertions.assertNotSame(lines, textLayout.getCachedLines());
+            Assertions.assertEquals(2, textLayout.getCachedLines().getLineCount());
+
+            lines = textLayout.getCachedLines();
+            label.setSeparators(Set.of(' ', ','));
+            label.getPreferredSize();
+            Assertions.assertNotSame(lines, textLayout.getCachedLines());
+
+            lines = textLayout.getCachedLines();
+            label.setFont(label.getFont().deriveFont(20.0f));
+            label.getPreferredSize();
+            Assertions.assertNotSame(lines, textLayout.getCachedLines());
+        });
+    }
+
+    @Test
+    public void layoutCache() throws Exception {
+        SwingUtilities.invokeAndWait(() -> {
+            var label = new MultilineLabel(MultilineLabelTest.LOREM_IPSUM);
+            label.setLayoutCacheCapacity(3);
+            var textLayout = (WidthTextLayout) label.getTextLayout();
+            var linesByWidth = new ArrayList<TextLines>();
+            for (int width = 100; width <= 500; width += 100) {
+                label.setSize(width, 100);
+                label.getPreferredSize();
+                linesByWidth.add(textLayout.getCachedLines());
+                Assertions.assertTrue(textLayout.getLayoutCacheSize() <= 3);
+            }
+            // the recent widths are served from the cache
+            for (int i = 4; i >= 2; i--) {
+                label.setSize(100 * (i + 1), 100);
+                label.getPreferredSize();
+                Assertions.assertSame(linesByWidth.get(i), textLayout.getCachedLines());
+            }
+            label.setSize(100, 100);
+            label.getPreferredSize();
+            Assertions.assertNotSame(linesByWidth.get(0), textLayout.getCachedLines());
+            Assertions.assertEquals(toList(linesByWidth.get(0), label.getText()),
+                    toList(textLayout.getCachedLines(), label.getText()));
+            Assertions.assertEquals(3, textLayout.getLayoutCacheSize());
+
+            label.setFont(label.getFont().deriveFont(20.0f));
+            label.getPreferredSize();
+            Assertions.assertEquals(1, textLayout.getLayoutCacheSize());
+            Assertions.assertThrows(IllegalArgumentException.class, () -> label.setLayoutCacheCapacity(0));
+        });
+    }
+
+    @Test
+    public void widthValidityRange() throws Exception {
+        SwingUtilities.invokeAndWait(() -> {
+            var random = new Random(13);
+            var label = new MultilineLabel();
+            var fm = label.getFontMetrics(font);
+            var separators = SeparatorMatcher.of(MultilineLabel.DEFAULT_SEPARATORS);
+            for (MeasurementMode mode : MeasurementMode.values()) {
+                var measurer = TextMeasurer.of(null, fm, mode);
+                for (int i = 0; i < 10; i++) {
+                    var text = randomText(random, 1 + random.nextInt(60)) + "\nWWWWWWWWWWWWWWWWWWWW";
+                    var lineBreaks = LineBreakIndex.of(text);
+                    int maxLines = i % 2 == 0 ? Integer.MAX_VALUE : 3;
+                    var lines = TextLines.breakText(text, lineBreaks, measurer, 200, maxLines, separators);
+                    Assertions.assertTrue(lines.isValidFor(200));
+                    for (int limit = 1; limit < 700; limit++) {
+                        if (lines.isValidFor(limit)) {
+                            var expected = TextLines.breakText(text, lineBreaks, measurer, limit, maxLines,
+                                    separators);
+                            Assertions.assertEquals(toList(expected, text), toList(lines, text), text);
+                        }
+                    }
+                }
+            }
+
+            // a small resize reuses the lines
+            label.setText(MultilineLabelTest.LOREM_IPSUM);
+            label.setSize(300, 100);
+            label.getPreferredSize();
+            var textLayout = (WidthTextLayout) label.getTextLayout();
+            var lines = textLayout.getCachedLines();
+            var insets = label.getInsets();
+            int width = lines.getMaxWidthLimit() - 1 + insets.left + insets.right;
+            label.setSize(width, 100);
+            label.getPreferredSize();
+            Assertions.assertSame(lines, textLayout.getCachedLines());
+            Assertions.assertEquals(1, textLayout.getLayoutCacheSize());
+            label.setSize(width + 1, 100);
+            label.getPreferredSize();
+            Assertions.assertNotSame(lines, textLayout.getCachedLines());
+        });
+    }
+
+    @Test
+    public void heightProfile() throws Exception {
+        SwingUtilities.invokeAndWait(() -> {
+            var random = new Random(14);
+            var fm = new MultilineLabel().getFontMetrics(font);
+            var separatorSets = List.of(SeparatorMatcher.DEFAULT, SeparatorMatcher.of(Set.of(' ', '/', ',')));
+            for (MeasurementMode mode : MeasurementMode.values()) {
+                var measurer = TextMeasurer.of(null, fm, mode);
+                for (String lineSeparator : new String[]{"\n", "\r\n", "\r", ""}) {
+                    var paragraphs = new ArrayList<String>();
+                    for (int i = 0; i < 8; i++) {
+                        paragraphs.add(i % 3 == 2 ? paragraphs.get(i - 1)
+                                : randomText(random, random.nextInt(25)).replaceAll("[\n\u05d0]", "x"));
+                    }
+                    var text = String.join(lineSeparator, paragraphs);
+                    var lineBreaks = LineBreakIndex.of(text);
+                    for (SeparatorMatcher separators : separatorSets) {
+                        for (int maxLines : new int[]{3, Integer.MAX_VALUE}) {
+                            var profile = HeightProfile.of(text, lineBreaks, measurer, maxLines, separators);
+                            Assertions.assertNotNull(profile);
+                            for (int limit = 1; limit < 500; limit++) {
+                                var lines = TextLines.breakText(text, lineBreaks, measurer, limit, maxLines,
+                                        separators);
+                                Assertions.assertEquals(lines.getLineCount(), profile.getLineCount(limit), text);
+                            }
+                        }
+                    }
+                }
+            }
+            var measurer = TextMeasurer.of(null, fm, MeasurementMode.EXACT);
+            Assertions.assertNull(HeightProfile.of("a\nb\rc", LineBreakIndex.of("a\nb\rc"), measurer,
+                    Integer.MAX_VALUE, SeparatorMatcher.DEFAULT));
+            Assertions.assertNull(HeightProfile.of("a \u05d0", LineBreakIndex.of("a \u05d0"), measurer,
+                    Integer.MAX_VALUE, SeparatorMatcher.DEFAULT));
+
+            // the label doesn't break the text to calculate the height for a width
+            for (String text : new String[]{MultilineLabelTest.LOREM_IPSUM, "a\nb\rc \u05d0", ""}) {
+                var label = new MultilineLabel(text);
+                label.setBorder(BorderFactory.createEmptyBorder(1, 2, 3, 4));
+                var reference = new MultilineLabel(text);
+                reference.setBorder(label.getBorder());
+                for (int width = 1; width < 600; width += 7) {
+                    reference.setSize(width, 100);
+                    Assertions.assertEquals(reference.getPreferredSize().height, label.getPreferredHeight(width));
+                }
+            }
+            var label = new MultilineLabel(MultilineLabelTest.LOREM_IPSUM);
+            label.getPreferredHeight(100);
+            label.getPreferredHeight(200);
+            Assertions.assertNull(((WidthTextLayout) label.getTextLayout()).getCachedLines());
+            Assertions.assertThrows(IllegalArgumentException.class, () -> label.getPreferredHeight(0));
+        });
+    }
+
+    @Test
+    public void heightProfile_budget() throws Exception {
+        SwingUtilities.invokeAndWait(() -> {
+            var fm = new MultilineLabel().getFontMetrics(font);
+            var measurer = TextMeasurer.of(null, fm, MeasurementMode.EXACT);
+            // many words in a single paragraph - the profile is more expensive than breaking the text
+            var text = randomText(new Random(14), 4_000).replaceAll("[\n\u05d0]", "x");
+            var lineBreaks = LineBreakIndex.of(text);
+            Assertions.assertNull(HeightProfile.of(text, lineBreaks, measurer, Integer.MAX_VALUE,
+                    SeparatorMatcher.DEFAULT));
+            // short paragraphs are profiled
+            var paragraphs = text.replace('(', '\n');
+            Assertions.assertNotNull(HeightProfile.of(paragraphs, LineBreakIndex.of(paragraphs), measurer,
+                    Integer.MAX_VALUE, SeparatorMatcher.DEFAULT));
+
+            var label = new MultilineLabel(text);
+            var reference = new MultilineLabel(text);
+            for (int width = 50; width < 2_000; width += 150) {
+                reference.setSize(width, 100);
+                Assertions.assertEquals(reference.getPreferredSize().height, label.getPreferredHeight(width));
+            }
+        });
+    }
+
+    @Test
+    public void calculateLineCount() throws Exception {
+        var random = new Random(15);
+        var label = new MultilineLabel();
+        var fm = label.getFontMetrics(font);
+        var measurer = TextMeasurer.of(label, fm, MeasurementMode.EXACT);
+        var separatorSets = List.of(MultilineLabel.DEFAULT_SEPARATORS, Set.of(' ', '/', ',', '('), Set.of('e'));
+        for (int i = 0; i < 60; i++) {
+            var text = randomText(random, random.nextInt(60));
+            var separators = separatorSets.get(i % separatorSets.size());
+            label.setSeparators(separators);
+            int maxLines = i % 2 == 0 ? Integer.MAX_VALUE : 1 + random.nextInt(5);
+            for (int limit : new int[]{1, 13, 50, 120, 400, 2_000}) {
+                var lines = TextLines.breakText(text, LineBreakIndex.of(text), measurer, limit, maxLines,
+                        SeparatorMatcher.of(separators));
+                Assertions.assertEquals(lines.getLineCount(),
+                        MultilineLabel.calculateLineCount(label, fm, text, limit, maxLines), text);
+            }
+            var insets = new Insets(1, 2, 3, 4);
+            Assertions.assertEquals(MultilineLabel.calculatePreferredSize(label, insets, fm, text, 150, 1.3f).height,
+                    MultilineLabel.calculatePreferredHeight(label, insets, fm, text, 150, 1.3f,
+                            label.getMaxLines()));
+        }
+        Assertions.assertEquals(0, MultilineLabel.calculateLineCount(null, fm, "", 10, 1));
+        Assertions.assertEquals(3, MultilineLabel.calculateLineCount(null, fm, "a b c d", 1, 3));
+    }
+
+    @Test
+    public void calculateLineCount_allocation() {
+        var label = new MultilineLabel();
+        var fm = label.getFontMetrics(font);
+        var insets = new Insets(1, 2, 3, 4);
+        var text = MultilineLabelTest.LOREM_IPSUM;
+        Assertions.assertEquals(0, allocatedBytesPerCall(() -> MultilineLabel.calculateLineCount(null, fm, text, 200,
+                100)));
+        Assertions.assertEquals(0, allocatedBytesPerCall(() -> MultilineLabel.calculateLineCount(label, fm, text, 200,
+                100)));
+        Assertions.assertEquals(0, allocatedBytesPerCall(() -> MultilineLabel.calculatePreferredHeight(null, insets,
+                fm, text, 200, 1.1f, 100)));
+        Assertions.assertEquals(0, allocatedBytesPerCall(() -> MultilineLabel.calculatePreferredHeight(label, insets,
+                fm, text, 200, 1.1f, 100)));
+    }
+
+    /**
+     * @return Number of bytes allocated by the current thread per call of the task (rounded down), after warm-up.
+     */
+    private static long allocatedBytesPerCall(IntSupplier task) {
+        var threadBean = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        int result = 0;
+        for (int i = 0; i < 20_000; i++) {
+            result += task.getAsInt();
+        }
+        final int calls = 10_000;
+        long before = threadBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < calls; i++) {
+            result += task.getAsInt();
+        }
+        long after = threadBean.getThreadAllocatedBytes(threadId);
+        Assertions.assertTrue(result > 0);
+        return (after - before) / calls;
+    }
+
+    @Test
+    public void paintText_clip() throws Exception {
+        SwingUtilities.invokeAndWait(() -> {
+            var label = new MultilineLabel(MultilineLabelTest.LOREM_IPSUM + "\n" + MultilineLabelTest.LOREM_IPSUM);
+            label.setBounds(0, 0, 120, 400);
+            for (boolean enabled : new boolean[]{true, false}) {
+                label.setEnabled(enabled);
+                var full = paint(label, null);
+                for (var clip : new Rectangle[]{new Rectangle(0, 0, 120, 5), new Rectangle(0, 37, 120, 41),
+                        new Rectangle(10, 101, 50, 3), new Rectangle(0, 390, 120, 10)}) {
+                    var clipped = paint(label, clip);
+                    for (int y = clip.y; y < clip.y + clip.height; y++) {
+                        for (int x = clip.x; x < clip.x + clip.width; x++) {
+                            Assertions.assertEquals(full.getRGB(x, y), clipped.getRGB(x, y));
+                        }
+                    }
+                }
+            }
+        });
+    }
+
+    private static BufferedImage paint(MultilineLabel label, Rectangle clip) {
+        var image = new BufferedImage(label.getWidth(), label.getHeight(), BufferedImage.TYPE_INT_RGB);
+        var g = image.createGraphics();
+        g.setColor(Color.WHITE);
+        g.fillRect(0, 0, image.getWidth(), image.getHeight());
+        if (clip != null) {
+            g.setClip(clip);
+        }
+        label.paint(g);
+        g.dispose();
+        return image;
+    }
+
+    /**
+     * Verifies that the lines are identical to the lines of the original algorithm, which measured the whole
+     * prefix of the line for each separator (with lines limited to their paragraph).
+     */
+    @Test
+    public void getNextLine_sameAsReference() throws Exception {
+        SwingUtilities.invokeAndWait(() -> {
+            var random = new Random(7);
+            var label = new MultilineLabel();
+            var fm = label.getFontMetrics(font);
+            var separatorSets = List.of(MultilineLabel.DEFAULT_SEPARATORS, Set.of(' ', '/', ',', '('), Set.of('e'));
+            for (int i = 0; i < 60; i++) {
+                var text = randomText(random, 1 + random.nextInt(60));
+                var separators = separatorSets.get(i % separatorSets.size());
+                for (int limit : new int[]{1, 13, 50, 120, 400, 2_000}) {
+                    int index = 0;
+                    NextLine nextLine;
+                    do {
+                        nextLine = WidthTextLayout.getNextLine(label, text, index, fm, limit, separators);
+                        var expected = referenceNextLine(label, text, index, fm, limit, separators);
+                        Assertions.assertEquals(expected.toString(), nextLine.toString(), text);
+                        index = nextLine.nextLineStartIndex;
+                    } while (!nextLine.lastLine);
+                }
+            }
+        });
+    }
+
+    private static String randomText(Random random, int wordCount) {
+        var sb = new StringBuilder();
+        for (int i = 0; i < wordCount; i++) {
+            int length = 1 + random.nextInt(random.nextInt(10) == 0 ? 40 : 9);
+            for (int j = 0; j < length; j++) {
+                sb.append("abcdefghijklmnopqrstuvwxyzW\u00e9\u05d0\u0410".charAt(random.nextInt(30)));
+            }
+            sb.append(" \n ,/(e".charAt(random.nextInt(7)));
+        }
+        return sb.toString();
+    }
+
+    private static NextLine referenceNextLine(MultilineLabel c, String text, int startIndex, FontMetrics fm,
+                                              int widthLimit, Set<Character> separators) {
+        int lineSepIndex = text.indexOf("\n", startIndex);
+        if (lineSepIndex > -1) {
+            String sub = text.substring(startIndex, lineSepIndex);
+            if (lineSepIndex == startIndex || referenceSeparatorIndex(sub, 0, separators) == -1
+                    || getStringWidth(c, fm, sub) <= widthLimit) {
+                return new NextLine(false, startIndex, lineSepIndex - 1, lineSepIndex + 1);
+            }
+        }
+        int paragraphEnd = lineSepIndex > -1 ? lineSepIndex : text.length();
+        int sepIndex = startIndex;
+        while (true) {
+            int nextSepIndex = referenceSeparatorIndex(text.substring(0, paragraphEnd), sepIndex + 1, separators);
+            if (nextSepIndex == -1) {
+                if (sepIndex > startIndex
+                        && getStringWidth(c, fm, text.substring(startIndex, paragraphEnd)) > widthLimit) {
+                    boolean ws = Character.isWhitespace(text.charAt(sepIndex));
+                    return new NextLine(false, startIndex, sepIndex - (ws ? 1 : 0), sepIndex + 1);
+                } else if (paragraphEnd < text.length()) {
+                    return new NextLine(false, startIndex, paragraphEnd - 1, paragraphEnd + 1);
+                } else {
+                    return new NextLine(true, startIndex, text.length() - 1, -1);
+                }
+            } else {
+                boolean ws = Character.isWhitespace(text.charAt(nextSepIndex));
+                String sub = text.substring(startIndex, nextSepIndex + (ws ? 0 : 1));
+                if (getStringWidth(c, fm, sub) > widthLimit) {
+                    int sIndex = sepIndex > startIndex ? sepIndex : nextSepIndex;
+                    return new NextLine(false, startIndex,
+                            sIndex - (Character.isWhitespace(text.charAt(sIndex)) ? 1 : 0), sIndex + 1);
+                } else {
+                    sepIndex = nextSepIndex;
+                }
+            }
+        }
+    }
+
+    private static int referenceSeparatorIndex(String text, int fromIndex, Set<Character> separators) {
+        return separators.stream()
+                .mapToInt(s -> text.indexOf(Character.toString(s), fromIndex))
+                .filter(index -> index > -1)
+                .min()
+                .orElse(-1);
+    }
+
+    @Test
+    public void lineBreakIndex() {
+        var random = new Random(3);
+        for (int i = 0; i < 100; i++) {
+            var sb = new StringBuilder();
+            for (int j = random.nextInt(50); j > 0; j--) {
+                sb.append("ab\r\n".charAt(random.nextInt(4)));
+            }
+            var text = sb.toString();
+            var index = LineBreakIndex.of(text);
+            for (int from = 0; from <= text.length() + 1; from++) {
+                for (int sep = 0; sep < LineBreakIndex.LINE_SEPARATORS.size(); sep++) {
+                    Assertions.assertEquals(text.indexOf(LineBreakIndex.LINE_SEPARATORS.get(sep), from),
+                            index.indexOf(sep, from));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void separatorMatcher() {
+        var random = new Random(5);
+        var separatorSets = List.of(MultilineLabel.DEFAULT_SEPARATORS, Set.of(' ', '/', '|', '(', ')', ','),
+                Set.of('\u05d0', 'a'), Set.of('\uffff'));
+        for (var separators : separatorSets) {
+            var matcher = SeparatorMatcher.of(separators);
+            for (char ch = 0; ch < Character.MAX_VALUE; ch++) {
+                Assertions.assertEquals(separators.contains(ch), matcher.isSeparator(ch));
+            }
+            var text = randomText(random, 30);
+            for (int from = 0; from <= text.length(); from++) {
+                Assertions.assertEquals(referenceSeparatorIndex(text, from, separators), matcher.indexOf(text, from));
+            }
+        }
+    }
+
+    @Test
+    public void separatorMatcher_cachedByLabel() throws Exception {
+        SwingUtilities.invokeAndWait(() -> {
+            var label = new MultilineLabel();
+            Assertions.assertSame(SeparatorMatcher.DEFAULT, label.getSeparatorMatcher());
+            var separators = Set.of(' ', '/');
+            label.setSeparators(separators);
+            var matcher = label.getSeparatorMatcher();
+            Assertions.assertTrue(matcher.isCompiledFrom(separators));
+            Assertions.assertSame(matcher, label.getSeparatorMatcher());
+            Assertions.assertSame(matcher, MultilineLabel.getSeparatorMatcher(label));
+        });
+    }
+
+    @Test
+    public void measurementMode_advanceCache() throws Exception {
+        SwingUtilities.invokeAndWait(() -> {
+            var label = new MultilineLabel(MultilineLabelTest.LOREM_IPSUM);
+            Assertions.assertEquals(MeasurementMode.EXACT, label.getMeasurementMode());
+            var sizes = new Dimension[4];
+            for (int i = 0; i < sizes.length; i++) {
+                label.setPreferredWidthLimit(50 + i * 150);
+                sizes[i] = label.getPreferredSize();
+            }
+            label.setMeasurementMode(MeasurementMode.ADVANCE_CACHE);
+            Assertions.assertEquals(MeasurementMode.ADVANCE_CACHE, label.getMeasurementMode());
+            for (int i = 0; i < sizes.length; i++) {
+                label.setPreferredWidthLimit(50 + i * 150);
+                Assertions.assertEquals(sizes[i], label.getPreferredSize());
+            }
+            Assertions.assertThrows(NullPointerException.class, () -> label.setMeasurementMode(null));
+        });
+    }
+
+    @Test
+    public void advanceWidthCache_drift() throws Exception {
+        SwingUtilities.invokeAndWait(() -> {
+            var label = new MultilineLabel();
+            var fm = label.getFontMetrics(font);
+            AdvanceWidthCache.clear();
+            Assertions.assertEquals(0, AdvanceWidthCache.getDriftSampleCount());
+            float drift = AdvanceWidthCache.measureDrift(label, fm, MultilineLabelTest.LOREM_IPSUM);
+            Assertions.assertTrue(drift < 0.01f, "drift: " + drift);
+            Assertions.assertEquals(1, AdvanceWidthCache.getDriftSampleCount());
+            Assertions.assertEquals(drift, AdvanceWidthCache.getMaxDrift());
+            // text which requires layout is measured exactly
+            Assertions.assertEquals(0.0f, AdvanceWidthCache.measureDrift(label, fm, "\u05d0\u05d1"));
+            AdvanceWidthCache.clear();
+            Assertions.assertEquals(0.0f, AdvanceWidthCache.getMaxDrift());
+
+            // the measurer is shared by the threads of a parallel layout
+            var measurer = AdvanceWidthCache.getMeasurer(null, fm);
+            final int measurements = 64_000;
+            IntStream.range(0, measurements).parallel().forEach(i -> measurer.getWidth("abc def", 0, 7));
+            long expectedSamples = measurements / AdvanceWidthCache.DRIFT_SAMPLE_INTERVAL;
+            long samples = AdvanceWidthCache.getDriftSampleCount();
+            Assertions.assertTrue(samples > expectedSamples / 2 && samples < 2 * expectedSamples,
+                    "samples: " + samples);
+            AdvanceWidthCache.clear();
+        });
+    }
+
+    @Test
+    public void measurementMode_wordCache() throws Exception {
+        SwingUtilities.invokeAndWait(() -> {
+            final int capacity = WordWidthCache.getCapacity();
+            try {
+                WordWidthCache.clear();
+                var label = new MultilineLabel(MultilineLabelTest.LOREM_IPSUM);
+                var sizes = new Dimension[4];
+                for (int i = 0; i < sizes.length; i++) {
+                    label.setPreferredWidthLimit(50 + i * 150);
+                    sizes[i] = label.getPreferredSize();
+                }
+                Assertions.assertEquals(0, WordWidthCache.getMissCount());
+                label.setMeasurementMode(MeasurementMode.WORD_CACHE);
+                for (int i = 0; i < sizes.length; i++) {
+                    label.setPreferredWidthLimit(50 + i * 150);
+                    Assertions.assertEquals(sizes[i], label.getPreferredSize());
+                }
+                final long misses = WordWidthCache.getMissCount();
+                Assertions.assertTrue(misses > 0);
+                Assertions.assertTrue(WordWidthCache.getHitCount() > 0);
+                Assertions.assertTrue(WordWidthCache.getSize() > 0);
+
+                // another label with the same font and text is measured from the cache
+                var label2 = new MultilineLabel(MultilineLabelTest.LOREM_IPSUM);
+                label2.setMeasurementMode(MeasurementMode.WORD_CACHE);
+                label2.setPreferredWidthLimit(50 + 3 * 150);
+                Assertions.assertEquals(sizes[3], label2.getPreferredSize());
+                Assertions.assertEquals(misses, WordWidthCache.getMissCount());
+
+                WordWidthCache.setCapacity(16);
+                Assertions.assertTrue(WordWidthCache.getSize() <= 16);
+                label2.setPreferredWidthLimit(100);
+                label2.getPreferredSize();
+                Assertions.assertTrue(WordWidthCache.getSize() <= 16);
+                Assertions.assertThrows(IllegalArgumentException.class, () -> WordWidthCache.setCapacity(0));
+
+                WordWidthCache.clear();
+                Assertions.assertEquals(0, WordWidthCache.getSize());
+                Assertions.assertEquals(0, WordWidthCache.getHitCount());
+                Assertions.assertEquals(0, WordWidthCache.getMissCount());
+            } finally {
+                WordWidthCache.setCapacity(capacity);
+            }
+        });
+    }
+
+    @Test
+    public void layoutExecutor() throws Exception {
+        final var text = (MultilineLabelTest.LOREM_IPSUM + "\n").repeat(60);
+        Assertions.assertTrue(text.length() >= MultilineLabel.ASYNC_LAYOUT_MIN_TEXT_LENGTH);
+        final var tasks = new ArrayList<Runnable>();
+        final var label = new MultilineLabel();
+        final var expectedSize = new Dimension[1];
+        SwingUtilities.invokeAndWait(() -> {
+            label.setText(text);
+            expectedSize[0] = label.getPreferredSize();
+            label.setText(text + " ");
+            label.setLayoutExecutor(tasks::add);
+            var estimate = label.getPreferredSize();
+            Assertions.assertTrue(estimate.height > 0);
+            Assertions.assertEquals(1, tasks.size());
+            label.getPreferredSize();
+            Assertions.assertEquals(1, tasks.size()); // the same calculation is requested once
+        });
+        tasks.remove(0).run(); // off EDT
+        SwingUtilities.invokeAndWait(() -> {
+            Assertions.assertEquals(expectedSize[0], label.getPreferredSize());
+            Assertions.assertTrue(tasks.isEmpty());
+
+            // lines of the previous text are discarded
+            label.setMaxLines(3);
+            label.getPreferredSize();
+            Assertions.assertEquals(1, tasks.size());
+            label.setText(text);
+            label.getPreferredSize();
+            Assertions.assertEquals(2, tasks.size());
+        });
+        tasks.remove(0).run();
+        SwingUtilities.invokeAndWait(() -> {
+            var textLayout = (WidthTextLayout) label.getTextLayout();
+            Assertions.assertNull(textLayout.getCachedLines());
+        });
+        tasks.remove(0).run();
+        SwingUtilities.invokeAndWait(() -> {
+            var textLayout = (WidthTextLayout) label.getTextLayout();
+            Assertions.assertEquals(3, textLayout.getCachedLines().getLineCount());
+            // short text is laid out synchronously
+            label.setText(MultilineLabelTest.LOREM_IPSUM);
+            tasks.clear();
+            label.getPreferredSize();
+            Assertions.assertTrue(tasks.isEmpty());
+        });
+        tasks.clear();
+        SwingUtilities.invokeAndWait(() -> {
+            label.setMaxLines(MultilineLabel.DEFAULT_MAX_LINES);
+            label.setText(text);
+            label.setLayoutExecutor(null);
+            Assertions.assertEquals(expectedSize[0], label.getPreferredSize());
+        });
+    }
+
+    @Test
+    public void layoutExecutor_failure() throws Exception {
+        final var text = (MultilineLabelTest.LOREM_IPSUM + "\n").repeat(700);
+        Assertions.assertTrue(text.length() >= MultilineLabel.PARALLEL_LAYOUT_MIN_TEXT_LENGTH);
+        final var tasks = new ArrayList<Runnable>();
+        final var label = new MultilineLabel();
+        final var expectedSize = new Dimension[1];
+        final var pool = new ForkJoinPool(1);
+        pool.shutdown(); // rejects the parts of the text
+        SwingUtilities.invokeAndWait(() -> {
+            label.setText(text);
+            expectedSize[0] = label.getPreferredSize();
+            label.setText(text + " ");
+            label.setParallelLayoutPool(pool);
+            label.setLayoutExecutor(tasks::add);
+            label.getPreferredSize();
+            Assertions.assertEquals(1, tasks.size());
+            Assertions.assertTrue(((WidthTextLayout) label.getTextLayout()).isLayoutPending());
+        });
+        Assertions.assertThrows(RejectedExecutionException.class, () -> tasks.remove(0).run());
+        SwingUtilities.invokeAndWait(() -> {
+            var textLayout = (WidthTextLayout) label.getTextLayout();
+            Assertions.assertFalse(textLayout.isLayoutPending());
+            // the lines are calculated synchronously, so the failure is not hidden
+            Assertions.assertThrows(RejectedExecutionException.class, label::getPreferredSize);
+            Assertions.assertTrue(tasks.isEmpty());
+            label.setParallelLayoutPool(null);
+            Assertions.assertEquals(expectedSize[0], label.getPreferredSize());
+            Assertions.assertTrue(tasks.isEmpty());
+            Assertions.assertFalse(textLayout.isLayoutPending());
+        });
+    }
+
+    @Test
+    public void appendText() throws Exception {
+        SwingUtilities.invokeAndWait(() -> {
+            var random = new Random(7);
+            for (String lineSeparator : new String[]{"\n", "\r\n", "\r"}) {
+                for (int maxTextLines : new int[]{MultilineLabel.DEFAULT_MAX_TEXT_LINES, 5}) {
+                    var label = new MultilineLabel();
+                    label.setMaxTextLines(maxTextLines);
+                    label.setBounds(0, 0, 90, 500);
+                    var expectedText = new StringBuilder();
+                    for (int i = 0; i < 40; i++) {
+                        var text = randomText(random, 1 + random.nextInt(8)).replace("\n", lineSeparator);
+                        label.appendText(text);
+                        expectedText.append(text);
+                        var expectedLines = expectedText.toString().lines().collect(Collectors.toList());
+                        if (expectedLines.size() > maxTextLines) {
+                            expectedLines = expectedLines.subList(expectedLines.size() - maxTextLines,
+                                    expectedLines.size());
+                            Assertions.assertTrue(label.getText().startsWith(expectedLines.get(0)));
+                            expectedText.delete(0, expectedText.length() - label.getText().length());
+                        }
+                        Assertions.assertEquals(expectedText.toString(), label.getText());
+
+                        var textLayout = (WidthTextLayout) label.getTextLayout();
+                        var expectedLabel = new MultilineLabel(label.getText());
+                        expectedLabel.setBounds(label.getBounds());
+                        Assertions.assertEquals(expectedLabel.getPreferredSize(), label.getPreferredSize());
+                        Assertions.assertEquals(toList(((WidthTextLayout) expectedLabel.getTextLayout())
+                                .getCachedLines(), label.getText()), toList(textLayout.getCachedLines(),
+                                label.getTextSource()));
+                    }
+                }
+            }
+        });
+    }
+
+    @Test
+    public void appendText_emptyAndAfterLineFeed() throws Exception {
+        SwingUtilities.invokeAndWait(() -> {
+            var label = new MultilineLabel("first line\n");
+            label.setBounds(0, 0, 90, 500);
+            label.getPreferredSize();
+            for (String text : new String[]{"", "second\n", "", "", "third", "", " fourth\n", "\n", ""}) {
+                label.appendText(text);
+                var expectedLabel = new MultilineLabel(label.getText());
+                expectedLabel.setBounds(label.getBounds());
+                Assertions.assertEquals(expectedLabel.getPreferredSize(), label.getPreferredSize());
+                Assertions.assertEquals(toList(((WidthTextLayout) expectedLabel.getTextLayout()).getCachedLines(),
+                        label.getText()), toList(((WidthTextLayout) label.getTextLayout()).getCachedLines(),
+                        label.getText()));
+            }
+        });
+    }
+
+    @Test
+    public void appendText_paintDoesNotCopyText() throws Exception {
+        SwingUtilities.invokeAndWait(() -> {
+            var label = new MultilineLabel(MultilineLabelTest.LOREM_IPSUM + "\n");
+            label.setSize(200, 300);
+            var image = new BufferedImage(200, 300, BufferedImage.TYPE_INT_RGB);
+            for (int i = 0; i < 5; i++) {
+                label.appendText(MultilineLabelTest.LOREM_IPSUM + "\n");
+                var g = image.createGraphics();
+                label.paint(g);
+                g.dispose();
+                Assertions.assertFalse(((TextBuffer) label.getTextChars()).isStringCreated());
+            }
+            var expectedLabel = new MultilineLabel(label.getText());
+            expectedLabel.setSize(label.getSize());
+            var expectedImage = new BufferedImage(200, 300, BufferedImage.TYPE_INT_RGB);
+            var g = expectedImage.createGraphics();
+            expectedLabel.paint(g);
+            g.dispose();
+            Assertions.assertArrayEquals(expectedImage.getRGB(0, 0, 200, 300, null, 0, 200),
+                    image.getRGB(0, 0, 200, 300, null, 0, 200));
+        });
+    }
+
+    @Test
+    public void appendText_keepsLines() throws Exception {
+        SwingUtilities.invokeAndWait(() -> {
+            var label = new MultilineLabel(MultilineLabelTest.LOREM_IPSUM + "\n");
+            label.setMaxTextLines(3);
+            var textLayout = (WidthTextLayout) label.getTextLayout();
+            var size = label.getPreferredSize();
+            var lines = textLayout.getCachedLines();
+            for (int i = 0; i < 5; i++) {
+                label.appendText(MultilineLabelTest.LOREM_IPSUM + "\n");
+                Assertions.assertSame(textLayout, label.getTextLayout());
+                Assertions.assertSame(lines, textLayout.getCachedLines());
+                Assertions.assertEquals(Math.min(i + 2, 3), label.getText().lines().count());
+            }
+            Assertions.assertEquals(size.width, label.getPreferredSize().width);
+
+            // text appended after the last displayed line doesn't change the lines
+            label.setText(MultilineLabelTest.LOREM_IPSUM);
+            label.setMaxLines(1);
+            label.getPreferredSize();
+            textLayout = (WidthTextLayout) label.getTextLayout();
+            lines = textLayout.getCachedLines();
+            label.appendText("\nabc");
+            Assertions.assertSame(lines, textLayout.getCachedLines());
+            // ...but the lines are recalculated if lines are removed from such text
+            label.setMaxTextLines(1);
+            label.appendText("\nabc");
+            Assertions.assertNull(textLayout.getCachedLines());
+            Assertions.assertEquals("abc", label.getText());
+            Assertions.assertThrows(IllegalArgumentException.class, () -> label.setMaxTextLines(0));
+        });
+    }
+
+    @Test
+    public void breakText_parallel() throws Exception {
+        SwingUtilities.invokeAndWait(() -> {
+            var random = new Random(11);
+            var label = new MultilineLabel();
+            var fm = label.getFontMetrics(font);
+            var measurer = TextMeasurer.of(null, fm, MeasurementMode.EXACT);
+            var pool = ForkJoinPool.commonPool();
+            for (String separator : new String[]{"\n", "\r\n", "\r", "mixed"}) {
+                var sb = new StringBuilder();
+                for (int i = 0; i < 300; i++) {
+                    if (i > 0) {
+                        sb.append(separator.equals("mixed") ? (i % 2 == 0 ? "\n" : "\r") : separator);
+                    }
+                    if (random.nextInt(10) > 0) {
+                        sb.append(randomText(random, random.nextInt(40)));
+                    }
+                }
+                var text = sb.toString();
+                var lineBreaks = LineBreakIndex.of(text);
+                for (int maxLines : new int[]{1, 2, 50, 333, Integer.MAX_VALUE}) {
+                    var expected = TextLines.breakText(text, lineBreaks, measurer, 200, maxLines,
+                            SeparatorMatcher.of(MultilineLabel.DEFAULT_SEPARATORS));
+                    var actual = TextLines.breakText(text, lineBreaks, measurer, 200, maxLines,
+                            SeparatorMatcher.of(MultilineLabel.DEFAULT_SEPARATORS), pool, 500);
+                    Assertions.assertEquals(toList(expected, text), toList(actual, text));
+                    Assertions.assertEquals(expected.getWidth(), actual.getWidth());
+                    Assertions.assertEquals(expected.isTruncated(), actual.isTruncated());
+                }
+            }
+
+            var text = (MultilineLabelTest.LOREM_IPSUM + "\n").repeat(500);
+            Assertions.assertTrue(text.length() >= MultilineLabel.PARALLEL_LAYOUT_MIN_TEXT_LENGTH);
+            var sequentialLabel = new MultilineLabel(text);
+            var parallelLabel = new MultilineLabel(text);
+            parallelLabel.setParallelLayoutPool(pool);
+            Assertions.assertEquals(sequentialLabel.getPreferredSize(), parallelLabel.getPreferredSize());
+            Assertions.assertEquals(toList(((WidthTextLayout) sequentialLabel.getTextLayout()).getCachedLines(), text),
+                    toList(((WidthTextLayout) parallelLabel.getTextLayout()).getCachedLines(), text));
+        });
+    }
+
+    private static List<String> toList(TextLines lines, CharSequence text) {
+        var list = new ArrayList<String>();
+        for (int i = 0; i < lines.getLineCount(); i++) {
+            list.add(lines.getLine(i, text));
+        }
+        return list;
+    }
 }